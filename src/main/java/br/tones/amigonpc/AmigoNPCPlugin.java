@@ -7,8 +7,11 @@ import java.util.function.Consumer;
 import javax.annotation.Nonnull;
 
 import com.hypixel.hytale.common.plugin.PluginManifest;
+import com.hypixel.hytale.component.ComponentType;
+import com.hypixel.hytale.server.core.Constants;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.plugin.JavaPluginInit;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 
 import br.tones.amigonpc.commands.AmigoCommand;
 import br.tones.amigonpc.commands.AmigoDebugCommand;
@@ -19,7 +22,11 @@ import br.tones.amigonpc.commands.AutoLootCommand;
 import br.tones.amigonpc.commands.CommandAccess;
 import br.tones.amigonpc.core.AmigoNpcManager;
 import br.tones.amigonpc.core.AmigoService;
+import br.tones.amigonpc.core.components.AmigoCompanionComponent;
+import br.tones.amigonpc.core.components.AmigoOwnerComponent;
+import br.tones.amigonpc.core.progress.ProgressionCurves;
 import br.tones.amigonpc.core.progress.XpProgression;
+import br.tones.amigonpc.core.swords.SwordWeaponTable;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -42,8 +49,9 @@ public final class AmigoNPCPlugin extends JavaPlugin {
 
     private AmigoService service;
     private ScheduledExecutorService scheduler;
-    private ScheduledFuture<?> downedTicker;
+    private ScheduledFuture<?> timerPump;
     private ScheduledFuture<?> followTicker;
+    private ScheduledFuture<?> curvesWatcher;
 
     public AmigoNPCPlugin(@Nonnull JavaPluginInit init) {
         super(init);
@@ -58,6 +66,11 @@ public final class AmigoNPCPlugin extends JavaPlugin {
             XpProgression.init();
         } catch (Throwable ignored) {}
 
+        // ✅ Curvas de progressão (amigonpc/curves.json; sem o arquivo vale o preset NORMAL)
+        try {
+            ProgressionCurves.init(Constants.UNIVERSE_PATH.resolve("amigonpc").resolve("curves.json"));
+        } catch (Throwable ignored) {}
+
         // Comando /amigo (com subcomandos spawn/despawn)
         var amigoCmd = new AmigoCommand(service);
         // ✅ tornar comandos públicos para qualquer player (sem permissão), exceto os admin-only
@@ -94,34 +107,85 @@ public final class AmigoNPCPlugin extends JavaPlugin {
         // ✅ Failsafe no login (cinto de segurança)
         hookLoginFailsafeViaEventRegistry();
 
+        // ✅ Marcador ECS do companheiro (antes dos sistemas: as queries usam o tipo)
+        registerCompanionComponent();
+
         // ✅ Vida real (HP), dano, estado DOWNED e revive automático
         registerDamageAndDownedSystem();
-        startDownedTicker();
+        startTimerPump();
+        startCurvesWatcher();
 
         // ✅ Follow + teleporte seguro (20h / 8v) e respawn automático em teleport/troca de mundo
+        // Follow/combate/loot no tick do mundo; o ticker fica como fallback.
+        registerFollowTickSystem();
         startFollowTicker();
         hookTeleportAutoRespawnViaEventRegistry();
     }
 
+    private void registerCompanionComponent() {
+        try {
+            ComponentType<EntityStore, AmigoCompanionComponent> type = this.getEntityStoreRegistry()
+                    .registerComponent(AmigoCompanionComponent.class, AmigoCompanionComponent::new);
+            AmigoCompanionComponent.setComponentType(type);
+        } catch (Throwable ignored) {
+            // Sem o componente, a identidade do Amigo continua no mapa de Refs do manager.
+        }
+        try {
+            ComponentType<EntityStore, AmigoOwnerComponent> type = this.getEntityStoreRegistry()
+                    .registerComponent(AmigoOwnerComponent.class, AmigoOwnerComponent::new);
+            AmigoOwnerComponent.setComponentType(type);
+        } catch (Throwable ignored) {
+            // Sem o marcador do dono, os sistemas do dono voltam a filtrar por Player + UUIDComponent.
+        }
+    }
+
+    /** Dano separado por papel: Amigo atingido (HP/DOWNED), dono atingido (combate), dono atacando (assistência). */
     private void registerDamageAndDownedSystem() {
         try {
             this.getEntityStoreRegistry().registerSystem(new br.tones.amigonpc.core.systems.AmigoDamageAndDownedSystem());
         } catch (Throwable ignored) {
             // Se a build não suportar registrar sistemas aqui, não impede o mod de carregar.
         }
+        try {
+            this.getEntityStoreRegistry().registerSystem(new br.tones.amigonpc.core.systems.AmigoOwnerDamageSystem());
+        } catch (Throwable ignored) {}
+        try {
+            this.getEntityStoreRegistry().registerSystem(new br.tones.amigonpc.core.systems.AmigoOwnerAttackSystem());
+        } catch (Throwable ignored) {}
+    }
+
+    private void registerFollowTickSystem() {
+        try {
+            this.getEntityStoreRegistry().registerSystem(new br.tones.amigonpc.core.systems.AmigoFollowTickSystem());
+        } catch (Throwable ignored) {
+            // Sem o sistema, o ticker (executor) continua fazendo o follow de todos os NPCs.
+        }
     }
 
-    private void startDownedTicker() {
+    /** Prazos do manager (revive, respawn pendente, gravação, resumo do loot): roda de temporizadores. */
+    private void startTimerPump() {
         try {
             if (this.scheduler != null) return;
             this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-                Thread t = new Thread(r, "AmigoNPC-DownedTicker");
+                Thread t = new Thread(r, "AmigoNPC-Timers");
                 t.setDaemon(true);
                 return t;
             });
-            this.downedTicker = this.scheduler.scheduleAtFixedRate(
-                    () -> AmigoNpcManager.getShared().tickDowned(),
-                    1, 1, TimeUnit.SECONDS
+            this.timerPump = this.scheduler.scheduleAtFixedRate(
+                    () -> AmigoNpcManager.getShared().advanceTimers(),
+                    50, 50, TimeUnit.MILLISECONDS
+            );
+        } catch (Throwable ignored) {
+        }
+    }
+
+    /** Troca a quente das curvas: relê curves.json quando o arquivo muda (checagem barata de mtime). */
+    private void startCurvesWatcher() {
+        try {
+            if (this.scheduler == null || this.curvesWatcher != null) return;
+            this.curvesWatcher = this.scheduler.scheduleAtFixedRate(
+                    ProgressionCurves::reloadIfChanged,
+                    5, 5, TimeUnit.SECONDS
             );
         } catch (Throwable ignored) {
         }
@@ -146,17 +210,37 @@ public final class AmigoNPCPlugin extends JavaPlugin {
         }
     }
 
+    @Override
+    protected void start() {
+        // ✅ Assets já carregados: resolve dano/animação de ataque de todas as armas da progressão
+        // (a 1a luta depois do boot não faz busca em Item/ItemPlayerAnimations)
+        try {
+            SwordWeaponTable.warmUp();
+        } catch (Throwable ignored) {}
+    }
+
     @Override
     protected void shutdown() {
         try {
-            if (downedTicker != null) downedTicker.cancel(false);
+            if (timerPump != null) timerPump.cancel(false);
         } catch (Throwable ignored) {}
         try {
             if (followTicker != null) followTicker.cancel(false);
         } catch (Throwable ignored) {}
+        try {
+            if (curvesWatcher != null) curvesWatcher.cancel(false);
+        } catch (Throwable ignored) {}
         try {
             if (scheduler != null) scheduler.shutdownNow();
         } catch (Throwable ignored) {}
+        // Campos marcados nos records (dirty) que ainda não viraram save*
+        try {
+            AmigoNpcManager.getShared().flushAllDirty();
+        } catch (Throwable ignored) {}
+        // Grava o que ainda estiver na fila de persistência (write-behind)
+        try {
+            br.tones.amigonpc.core.AmigoPersistence.flushAll();
+        } catch (Throwable ignored) {}
     }
 
     // =========================================================
@@ -303,7 +387,8 @@ public final class AmigoNPCPlugin extends JavaPlugin {
                     // ✅ Login (failsafe): apenas tenta remover o que estiver registrado (se sobrou algo).
                     if (isLogout) {
                         try {
-                            var bag = AmigoNpcManager.getShared().getOrLoadBackpack(uuid);
+                            // Só se a mochila foi carregada nesta sessão (senão o disco já está atualizado)
+                            var bag = AmigoNpcManager.getShared().getLoadedBackpack(uuid);
                             if (bag != null) {
                                 br.tones.amigonpc.core.AmigoPersistence.saveBackpack(uuid, bag);
                             }
@@ -312,6 +397,11 @@ public final class AmigoNPCPlugin extends JavaPlugin {
                     }
 
                     AmigoNpcManager.getShared().despawnStored(uuid);
+
+                    // Logout: grava o pendente e libera o perfil em cache (próximo login relê do disco)
+                    if (isLogout) {
+                        br.tones.amigonpc.core.AmigoPersistence.evict(uuid);
+                    }
                 }
             };
 
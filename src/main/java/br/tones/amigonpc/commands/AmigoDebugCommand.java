@@ -6,7 +6,9 @@ import com.hypixel.hytale.server.core.Message;
 import com.hypixel.hytale.server.core.command.system.AbstractCommand;
 import com.hypixel.hytale.server.core.command.system.CommandContext;
 
+import br.tones.amigonpc.core.AmigoPersistence;
 import br.tones.amigonpc.core.HytaleBridge;
+import br.tones.amigonpc.core.progress.ProgressionCurves;
 import br.tones.amigonpc.ui.AmigoUiFactory;
 import br.tones.amigonpc.ui.UiBridge;
 
@@ -52,6 +54,13 @@ public final class AmigoDebugCommand extends AbstractCommand {
         String uf = AmigoUiFactory.getLastError();
         ctx.sendMessage(Message.raw("§7- AmigoUiFactory: " + (uf == null ? "OK/sem erro" : uf)));
 
+        String cv = ProgressionCurves.getLastError();
+        ctx.sendMessage(Message.raw("§7- Curvas: " + (cv == null ? "OK/sem erro" : cv)
+                + " (geração " + ProgressionCurves.generation() + ")"));
+
+        String pe = AmigoPersistence.getLastError();
+        ctx.sendMessage(Message.raw("§7- Persistência: " + (pe == null ? "OK/sem erro" : pe)));
+
         ctx.sendMessage(Message.raw("§7Dica: teste §f/amigo spawn§7, §f/amigo despawn§7, §f/amigo defender§7."));
         return CompletableFuture.completedFuture(null);
     }
@@ -72,8 +72,7 @@ public final class AmigoDefenderSubCommand extends AbstractPlayerCommand {
             }
         }
 
-        // Persistência + aplica em memória
-        AmigoPersistence.saveDefenderEnabled(ownerId, enabled);
+        // Aplica em memória + persistência (o manager grava junto com os demais campos do NPC)
         AmigoNpcManager.getShared().setDefendeEnabled(ownerId, enabled);
 
         ctx.sendMessage(Message.raw("§7[AmigoNPC] Defender agora: " + (enabled ? "§aON" : "§cOFF")));
@@ -3,7 +3,6 @@ package br.tones.amigonpc.core;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -11,8 +10,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import com.hypixel.hytale.component.Ref;
 import com.hypixel.hytale.component.RemoveReason;
 import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.component.ComponentType;
 import com.hypixel.hytale.component.ComponentAccessor;
-import com.hypixel.hytale.component.Archetype;
 import com.hypixel.hytale.server.core.modules.entity.component.Interactable;
 import com.hypixel.hytale.server.core.modules.entity.item.ItemComponent;
 import com.hypixel.hytale.server.core.modules.entity.item.PickupItemComponent;
@@ -31,6 +30,7 @@ import com.hypixel.hytale.server.core.modules.entity.component.RespondToHit;
 import com.hypixel.hytale.server.core.entity.movement.MovementStatesComponent;
 import com.hypixel.hytale.server.core.modules.entitystats.EntityStatMap;
 import com.hypixel.hytale.server.core.modules.entitystats.asset.DefaultEntityStatTypes;
+import com.hypixel.hytale.server.core.universe.world.World;
 import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 import com.hypixel.hytale.server.npc.entities.NPCEntity;
 import com.hypixel.hytale.server.core.Message;
@@ -41,14 +41,18 @@ import com.hypixel.hytale.server.core.inventory.ItemStack;
 import com.hypixel.hytale.server.core.inventory.transaction.ItemStackTransaction;
 import com.hypixel.hytale.server.core.inventory.container.ItemContainer;
 import com.hypixel.hytale.server.core.asset.type.item.config.Item;
-import com.hypixel.hytale.server.core.asset.type.itemanimation.config.ItemPlayerAnimations;
 
+import br.tones.amigonpc.core.components.AmigoCompanionComponent;
+import br.tones.amigonpc.core.components.AmigoOwnerComponent;
 import br.tones.amigonpc.core.swords.SwordMessages;
 import br.tones.amigonpc.core.swords.SwordProgression;
+import br.tones.amigonpc.core.swords.SwordWeaponTable;
 import br.tones.amigonpc.core.progress.XpProgression;
-import br.tones.amigonpc.core.progress.StatScaling;
+import br.tones.amigonpc.core.progress.ProgressionCurve;
+import br.tones.amigonpc.core.progress.ProgressionCurves;
+import br.tones.amigonpc.core.world.EntitySpatialGrid;
+import br.tones.amigonpc.core.world.WorldTickSnapshot;
 import com.hypixel.hytale.protocol.AnimationSlot;
-import com.hypixel.hytale.protocol.ItemAnimation;
 import com.hypixel.hytale.protocol.MovementStates;
 import com.hypixel.hytale.math.shape.Box;
 import com.hypixel.hytale.math.vector.Vector3d;
@@ -87,22 +91,48 @@ public final class AmigoNpcManager {
     // Debug de combate/equip (use false para desligar logs)
     private static final boolean DEBUG_COMBAT_DEFAULT = false;
 
-    // Cache: resolve chave de animação de ataque por arma (best-effort via ItemPlayerAnimations)
-    private static final Map<String, String> WEAPON_ATTACK_ANIM_CACHE = new ConcurrentHashMap<>();
-
     private enum State { SPAWNING, ACTIVE, DESPAWNING }
 
+    /**
+     * Nível de detalhe do tick do follow (intervalo entre passadas completas).
+     * Todos os prazos do pipeline são absolutos (millis), então pular passadas não muda o comportamento,
+     * só a latência de reação (eventos de combate acordam o NPC na hora, ver wakeFollow).
+     */
+    private enum TickLod {
+        COMBAT(200L),   // alvo/assistência ativos
+        LOOTING(200L),  // correndo até itens / loot pós-combate pendente
+        MOVING(400L),   // dono andando, NPC andando ou longe do dono
+        IDLE(1000L),    // tudo parado perto do dono
+        DORMANT(1000L); // dono AFK: NPC estacionado, só a sonda barata (ver shouldWakeDormant)
+
+        final long intervalMs;
+
+        TickLod(long intervalMs) {
+            this.intervalMs = intervalMs;
+        }
+    }
+
+    private static final TickLod[] TICK_LODS = TickLod.values();
+
+    /** Estado quente do agendamento de todos os Amigos (ver CompanionTable). */
+    private static final CompanionTable<NpcRecord> COMPANIONS = new CompanionTable<>();
+
     private static final class NpcRecord {
         final Object worldObj;
         final UUID ownerId;
         volatile Object refObj;  // null enquanto spawnando
         volatile State state;
+        // Marcador ECS na entidade (null se o tipo não registrou: aí vale o mapa amigoRefs)
+        volatile AmigoCompanionComponent companion;
+
+        // Slot na COMPANIONS (CompanionTable.SCRATCH depois de liberado)
+        volatile int slot;
 
         // Vida real / DOWNED
         volatile boolean downed;
         volatile long downedUntilMillis;
 
-        // Persistência (1 arquivo por player): mochila 45 slots
+        // Persistência: mochila 45 slots (null até a 1a vez que for usada, ver getOrLoadBackpack)
         volatile SimpleItemContainer backpack;
 
         // Auto-loot (passivo): coleta itens dropados num raio curto
@@ -110,27 +140,35 @@ public final class AmigoNpcManager {
         volatile boolean lootPausedInventoryFull;
         volatile long nextLootFullRecheckMillis;
         volatile long nextLootFullMsgMillis;
-        volatile boolean backpackDirty;
-        volatile long nextBackpackSaveMillis;
-
-
-// Loot pós-combate: combat tags (anti-roubo) + LOOTING correndo até o item
-final java.util.ArrayList<CombatTag> combatTags = new java.util.ArrayList<>();
-volatile long lastCombatEndMillis;
-volatile long lastCombatTagMillis;
-volatile Vector3d lastBattleCenter;
-volatile boolean wasInCombat;
-volatile boolean lootingActive;
-volatile Object lootTargetRefObj;
-volatile long lootTargetSinceMillis;
-final java.util.ArrayList<Object> pendingLootRefObjs = new java.util.ArrayList<>();
-final java.util.Map<Object, Long> lootProcessedUntil = new java.util.concurrent.ConcurrentHashMap<>();
-
-
-        
-// Loot chat summary (reduz poluição): acumula quantidades e envia após um pequeno atraso
-final java.util.Map<String, Integer> lootChatAcc = new java.util.LinkedHashMap<>();
-volatile long lootChatSendAtMillis;
+
+        // Persistência agrupada: campos alterados (AmigoPersistence.FIELD_*) aguardando o flush
+        final java.util.concurrent.atomic.AtomicInteger dirtyFields = new java.util.concurrent.atomic.AtomicInteger();
+        volatile long nextPersistFlushMillis;
+
+        // Tick nativo, LOD, orçamento e amostras de movimento: ficam na COMPANIONS (acessores no fim do registro)
+
+        // Prazos na roda de temporizadores (TIMERS): revive, vigia do corpo DOWNED, gravação, resumo do loot
+        TimerWheel.Timeout reviveTimer;
+        TimerWheel.Timeout downedWatchTimer;
+        TimerWheel.Timeout persistTimer;
+        TimerWheel.Timeout lootChatTimer;
+        volatile TimerWheel.Timeout hudTimer;    // HUD atrasado pelo throttle (amigonpc.hudThrottleMs)
+
+        // HUD acima do NPC: texto em cache, só grava o Nameplate quando muda (thread do mundo)
+        final NameplateRenderer hud = new NameplateRenderer();
+
+        // Últimas flags de movimento gravadas (MOVE_*) e em qual entidade; -1 = nunca gravou
+        int appliedMoveBits = -1;
+        Object appliedMoveRef;
+
+
+        // Sub-estados alocados no 1o uso e soltos quando ociosos (a maioria dos Amigos nunca luta/coleta)
+        volatile CombatTagState combat;          // combat tags (anti-roubo) + transição combate -> LOOTING
+        volatile LootState loot;                 // LOOTING correndo até o item
+        volatile LootChatState lootChat;         // resumo do loot no chat
+        volatile PendingRespawn respawnRequest;  // re-spawn automático (ex.: teleport do dono)
+        volatile DebugState debug;               // rate limit dos logs de debug
+
 // XP/nível (simples, etapa inicial)
         volatile int level = 1;
         volatile String equippedWeaponId;
@@ -139,6 +177,9 @@ volatile long lootChatSendAtMillis;
         // Progressão do NPC (XP acumulativa + level calculado)
         volatile long totalXp = 0L;
         volatile int npcLevelCached = 1;
+        // Curva resolvida (player > mundo > padrão); revalidada quando ProgressionCurves.generation() muda
+        volatile ProgressionCurve curve;
+        volatile int curveGeneration;
 
         // Stats base (capturados 1x) para scaling (HP/DEF)
         volatile long baseHp = -1L;
@@ -148,21 +189,10 @@ volatile long lootChatSendAtMillis;
         volatile String modelId;
         volatile double modelScale;
 
-        // Re-spawn automático (ex.: teleport do dono)
-        volatile boolean respawnRequested;
-        volatile Object respawnWorldObj;
-        volatile Object respawnSenderObj;
-        volatile long respawnAtMillis;
-        volatile String respawnMessage;
-
         // Follow/anim: suavização para evitar "correndo parado" e ficar colado
         volatile long lastMoveToMillis;
-        volatile long lastSampleMillis;
         volatile Vector3d lastMoveTarget;
         volatile long lastMoveIssuedMillis;
-        volatile Vector3d lastOwnerPos;
-        volatile Vector3d lastNpcPos;
-        volatile long lastNpcMovedMillis;
         volatile long lastTeleportMillis;
         long farSinceMillis;
 
@@ -179,15 +209,17 @@ volatile long lootChatSendAtMillis;
         volatile String lastAttackAnimId;
         volatile long clearAttackAnimAtMillis;
 
-        // Debug (rate limit)
-        volatile long debugNextEquipMillis;
-        volatile long debugNextCombatMillis;
-        volatile long debugNextAttackMillis;
-
         // idle look-around (sutil)
         volatile float idleLookYawOffset;
         volatile long idleLookNextMillis;
 
+        // Marked targets já gravados no role (LockedTarget/CombatTarget) e em qual NPCEntity.
+        // Só a thread do mundo escreve; MARK_UNSET = desconhecido (próxima chamada grava).
+        Object markedOnEntity;
+        Object markedLocked = MARK_UNSET;
+        Object markedCombat = MARK_UNSET;
+        long markedAtMillis;
+
         // Combate (etapa inicial): quando o dono sofre dano, o NPC troca o LockedTarget
         // para o agressor por alguns segundos, depois volta a seguir.
         volatile Object combatTargetRefObj;
@@ -225,6 +257,149 @@ volatile long lootChatSendAtMillis;
             this.refObj = refObj;
             this.state = state;
             this.debugLogEnabled = DEBUG_COMBAT_DEFAULT;
+            this.slot = COMPANIONS.allocate(this);
+            setTickLod(TickLod.MOVING);
+        }
+
+        // ----- Sub-estados preguiçosos -----
+
+        CombatTagState combat() {
+            CombatTagState c = combat;
+            if (c == null) {
+                synchronized (this) {
+                    c = combat;
+                    if (c == null) combat = c = new CombatTagState();
+                }
+            }
+            return c;
+        }
+
+        LootState loot() {
+            LootState l = loot;
+            if (l == null) {
+                synchronized (this) {
+                    l = loot;
+                    if (l == null) loot = l = new LootState();
+                }
+            }
+            return l;
+        }
+
+        LootChatState lootChat() {
+            LootChatState l = lootChat;
+            if (l == null) {
+                synchronized (this) {
+                    l = lootChat;
+                    if (l == null) lootChat = l = new LootChatState();
+                }
+            }
+            return l;
+        }
+
+        DebugState debug() {
+            DebugState d = debug;
+            if (d == null) {
+                synchronized (this) {
+                    d = debug;
+                    if (d == null) debug = d = new DebugState();
+                }
+            }
+            return d;
+        }
+
+        boolean lootingActive() {
+            LootState l = loot;
+            return l != null && l.active;
+        }
+
+        boolean hasPendingLoot() {
+            LootState l = loot;
+            return l != null && !l.pending.isEmpty();
+        }
+
+        // ----- Espelhos de estado usados pela varredura (flags da tabela) -----
+
+        void setState(State s) {
+            state = s;
+            COMPANIONS.setFlag(slot, CompanionTable.FLAG_ACTIVE, s == State.ACTIVE);
+        }
+
+        void setDowned(boolean d) {
+            downed = d;
+            COMPANIONS.setFlag(slot, CompanionTable.FLAG_DOWNED, d);
+        }
+
+        // ----- Agendamento (tick nativo / LOD / orçamento) -----
+
+        /** 0 = tickar no próximo passo */
+        long nextFollowDue() { return COMPANIONS.columns().nextDueMillis[slot]; }
+        void setNextFollowDue(long v) { COMPANIONS.columns().nextDueMillis[slot] = v; }
+
+        /** Última vez que o AmigoFollowTickSystem viu o NPC. */
+        long lastNativeTick() { return COMPANIONS.columns().nativeSeenMillis[slot]; }
+        void setLastNativeTick(long v) { COMPANIONS.columns().nativeSeenMillis[slot] = v; }
+
+        TickLod tickLod() { return TICK_LODS[COMPANIONS.columns().lod[slot]]; }
+        void setTickLod(TickLod l) { COMPANIONS.columns().lod[slot] = (byte) l.ordinal(); }
+
+        /** Orçamento do tick: ficou para a próxima passada (vai na frente da fila). */
+        boolean followDeferred() { return COMPANIONS.hasFlag(slot, CompanionTable.FLAG_DEFERRED); }
+        void setFollowDeferred(boolean v) {
+            if (followDeferred() != v) COMPANIONS.setFlag(slot, CompanionTable.FLAG_DEFERRED, v);
+        }
+
+        // ----- Amostras de movimento (dono e NPC) -----
+
+        long lastOwnerMoved() { return COMPANIONS.columns().ownerMovedMillis[slot]; }
+        void setLastOwnerMoved(long v) { COMPANIONS.columns().ownerMovedMillis[slot] = v; }
+
+        long lastNpcMoved() { return COMPANIONS.columns().npcMovedMillis[slot]; }
+        void setLastNpcMoved(long v) { COMPANIONS.columns().npcMovedMillis[slot] = v; }
+
+        double lastOwnerHorizontal() { return COMPANIONS.columns().ownerHorizontal[slot]; }
+        void setLastOwnerHorizontal(double v) { COMPANIONS.columns().ownerHorizontal[slot] = v; }
+
+        boolean hasOwnerSample() { return COMPANIONS.hasFlag(slot, CompanionTable.FLAG_OWNER_SAMPLE); }
+
+        /** Distância² até a última posição amostrada do dono (infinito sem amostra). */
+        double ownerSampleDistSq(Vector3d p) {
+            if (!hasOwnerSample()) return Double.POSITIVE_INFINITY;
+            CompanionTable.Columns c = COMPANIONS.columns();
+            int i = slot;
+            double dx = p.getX() - c.ownerX[i], dy = p.getY() - c.ownerY[i], dz = p.getZ() - c.ownerZ[i];
+            return dx * dx + dy * dy + dz * dz;
+        }
+
+        void setOwnerSample(Vector3d p) {
+            CompanionTable.Columns c = COMPANIONS.columns();
+            int i = slot;
+            c.ownerX[i] = p.getX();
+            c.ownerY[i] = p.getY();
+            c.ownerZ[i] = p.getZ();
+            if (!hasOwnerSample()) COMPANIONS.setFlag(i, CompanionTable.FLAG_OWNER_SAMPLE, true);
+        }
+
+        boolean hasNpcSample() { return COMPANIONS.hasFlag(slot, CompanionTable.FLAG_NPC_SAMPLE); }
+        long npcSampleMillis() { return COMPANIONS.columns().npcSampleMillis[slot]; }
+        double npcX() { return COMPANIONS.columns().npcX[slot]; }
+        double npcY() { return COMPANIONS.columns().npcY[slot]; }
+        double npcZ() { return COMPANIONS.columns().npcZ[slot]; }
+
+        double npcSampleDistSq(Vector3d p) {
+            CompanionTable.Columns c = COMPANIONS.columns();
+            int i = slot;
+            double dx = p.getX() - c.npcX[i], dy = p.getY() - c.npcY[i], dz = p.getZ() - c.npcZ[i];
+            return dx * dx + dy * dy + dz * dz;
+        }
+
+        void setNpcSample(Vector3d p, long now) {
+            CompanionTable.Columns c = COMPANIONS.columns();
+            int i = slot;
+            c.npcX[i] = p.getX();
+            c.npcY[i] = p.getY();
+            c.npcZ[i] = p.getZ();
+            c.npcSampleMillis[i] = now;
+            if (!hasNpcSample()) COMPANIONS.setFlag(i, CompanionTable.FLAG_NPC_SAMPLE, true);
         }
     }
 
@@ -243,6 +418,37 @@ volatile long lootChatSendAtMillis;
     }
 
 
+/** Combat tags + centro da batalha. Nasce no 1o recordCombatTag; solto quando o loot da luta termina. */
+private static final class CombatTagState {
+    final java.util.ArrayList<CombatTag> tags = new java.util.ArrayList<>();
+    volatile long lastCombatEndMillis;
+    volatile long lastCombatTagMillis;
+    volatile Vector3d lastBattleCenter;
+    volatile boolean wasInCombat;
+}
+
+/** LOOTING pós-combate: item alvo, pendentes e itens "ignorados por um tempo". */
+private static final class LootState {
+    volatile boolean active;
+    volatile Object targetRefObj;
+    volatile long targetSinceMillis;
+    final java.util.ArrayList<Object> pending = new java.util.ArrayList<>();
+    final java.util.Map<Object, Long> processedUntil = new java.util.concurrent.ConcurrentHashMap<>();
+}
+
+/** Resumo do loot no chat: acumula quantidades e envia após um pequeno atraso. */
+private static final class LootChatState {
+    final java.util.Map<String, Integer> acc = new java.util.LinkedHashMap<>();
+    volatile long sendAtMillis;
+}
+
+/** Rate limit dos logs de debug (só existe com /amigo log ligado). */
+private static final class DebugState {
+    volatile long nextEquipMillis;
+    volatile long nextCombatMillis;
+    volatile long nextAttackMillis;
+}
+
 private static final class CombatTag {
     final Object targetRefObj;
     Vector3d pos;
@@ -256,9 +462,25 @@ private static final class CombatTag {
 }
 
     private final Map<UUID, NpcRecord> npcRefPorPlayer = new ConcurrentHashMap<>();
+
+    private void register(UUID ownerId, NpcRecord rec) {
+        NpcRecord prev = npcRefPorPlayer.put(ownerId, rec);
+        if (prev != null && prev != rec) releaseSlot(prev);
+    }
+
+    /** Remove o registro (se ainda for o atual) e devolve o slot da COMPANIONS. */
+    private void unregister(UUID ownerId, NpcRecord rec) {
+        if (npcRefPorPlayer.remove(ownerId, rec)) releaseSlot(rec);
+    }
+
+    private static void releaseSlot(NpcRecord rec) {
+        int slot = rec.slot;
+        rec.slot = CompanionTable.SCRATCH;
+        COMPANIONS.release(slot);
+    }
     private final Map<UUID, Boolean> debugLogByOwner = new ConcurrentHashMap<>();
     private final Map<UUID, PendingRespawn> pendingRespawns = new ConcurrentHashMap<>();
-    // Set rápido para identificar o NPC do Amigo em eventos (ex.: Damage)
+    // Fallback do AmigoCompanionComponent (build sem registro de componente): Ref -> dono
     private final Map<Object, UUID> amigoRefs = new ConcurrentHashMap<>();
     private static volatile String LAST_ERROR;
 
@@ -285,13 +507,11 @@ private static final class CombatTag {
     private static final long AUTOLOOT_INTERVAL_MS = 250L;
     private static final int AUTOLOOT_MAX_ITEMS_PER_SCAN = 8;
     private static final long AUTOLOOT_FULL_MSG_COOLDOWN_MS = 30_000L;
-    private static final Archetype<EntityStore> AUTOLOOT_QUERY = Archetype.of(
-            TransformComponent.getComponentType(),
-            ItemComponent.getComponentType()
-    );
 
     // Debounce de persistência da mochila quando itens são inseridos rapidamente.
     private static final long BACKPACK_SAVE_DEBOUNCE_MS = 400L;
+    // Debounce de XP/stats base: uma sequência de kills + level up vira 1 escrita.
+    private static final long PROGRESS_SAVE_DEBOUNCE_MS = 2_000L;
 
     
 // =========================================================
@@ -352,12 +572,14 @@ private static final int LOOT_PENDING_MAX = 512;
     public void setDefendeEnabled(UUID owner, boolean enabled) {
         if (owner == null) return;
 
-        // persistência (1 arquivo por player)
-        AmigoPersistence.saveDefenderEnabled(owner, enabled);
-
         NpcRecord rec = npcRefPorPlayer.get(owner);
-        if (rec != null) {
+        if (rec == null) {
+            // persistência (1 arquivo por player)
+            AmigoPersistence.saveDefenderEnabled(owner, enabled);
+        } else {
             rec.defendeEnabled = enabled;
+            markDirty(rec, AmigoPersistence.FIELD_DEFENDER, 0L);
+            wakeFollow(rec);
             if (!enabled) {
                 clearAssist(rec);
             }
@@ -384,16 +606,19 @@ private static final int LOOT_PENDING_MAX = 512;
 
     public void setAutoLootEnabled(UUID ownerId, boolean enabled) {
         if (ownerId == null) return;
-        AmigoPersistence.saveAutoLootEnabled(ownerId, enabled);
         NpcRecord rec = npcRefPorPlayer.get(ownerId);
-        if (rec != null) {
+        if (rec == null) {
+            AmigoPersistence.saveAutoLootEnabled(ownerId, enabled);
+        } else {
             rec.autoLootEnabled = enabled;
+            markDirty(rec, AmigoPersistence.FIELD_AUTOLOOT, 0L);
+            wakeFollow(rec);
             if (!enabled) {
                 // ao desligar, garantir que não fica em estado de looting/pausa
                 endCombatTaggedLooting(rec);
                 rec.lootPausedInventoryFull = false;
-                rec.lootChatAcc.clear();
-                rec.lootChatSendAtMillis = 0L;
+                cancelTimer(rec.lootChatTimer);
+                rec.lootChat = null;
             }
         }
     }
@@ -402,14 +627,8 @@ private static final int LOOT_PENDING_MAX = 512;
     // Mantemos simples para evitar ficar preso em itens/ref inválidos.
     private static void endCombatTaggedLooting(NpcRecord rec) {
         if (rec == null) return;
-        rec.lootingActive = false;
-        rec.lootTargetRefObj = null;
-        rec.lootTargetSinceMillis = 0L;
-        if (rec.pendingLootRefObjs != null) rec.pendingLootRefObjs.clear();
-        if (rec.lootProcessedUntil != null) rec.lootProcessedUntil.clear();
-        if (rec.combatTags != null) rec.combatTags.clear();
-        rec.lastBattleCenter = null;
-        rec.lastCombatEndMillis = 0L;
+        rec.loot = null;
+        rec.combat = null;
         rec.lootPausedInventoryFull = false;
         // Reutiliza o timer já existente do auto-loot para evitar um campo extra.
         rec.nextAutoLootMillis = 0L;
@@ -437,7 +656,10 @@ private static final int LOOT_PENDING_MAX = 512;
         if (owner == null) return;
         debugLogByOwner.put(owner, enabled);
         NpcRecord rec = npcRefPorPlayer.get(owner);
-        if (rec != null) rec.debugLogEnabled = enabled;
+        if (rec != null) {
+            rec.debugLogEnabled = enabled;
+            if (!enabled) rec.debug = null;
+        }
     }
 
     // =========================================================
@@ -565,35 +787,8 @@ private static final int LOOT_PENDING_MAX = 512;
             Boolean dbg = debugLogByOwner.get(ownerId);
             rec.debugLogEnabled = (dbg != null) ? dbg.booleanValue() : DEBUG_COMBAT_DEFAULT;
         } catch (Throwable ignored) {}
-        // ✅ carrega mochila do disco (1 arquivo por player)
-        rec.backpack = AmigoPersistence.loadBackpack(ownerId);
-        // ✅ carrega aparência (opcional)
-        String savedModel = AmigoPersistence.loadModelId(ownerId);
-        rec.modelId = (savedModel == null || savedModel.isBlank()) ? DEFAULT_MODEL_ID : savedModel;
-        double savedScale = AmigoPersistence.loadModelScale(ownerId);
-        rec.modelScale = (savedScale <= 0.0) ? DEFAULT_MODEL_SCALE : savedScale;
-        // ✅ carrega nível de espadas + arma equipada (progressão corpo a corpo)
-        rec.level = SwordProgression.clampLevel(AmigoPersistence.loadSwordLevel(ownerId));
-        rec.equippedWeaponId = AmigoPersistence.loadEquippedWeaponId(ownerId);
-        // ✅ carrega modo Defender (persistente)
-        rec.defendeEnabled = AmigoPersistence.loadDefenderEnabled(ownerId);
-        rec.autoLootEnabled = AmigoPersistence.loadAutoLootEnabled(ownerId);
-
-        // ✅ Progressão do NPC (XP total + stats base para scaling)
-        rec.totalXp = Math.max(0L, AmigoPersistence.loadTotalXp(ownerId));
-        rec.npcLevelCached = XpProgression.levelFromTotalXp(rec.totalXp);
-
-        // ✅ Sincroniza o nível de espadas com o level calculado do totalXp (HUD e combate usam nível da espada)
-        int computedSwordLevel = SwordProgression.clampLevel(rec.npcLevelCached);
-        if (computedSwordLevel != rec.level) {
-            rec.level = computedSwordLevel;
-            String expectedWeapon = SwordProgression.weaponIdForLevel(rec.level);
-            rec.equippedWeaponId = expectedWeapon;
-            AmigoPersistence.saveSwordState(ownerId, rec.level, expectedWeapon);
-        }
-        rec.baseHp = AmigoPersistence.loadBaseHp(ownerId);
-        rec.baseDef = AmigoPersistence.loadBaseDef(ownerId);
-        npcRefPorPlayer.put(ownerId, rec);
+        applyPersistedProfile(rec, ownerId);
+        register(ownerId, rec);
 
         boolean queued = HytaleBridge.worldExecute(worldObj, () -> {
             try {
@@ -604,7 +799,7 @@ private static final int LOOT_PENDING_MAX = 512;
                 Object componentStore = getComponentStoreFromWorld(worldObj);
                 if (componentStore == null) {
                     setError("Não consegui obter Store via world.getEntityStore().getStore().");
-                    npcRefPorPlayer.remove(ownerId, rec);
+                    unregister(ownerId, rec);
                     return;
                 }
 
@@ -612,7 +807,7 @@ private static final int LOOT_PENDING_MAX = 512;
                 Object npcPlugin = invokeStaticNoArg("com.hypixel.hytale.server.npc.NPCPlugin", "get");
                 if (npcPlugin == null) {
                     setError("NPCPlugin.get() não disponível nesta build.");
-                    npcRefPorPlayer.remove(ownerId, rec);
+                    unregister(ownerId, rec);
                     return;
                 }
 
@@ -623,7 +818,7 @@ private static final int LOOT_PENDING_MAX = 512;
                 pos = coerceToVector3d(pos);
                 if (pos == null) {
                     setError("Não consegui obter posição Vector3d do player.");
-                    npcRefPorPlayer.remove(ownerId, rec);
+                    unregister(ownerId, rec);
                     return;
                 }
 
@@ -640,14 +835,14 @@ private static final int LOOT_PENDING_MAX = 512;
                 Object model = buildModelFromAssetId(rec.modelId, (float) rec.modelScale);
                 if (model == null) {
                     setError("ModelAsset não encontrado/ inválido: " + rec.modelId);
-                    npcRefPorPlayer.remove(ownerId, rec);
+                    unregister(ownerId, rec);
                     return;
                 }
 
                 int roleIndex = getNpcRoleIndexWithFallbacks(npcPlugin, DEFAULT_ROLE_NAME);
                 if (roleIndex < 0) {
                     setError("Missing NPC role: " + DEFAULT_ROLE_NAME);
-                    npcRefPorPlayer.remove(ownerId, rec);
+                    unregister(ownerId, rec);
                     return;
                 }
 
@@ -655,7 +850,7 @@ private static final int LOOT_PENDING_MAX = 512;
                 pair = invokeSpawnEntity(npcPlugin, componentStore, roleIndex, pos, rot, model, ownerRef);
                 if (pair == null) {
                     setError("spawnEntity retornou null (assinatura incompatível). modelId=" + rec.modelId);
-                    npcRefPorPlayer.remove(ownerId, rec);
+                    unregister(ownerId, rec);
                     return;
                 }
 
@@ -664,9 +859,7 @@ private static final int LOOT_PENDING_MAX = 512;
                 rec.refObj = (ref != null ? ref : pair);
 
                 // Marca como "Amigo" para filtros (ex.: imunidade a dano)
-                if (rec.refObj != null) {
-                    amigoRefs.put(rec.refObj, ownerId);
-                }
+                markCompanion(componentStore, rec, ownerId, ownerRef);
 
                 // Se pediram despawn enquanto spawnava: remove já (e respeita respawn automático)
                 if (rec.state == State.DESPAWNING) {
@@ -691,18 +884,18 @@ private static final int LOOT_PENDING_MAX = 512;
                     applyNpcScaling(store, npcRef, ownerId, rec, true);
                 } catch (Throwable ignored) {}
 
-                rec.state = State.ACTIVE;
+                rec.setState(State.ACTIVE);
 
             } catch (Throwable t) {
                 setError("spawn() falhou: " + t.getClass().getSimpleName() + " - " + t.getMessage());
-                npcRefPorPlayer.remove(ownerId, rec);
+                unregister(ownerId, rec);
                 if (rec.refObj != null) amigoRefs.remove(rec.refObj);
             }
         });
 
         if (!queued) {
             setError("world.execute falhou: " + HytaleBridge.getLastError());
-            npcRefPorPlayer.remove(ownerId, rec);
+            unregister(ownerId, rec);
             return false;
         }
 
@@ -745,39 +938,14 @@ private static final int LOOT_PENDING_MAX = 512;
             Boolean dbg = debugLogByOwner.get(ownerId);
             rec.debugLogEnabled = (dbg != null) ? dbg.booleanValue() : DEBUG_COMBAT_DEFAULT;
         } catch (Throwable ignored) {}
-        rec.backpack = AmigoPersistence.loadBackpack(ownerId);
-        String savedModel = AmigoPersistence.loadModelId(ownerId);
-        rec.modelId = (savedModel == null || savedModel.isBlank()) ? DEFAULT_MODEL_ID : savedModel;
-        double savedScale = AmigoPersistence.loadModelScale(ownerId);
-        rec.modelScale = (savedScale <= 0.0) ? DEFAULT_MODEL_SCALE : savedScale;
-        // ✅ carrega nível de espadas + arma equipada (progressão corpo a corpo)
-        rec.level = SwordProgression.clampLevel(AmigoPersistence.loadSwordLevel(ownerId));
-        rec.equippedWeaponId = AmigoPersistence.loadEquippedWeaponId(ownerId);
-        // ✅ carrega modo Defender (persistente)
-        rec.defendeEnabled = AmigoPersistence.loadDefenderEnabled(ownerId);
-        rec.autoLootEnabled = AmigoPersistence.loadAutoLootEnabled(ownerId);
-
-        // ✅ Progressão do NPC (XP total + stats base para scaling)
-        rec.totalXp = Math.max(0L, AmigoPersistence.loadTotalXp(ownerId));
-        rec.npcLevelCached = XpProgression.levelFromTotalXp(rec.totalXp);
-
-        // ✅ Sincroniza o nível de espadas com o level calculado do totalXp (HUD e combate usam nível da espada)
-        int computedSwordLevel = SwordProgression.clampLevel(rec.npcLevelCached);
-        if (computedSwordLevel != rec.level) {
-            rec.level = computedSwordLevel;
-            String expectedWeapon = SwordProgression.weaponIdForLevel(rec.level);
-            rec.equippedWeaponId = expectedWeapon;
-            AmigoPersistence.saveSwordState(ownerId, rec.level, expectedWeapon);
-        }
-        rec.baseHp = AmigoPersistence.loadBaseHp(ownerId);
-        rec.baseDef = AmigoPersistence.loadBaseDef(ownerId);
-        npcRefPorPlayer.put(ownerId, rec);
+        applyPersistedProfile(rec, ownerId);
+        register(ownerId, rec);
 
         try {
             Object npcPlugin = invokeStaticNoArg("com.hypixel.hytale.server.npc.NPCPlugin", "get");
             if (npcPlugin == null) {
                 setError("NPCPlugin.get() não disponível nesta build.");
-                npcRefPorPlayer.remove(ownerId, rec);
+                unregister(ownerId, rec);
                 return false;
             }
 
@@ -791,7 +959,7 @@ private static final int LOOT_PENDING_MAX = 512;
             pos = coerceToVector3d(pos);
             if (pos == null) {
                 setError("Não consegui obter posição Vector3d do player.");
-                npcRefPorPlayer.remove(ownerId, rec);
+                unregister(ownerId, rec);
                 return false;
             }
 
@@ -804,21 +972,21 @@ private static final int LOOT_PENDING_MAX = 512;
             Object model = buildModelFromAssetId(rec.modelId, (float) rec.modelScale);
             if (model == null) {
                 setError("ModelAsset não encontrado/ inválido: " + rec.modelId);
-                npcRefPorPlayer.remove(ownerId, rec);
+                unregister(ownerId, rec);
                 return false;
             }
 
             int roleIndex = getNpcRoleIndexWithFallbacks(npcPlugin, DEFAULT_ROLE_NAME);
             if (roleIndex < 0) {
                 setError("Missing NPC role: " + DEFAULT_ROLE_NAME);
-                npcRefPorPlayer.remove(ownerId, rec);
+                unregister(ownerId, rec);
                 return false;
             }
 
             pair = invokeSpawnEntity(npcPlugin, store, roleIndex, pos, rot, model, playerEntityRef);
             if (pair == null) {
                 setError("spawnEntity retornou null (assinatura incompatível). modelId=" + rec.modelId);
-                npcRefPorPlayer.remove(ownerId, rec);
+                unregister(ownerId, rec);
                 return false;
             }
 
@@ -826,9 +994,7 @@ private static final int LOOT_PENDING_MAX = 512;
             rec.refObj = (ref != null ? ref : pair);
 
             // Marca como "Amigo" para filtros (ex.: imunidade a dano)
-            if (rec.refObj != null) {
-                amigoRefs.put(rec.refObj, ownerId);
-            }
+            markCompanion(store, rec, ownerId, playerEntityRef);
 
             if (rec.state == State.DESPAWNING) {
                 if (doRemoveEntity(store, rec.refObj)) {
@@ -847,12 +1013,12 @@ private static final int LOOT_PENDING_MAX = 512;
                 applyNpcScaling(store, (Ref<EntityStore>) rec.refObj, ownerId, rec, true);
             } catch (Throwable ignored) {}
 
-            rec.state = State.ACTIVE;
+            rec.setState(State.ACTIVE);
             return true;
 
         } catch (Throwable t) {
             setError("spawnWithStore() falhou: " + t.getClass().getSimpleName() + " - " + t.getMessage());
-            npcRefPorPlayer.remove(ownerId, rec);
+            unregister(ownerId, rec);
             if (rec.refObj != null) amigoRefs.remove(rec.refObj);
             return false;
         }
@@ -873,13 +1039,11 @@ private static final int LOOT_PENDING_MAX = 512;
             return false;
         }
 
-        rec.state = State.DESPAWNING;
+        rec.setState(State.DESPAWNING);
 
         try {
-            if (rec.backpack != null) {
-                AmigoPersistence.saveBackpack(ownerId, rec.backpack);
-            }
-            try { AmigoPersistence.saveSwordState(ownerId, rec.level, rec.equippedWeaponId); } catch (Throwable ignored2) {}
+            markDirty(rec, AmigoPersistence.FIELD_BACKPACK | AmigoPersistence.FIELD_SWORD, 0L);
+            flushDirtyFields(rec, System.currentTimeMillis(), true);
         } catch (Throwable ignored) {}
 
         if (rec.refObj == null) {
@@ -896,7 +1060,7 @@ private static final int LOOT_PENDING_MAX = 512;
 
     /**
      * Teleport/troca de mundo do dono: pede re-spawn automático no novo mundo.
-     * Se já existe NPC: marca respawnRequested e despawna primeiro (salvando mochila).
+     * Se já existe NPC: guarda o pedido em respawnRequest e despawna primeiro (salvando mochila).
      * Se não existe: só spawna.
      */
     public boolean requestRespawn(Object worldObj, UUID ownerId, Object senderObj) {
@@ -914,15 +1078,11 @@ private static final int LOOT_PENDING_MAX = 512;
 
         NpcRecord rec = npcRefPorPlayer.get(ownerId);
         if (rec == null) {
-            pendingRespawns.put(ownerId, new PendingRespawn(worldObj, senderObj, at, msg));
+            schedulePendingRespawn(ownerId, new PendingRespawn(worldObj, senderObj, at, msg));
             return true;
         }
 
-        rec.respawnRequested = true;
-        rec.respawnWorldObj = worldObj;
-        rec.respawnSenderObj = senderObj;
-        rec.respawnAtMillis = at;
-        rec.respawnMessage = msg;
+        rec.respawnRequest = new PendingRespawn(worldObj, senderObj, at, msg);
 
         // Força despawn do atual (no mundo antigo), e o respawn acontecerá quando remover.
         return despawn(rec.worldObj != null ? rec.worldObj : worldObj, ownerId);
@@ -941,15 +1101,13 @@ private static final int LOOT_PENDING_MAX = 512;
         }
 
         // marca DESPAWNING imediatamente (impede re-spawn)
-        rec.state = State.DESPAWNING;
+        rec.setState(State.DESPAWNING);
 
         // ✅ Salva imediatamente o que importa (mochila)
         // Mesmo que o despawn físico ocorra no próximo tick, o estado fica persistido.
         try {
-            if (rec.backpack != null) {
-                AmigoPersistence.saveBackpack(ownerId, rec.backpack);
-            }
-            try { AmigoPersistence.saveSwordState(ownerId, rec.level, rec.equippedWeaponId); } catch (Throwable ignored2) {}
+            markDirty(rec, AmigoPersistence.FIELD_BACKPACK | AmigoPersistence.FIELD_SWORD, 0L);
+            flushDirtyFields(rec, System.currentTimeMillis(), true);
         } catch (Throwable ignored) {}
 
         // prefere o world salvo no spawn
@@ -1018,22 +1176,57 @@ private static final int LOOT_PENDING_MAX = 512;
             }
         } catch (Throwable ignored) {}
 
-        boolean doRespawn = rec.respawnRequested && rec.respawnWorldObj != null;
-        Object respawnWorld = rec.respawnWorldObj;
-        Object respawnSender = rec.respawnSenderObj;
+        PendingRespawn respawn = rec.respawnRequest;
+        rec.respawnRequest = null;
+
+        flushDirtyFields(rec, System.currentTimeMillis(), true);
+        unregister(ownerId, rec);
 
-        rec.respawnRequested = false;
-        rec.respawnWorldObj = null;
-        rec.respawnSenderObj = null;
+        if (respawn != null && respawn.worldObj != null) {
+            schedulePendingRespawn(ownerId, respawn);
+        }
+    }
+
+    /**
+     * Preenche o record com o perfil salvo (campos quentes via AmigoPersistence.loadHot).
+     * A mochila NÃO é carregada aqui: getOrLoadBackpack carrega na 1a vez que for usada.
+     */
+    private static void applyPersistedProfile(NpcRecord rec, UUID ownerId) {
+        AmigoPersistence.HotProfile hot = AmigoPersistence.loadHot(ownerId);
+        // Perfil ilegível: sobe com os valores de um perfil vazio (sem modelo o spawn falharia)
+        if (hot == null) hot = AmigoPersistence.HotProfile.DEFAULTS;
+
+        // ✅ aparência (opcional)
+        rec.modelId = (hot.modelId == null || hot.modelId.isBlank()) ? DEFAULT_MODEL_ID : hot.modelId;
+        rec.modelScale = (hot.modelScale <= 0.0) ? DEFAULT_MODEL_SCALE : hot.modelScale;
+        // ✅ nível de espadas + arma equipada (progressão corpo a corpo)
+        rec.level = SwordProgression.clampLevel(hot.swordLevel);
+        rec.equippedWeaponId = hot.equippedWeaponId;
+        // ✅ modo Defender (persistente)
+        rec.defendeEnabled = hot.defenderEnabled;
+        rec.autoLootEnabled = hot.autoLootEnabled;
 
-        npcRefPorPlayer.remove(ownerId, rec);
+        // ✅ Progressão do NPC (XP total + stats base para scaling)
+        rec.totalXp = Math.max(0L, hot.totalXp);
+        rec.npcLevelCached = curveOf(rec).levelFromTotalXp(rec.totalXp);
+        syncCompanionLevel(rec);
 
-        if (doRespawn) {
-            long now = System.currentTimeMillis();
-            long at = rec.respawnAtMillis > 0L ? rec.respawnAtMillis : (now + 1000L + java.util.concurrent.ThreadLocalRandom.current().nextLong(1001L));
-            String msg = rec.respawnMessage;
-            pendingRespawns.put(ownerId, new PendingRespawn(respawnWorld, respawnSender, at, msg));
+        // ✅ Sincroniza o nível de espadas com o level calculado do totalXp (HUD e combate usam nível da espada)
+        int computedSwordLevel = SwordProgression.clampLevel(rec.npcLevelCached);
+        if (computedSwordLevel != rec.level) {
+            rec.level = computedSwordLevel;
+            rec.equippedWeaponId = SwordProgression.weaponIdForLevel(rec.level);
+            markDirty(rec, AmigoPersistence.FIELD_SWORD, 0L);
         }
+        rec.baseHp = hot.baseHp;
+        rec.baseDef = hot.baseDef;
+    }
+
+    /** Mochila já carregada no record (null se o NPC não existe ou a mochila nunca foi aberta). */
+    public SimpleItemContainer getLoadedBackpack(UUID ownerId) {
+        if (ownerId == null) return null;
+        NpcRecord rec = npcRefPorPlayer.get(ownerId);
+        return (rec != null) ? rec.backpack : null;
     }
 
     /**
@@ -1056,12 +1249,97 @@ private static final int LOOT_PENDING_MAX = 512;
      * Usado por sistemas/eventos (ex.: filtro de dano) para identificar se um Ref pertence ao AmigoNPC.
      */
     public boolean isAmigoRef(Object refObj) {
-        return refObj != null && amigoRefs.containsKey(refObj);
+        return getOwnerFromRef(refObj) != null;
     }
 
     /** Retorna o dono (UUID) para um Ref de entidade do Amigo, ou null. */
     public UUID getOwnerFromRef(Object refObj) {
-        return refObj == null ? null : amigoRefs.get(refObj);
+        if (refObj == null) return null;
+        AmigoCompanionComponent c = companionComponent(refObj);
+        if (c != null) return c.getOwnerId();
+        return amigoRefs.get(refObj);
+    }
+
+    /** Componente marcador lido do Store do próprio Ref (null se não for Amigo / tipo não registrado). */
+    @SuppressWarnings("unchecked")
+    private static AmigoCompanionComponent companionComponent(Object refObj) {
+        ComponentType<EntityStore, AmigoCompanionComponent> type = AmigoCompanionComponent.getComponentType();
+        if (type == null || !(refObj instanceof Ref)) return null;
+        try {
+            Ref<EntityStore> ref = (Ref<EntityStore>) refObj;
+            if (!ref.isValid()) return null;
+            return ref.getStore().getComponent(ref, type);
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Marca a entidade recém-spawnada como Amigo e o player como dono (thread do mundo, fora do tick dos sistemas).
+     * Sem o tipo registrado (ou se a build recusar o componente), cai no mapa amigoRefs.
+     */
+    @SuppressWarnings("unchecked")
+    private void markCompanion(Object storeObj, NpcRecord rec, UUID ownerId, Object ownerRefObj) {
+        if (rec == null || rec.refObj == null || ownerId == null) return;
+        markOwner(storeObj, ownerRefObj, ownerId);
+        ComponentType<EntityStore, AmigoCompanionComponent> type = AmigoCompanionComponent.getComponentType();
+        if (type != null && storeObj instanceof Store<?> rawStore && rec.refObj instanceof Ref) {
+            try {
+                AmigoCompanionComponent comp = new AmigoCompanionComponent(ownerId, rec.npcLevelCached);
+                ((Store<EntityStore>) rawStore).putComponent((Ref<EntityStore>) rec.refObj, type, comp);
+                rec.companion = comp;
+                return;
+            } catch (Throwable ignored) {}
+        }
+        amigoRefs.put(rec.refObj, ownerId);
+    }
+
+    /** Marcador do dono (1x por entidade do player; os sistemas de dano do dono dependem dele). */
+    @SuppressWarnings("unchecked")
+    private static void markOwner(Object storeObj, Object ownerRefObj, UUID ownerId) {
+        ComponentType<EntityStore, AmigoOwnerComponent> type = AmigoOwnerComponent.getComponentType();
+        if (type == null || !(storeObj instanceof Store<?> rawStore) || !(ownerRefObj instanceof Ref)) return;
+        try {
+            Store<EntityStore> store = (Store<EntityStore>) rawStore;
+            Ref<EntityStore> ownerRef = (Ref<EntityStore>) ownerRefObj;
+            if (store.getComponent(ownerRef, type) != null) return;
+            store.putComponent(ownerRef, type, new AmigoOwnerComponent(ownerId));
+        } catch (Throwable ignored) {}
+    }
+
+    /** Mantém o nível do marcador igual ao do record. */
+    private static void syncCompanionLevel(NpcRecord rec) {
+        AmigoCompanionComponent comp = rec.companion;
+        if (comp != null) comp.setLevel(rec.npcLevelCached);
+    }
+
+    /** Curva de progressão do Amigo (cache no record; re-resolve após recarga do curves.json). */
+    private static ProgressionCurve curveOf(NpcRecord rec) {
+        int gen = ProgressionCurves.generation();
+        ProgressionCurve c = rec.curve;
+        if (c == null || rec.curveGeneration != gen) {
+            c = ProgressionCurves.resolve(rec.ownerId, worldNameOf(rec.worldObj));
+            rec.curve = c;
+            rec.curveGeneration = gen;
+        }
+        return c;
+    }
+
+    /** Curva de quem não tem NPC ativo (sem mundo: player > padrão). */
+    private ProgressionCurve curveOf(UUID ownerId) {
+        NpcRecord rec = ownerId == null ? null : npcRefPorPlayer.get(ownerId);
+        return rec != null ? curveOf(rec) : ProgressionCurves.resolve(ownerId, null);
+    }
+
+    private static String worldNameOf(Object worldObj) {
+        if (worldObj == null) return null;
+        try {
+            java.lang.invoke.MethodHandle h = ReflectionCache.method(worldObj.getClass(), "getName");
+            Object n = (h != null) ? ReflectionCache.invoke0(h, worldObj) : null;
+            return (n instanceof String str) ? str : null;
+        } catch (Throwable ignored) {
+            return null;
+        }
     }
 
     /** Se o NPC do owner está em estado DOWNED. */
@@ -1075,8 +1353,9 @@ private static final int LOOT_PENDING_MAX = 512;
         NpcRecord rec = ownerId == null ? null : npcRefPorPlayer.get(ownerId);
         if (rec == null) return;
         if (rec.downed) return;
-        rec.downed = true;
+        rec.setDowned(true);
         rec.downedUntilMillis = System.currentTimeMillis() + 40_000L;
+        scheduleDownedTimers(ownerId, rec);
 
         // Ao entrar em DOWNED, interrompe combate/assist imediatamente
         rec.combatUntilMillis = 0L;
@@ -1106,30 +1385,13 @@ private static final int LOOT_PENDING_MAX = 512;
                         if (npcEntityObj != null) {
                             setMarkedTargetOnNpcEntity(npcEntityObj, "LockedTarget", null);
                             setMarkedTargetOnNpcEntity(npcEntityObj, "CombatTarget", null);
+                            forgetMarkedTargets(rec);
                             // Volta estado do role para Idle (best-effort)
                             setRoleStateOnNpcEntity(npcEntityObj, npcRef, store, false);
                         }
 
-                        // Opcional: força flags do MovementStates para parar imediatamente (MovementStates é um struct)
-                        try {
-                            MovementStatesComponent ms = store.getComponent(npcRef, MovementStatesComponent.getComponentType());
-                            if (ms != null) {
-                                MovementStates s = ms.getMovementStates();
-                                if (s == null) s = new MovementStates();
-
-                                s.onGround = true;
-                                s.idle = true;
-                                s.horizontalIdle = true;
-                                s.walking = false;
-                                s.running = false;
-                                s.sprinting = false;
-
-                                ms.setMovementStates(s);
-                                // manter "sent" junto ajuda o client a refletir rápido
-                                ms.setSentMovementStates(new MovementStates(s));
-                                store.putComponent(npcRef, MovementStatesComponent.getComponentType(), ms);
-                            }
-                        } catch (Throwable ignored2) {}
+                        // Opcional: força flags do MovementStates para parar imediatamente (só grava se mudou)
+                        writeMovementStates(store, npcRef, rec, MOVE_IDLE, true);
                     } catch (Throwable ignored2) {}
                 });
             }
@@ -1138,10 +1400,12 @@ private static final int LOOT_PENDING_MAX = 512;
         // ✅ Punição por morte (sem deslevelar): remove % do totalXp limitado ao progresso do nível atual
         try {
             long before = rec.totalXp;
-            long after = XpProgression.applyDeathPenalty(before);
+            ProgressionCurve curve = curveOf(rec);
+            long after = curve.applyDeathPenalty(before);
             rec.totalXp = after;
-            rec.npcLevelCached = XpProgression.levelFromTotalXp(after);
-            AmigoPersistence.saveTotalXp(ownerId, after);
+            rec.npcLevelCached = curve.levelFromTotalXp(after);
+            syncCompanionLevel(rec);
+            markDirty(rec, AmigoPersistence.FIELD_TOTAL_XP, PROGRESS_SAVE_DEBOUNCE_MS);
         } catch (Throwable ignored) {}
 
         // Atualiza HUD imediatamente (XP/progresso do nível), se o NPC estiver ativo
@@ -1175,7 +1439,7 @@ private static final int LOOT_PENDING_MAX = 512;
         if (rec != null) return Math.max(1, rec.npcLevelCached);
         try {
             long totalXp = AmigoPersistence.loadTotalXp(ownerId);
-            return XpProgression.levelFromTotalXp(totalXp);
+            return curveOf(ownerId).levelFromTotalXp(totalXp);
         } catch (Throwable ignored) {}
         return 1;
     }
@@ -1191,8 +1455,9 @@ private static final int LOOT_PENDING_MAX = 512;
         try {
             NpcRecord rec = npcRefPorPlayer.get(ownerId);
             long totalXp = rec != null ? rec.totalXp : AmigoPersistence.loadTotalXp(ownerId);
-            int lvl = XpProgression.levelFromTotalXp(totalXp);
-            double mult = StatScaling.multiplier(lvl); // cap 100
+            ProgressionCurve curve = curveOf(ownerId);
+            int lvl = curve.levelFromTotalXp(totalXp);
+            double mult = curve.statMultiplier(lvl); // cap da curva (NORMAL: 100)
             if (mult <= 0.0) return amount;
             return (float) (amount / mult);
         } catch (Throwable ignored) {}
@@ -1265,7 +1530,7 @@ private static final int LOOT_PENDING_MAX = 512;
                 } catch (Throwable ignored) {}
                 long baseHp = Math.max(1L, Math.round(base));
                 rec.baseHp = baseHp;
-                AmigoPersistence.saveBaseHp(ownerId, baseHp);
+                markDirty(rec, AmigoPersistence.FIELD_BASE_HP, PROGRESS_SAVE_DEBOUNCE_MS);
                 updatedBases = true;
             }
 
@@ -1282,17 +1547,19 @@ private static final int LOOT_PENDING_MAX = 512;
                     }
                 }
                 rec.baseDef = baseDef;
-                AmigoPersistence.saveBaseDef(ownerId, baseDef);
+                markDirty(rec, AmigoPersistence.FIELD_BASE_DEF, PROGRESS_SAVE_DEBOUNCE_MS);
                 updatedBases = true;
             }
 
             // Level calculado
-            int level = XpProgression.levelFromTotalXp(rec.totalXp);
+            ProgressionCurve curve = curveOf(rec);
+            int level = curve.levelFromTotalXp(rec.totalXp);
             rec.npcLevelCached = Math.max(1, level);
+            syncCompanionLevel(rec);
 
-            // Scaling (cap lvl 100)
-            long hpMax = StatScaling.scaledHp(rec.baseHp, level);
-            long defValScaled = StatScaling.scaledDef(rec.baseDef, level);
+            // Scaling (cap da curva; NORMAL: lvl 100)
+            long hpMax = curve.scaledHp(rec.baseHp, level);
+            long defValScaled = curve.scaledDef(rec.baseDef, level);
 
             // Aplica HP: apenas ajusta o HP atual (o jogo pode ter um "max" interno,
             // mas como nosso damage system lê o stat atual, isso já aumenta o pool.)
@@ -1349,11 +1616,12 @@ private static final int LOOT_PENDING_MAX = 512;
         if (after < before) after = Long.MAX_VALUE; // overflow protection
 
         rec.totalXp = after;
-        AmigoPersistence.saveTotalXp(ownerId, after);
+        markDirty(rec, AmigoPersistence.FIELD_TOTAL_XP, PROGRESS_SAVE_DEBOUNCE_MS);
 
-        int newLevel = XpProgression.levelFromTotalXp(after);
+        int newLevel = curveOf(rec).levelFromTotalXp(after);
         if (newLevel != rec.npcLevelCached) {
             rec.npcLevelCached = newLevel;
+            syncCompanionLevel(rec);
             // reaplica HP/DEF (cap lvl 100). Não cura aqui.
             applyNpcScaling(store, npcRef, ownerId, rec, false);
         }
@@ -1381,8 +1649,11 @@ private static final int LOOT_PENDING_MAX = 512;
         XpProgression.init();
         long totalXp = Math.max(0L, rec.totalXp);
 
+        // Level + progresso numa só inversão do totalXp
+        XpProgression.LevelInfo info = curveOf(rec).levelInfo(totalXp);
+
         // Level exibido = nível da espada (combate/armas usam este nível)
-        int computedLevel = Math.max(1, XpProgression.levelFromTotalXp(totalXp));
+        int computedLevel = Math.max(1, info.level);
         int level = SwordProgression.clampLevel(rec.level);
 
         // Mantém tudo sincronizado com o totalXp (fonte de verdade do XP)
@@ -1392,33 +1663,63 @@ private static final int LOOT_PENDING_MAX = 512;
         }
         if (rec.npcLevelCached != computedLevel) {
             rec.npcLevelCached = computedLevel;
+            syncCompanionLevel(rec);
         }
 
-        long start = XpProgression.xpStartOfLevel(level);
-        long need = Math.max(1L, XpProgression.xpToNext(level));
-        long into = (start == Long.MAX_VALUE) ? 0L : Math.max(0L, totalXp - start);
-        if (into > need) into = need;
-
-        int segments = 12;
-        double p = Math.max(0.0, Math.min(1.0, (double) into / (double) need));
-        int filled = (int) Math.round(p * segments);
-        if (filled < 0) filled = 0;
-        if (filled > segments) filled = segments;
+        // Texto igual ao que já está na entidade: não toca no componente (sem sync para o cliente)
+        String text = rec.hud.render(npcRef, level, info.into, info.need);
+        if (text == null) return;
 
-        String bar = "[" + repeatChar('=', filled) + repeatChar('-', segments - filled) + "]";
-        String text = "Lv " + level + " " + bar + " " + into + "/" + need;
+        // Throttle opcional: segura a escrita e agenda 1 atualização no fim da janela (sempre com o estado mais novo)
+        long now = System.currentTimeMillis();
+        if (HUD_THROTTLE_MS > 0L) {
+            long allowedAt = rec.hud.lastWriteMillis() + HUD_THROTTLE_MS;
+            if (now < allowedAt) {
+                if (rec.hudTimer == null) {
+                    // Limpa no disparo (antes do runOnWorld): mundo recusando a task não trava o HUD para sempre
+                    rec.hudTimer = TIMERS.schedule(allowedAt, () -> {
+                        rec.hudTimer = null;
+                        runOnWorld(rec, () -> flushThrottledHud(rec));
+                    });
+                }
+                return;
+            }
+        }
 
         try {
             Nameplate np = store.ensureAndGetComponent(npcRef, Nameplate.getComponentType());
             np.setText(text);
+            rec.hud.markWritten(npcRef, text, now);
         } catch (Throwable ignored) {}
     }
 
-    private static String repeatChar(char c, int n) {
-        if (n <= 0) return "";
-        StringBuilder sb = new StringBuilder(n);
-        for (int i = 0; i < n; i++) sb.append(c);
-        return sb.toString();
+    /**
+     * Intervalo mínimo entre escritas do Nameplate por NPC, em ms (0 = sem throttle).
+     * Ex.: -Damigonpc.hudThrottleMs=250
+     */
+    private static final long HUD_THROTTLE_MS = readHudThrottleMs();
+
+    private static long readHudThrottleMs() {
+        try {
+            return Math.max(0L, Long.parseLong(System.getProperty("amigonpc.hudThrottleMs", "0").trim()));
+        } catch (Throwable ignored) {
+            return 0L;
+        }
+    }
+
+    /** Fim da janela do throttle: regrava o HUD com o XP atual (thread do mundo). */
+    private static void flushThrottledHud(NpcRecord rec) {
+        if (rec.state != State.ACTIVE || rec.worldObj == null || !(rec.refObj instanceof Ref)) return;
+        try {
+            Object storeObj = getComponentStoreFromWorld(rec.worldObj);
+            if (storeObj == null) return;
+            @SuppressWarnings("unchecked")
+            Store<EntityStore> store = (Store<EntityStore>) storeObj;
+            @SuppressWarnings("unchecked")
+            Ref<EntityStore> npcRef = (Ref<EntityStore>) rec.refObj;
+            if (!npcRef.isValid()) return;
+            updateNpcHud(store, npcRef, rec);
+        } catch (Throwable ignored) {}
     }
 
 
@@ -1434,7 +1735,7 @@ private static final int LOOT_PENDING_MAX = 512;
 
         // fonte de verdade: totalXp -> level calculado
         long xp = Math.max(0L, AmigoPersistence.loadTotalXp(ownerId));
-        return SwordProgression.clampLevel(XpProgression.levelFromTotalXp(xp));
+        return SwordProgression.clampLevel(curveOf(ownerId).levelFromTotalXp(xp));
     }
 
     /**
@@ -1460,17 +1761,20 @@ private static final int LOOT_PENDING_MAX = 512;
         if (rec != null) {
             rec.equippedWeaponId = weaponId;
         }
-        AmigoPersistence.saveSwordState(ownerId, newLvl, weaponId);
 
         // ✅ Mantém o totalXp consistente com o nível de espada (HUD/XP/armas)
         XpProgression.init();
-        long newTotalXp = XpProgression.xpStartOfLevel(newLvl);
+        long newTotalXp = curveOf(ownerId).xpStartOfLevel(newLvl);
         if (newTotalXp < 0L) newTotalXp = 0L;
         if (rec != null) {
             rec.totalXp = newTotalXp;
             rec.npcLevelCached = newLvl;
+            syncCompanionLevel(rec);
+            markDirty(rec, AmigoPersistence.FIELD_SWORD | AmigoPersistence.FIELD_TOTAL_XP, 0L);
+        } else {
+            AmigoPersistence.saveNpcFields(ownerId, AmigoPersistence.FIELD_SWORD | AmigoPersistence.FIELD_TOTAL_XP,
+                    newTotalXp, -1L, -1L, newLvl, weaponId, false, true, null);
         }
-        AmigoPersistence.saveTotalXp(ownerId, newTotalXp);
 
         // se NPC está ativo, equipa na hora (pode trocar em combate)
         if (rec != null && rec.state == State.ACTIVE && rec.worldObj != null && rec.refObj != null) {
@@ -1550,7 +1854,7 @@ private static final int LOOT_PENDING_MAX = 512;
         // Se já está correto no record e no slot 0, só persiste (se pedir) e sai
         if (expected.equals(rec.equippedWeaponId) && slotOk) {
             if (saveNow) {
-                AmigoPersistence.saveSwordState(ownerId, lvl, expected);
+                markDirty(rec, AmigoPersistence.FIELD_SWORD, 0L);
             }
             return;
         }
@@ -1559,7 +1863,7 @@ private static final int LOOT_PENDING_MAX = 512;
         if (equipped) {
             rec.equippedWeaponId = expected;
             if (saveNow) {
-                AmigoPersistence.saveSwordState(ownerId, lvl, expected);
+                markDirty(rec, AmigoPersistence.FIELD_SWORD, 0L);
             }
             debugEquip(rec, ownerId, "Equipado: " + expected + " (lvl " + lvl + ")");
         } else {
@@ -1646,8 +1950,9 @@ private static final int LOOT_PENDING_MAX = 512;
         if (rec == null || ownerId == null) return;
         if (!rec.debugLogEnabled) return;
         long now = System.currentTimeMillis();
-        if (now < rec.debugNextEquipMillis) return;
-        rec.debugNextEquipMillis = now + 1200L;
+        DebugState dbg = rec.debug();
+        if (now < dbg.nextEquipMillis) return;
+        dbg.nextEquipMillis = now + 1200L;
         sendToOwner(rec.worldObj, ownerId, "DEBUG-EQUIP: " + msg);
     }
 
@@ -1655,8 +1960,9 @@ private static final int LOOT_PENDING_MAX = 512;
         if (rec == null || ownerId == null) return;
         if (!rec.debugLogEnabled) return;
         long now = System.currentTimeMillis();
-        if (now < rec.debugNextCombatMillis) return;
-        rec.debugNextCombatMillis = now + 900L;
+        DebugState dbg = rec.debug();
+        if (now < dbg.nextCombatMillis) return;
+        dbg.nextCombatMillis = now + 900L;
         sendToOwner(rec.worldObj, ownerId, "DEBUG-COMBAT: " + msg);
     }
 
@@ -1664,23 +1970,71 @@ private static final int LOOT_PENDING_MAX = 512;
         if (rec == null || ownerId == null) return;
         if (!rec.debugLogEnabled) return;
         long now = System.currentTimeMillis();
-        if (now < rec.debugNextAttackMillis) return;
-        rec.debugNextAttackMillis = now + 900L;
+        DebugState dbg = rec.debug();
+        if (now < dbg.nextAttackMillis) return;
+        dbg.nextAttackMillis = now + 900L;
         sendToOwner(rec.worldObj, ownerId, "DEBUG-ATTACK: " + msg);
     }
 
     // Best-effort: usa Item.itemLevel como base de dano (porque o damage real do jogo
     // vem do pipeline interno de Interactions). Serve só para testes.
+    // Resolvido no warm-up (SwordWeaponTable): aqui é leitura de array.
     private static double getWeaponBaseDamage(String itemId) {
-        if (itemId == null || itemId.isBlank()) return 4.0;
-        try {
-            Item it = Item.getAssetMap().getAsset(itemId);
-            if (it == null) return 4.0;
-            int lvl = it.getItemLevel();
-            // escala simples e estável: itemLevel 0..?? -> dano 4..~15
-            return 4.0 + Math.max(0, lvl) * 0.9;
-        } catch (Throwable ignored) {
-            return 4.0;
+        return SwordWeaponTable.baseDamage(itemId);
+    }
+
+    // =========================================================
+    // Persistência agrupada (dirty bitmask no NpcRecord)
+    // =========================================================
+
+    /** Marca campos para gravar em até {@code delayMs} (prazo mais curto prevalece). */
+    private static void markDirty(NpcRecord rec, int fields, long delayMs) {
+        if (rec == null || fields == 0) return;
+        rec.dirtyFields.accumulateAndGet(fields, (a, b) -> a | b);
+        long due = System.currentTimeMillis() + Math.max(0L, delayMs);
+        synchronized (rec) {
+            long cur = rec.nextPersistFlushMillis;
+            if (cur != 0L && due >= cur && rec.persistTimer != null) return;
+            rec.nextPersistFlushMillis = due;
+            cancelTimer(rec.persistTimer);
+            rec.persistTimer = TIMERS.schedule(due,
+                    () -> runOnWorld(rec, () -> flushDirtyFields(rec, System.currentTimeMillis(), false)));
+        }
+    }
+
+    /**
+     * Grava todos os campos pendentes do record numa única escrita do documento.
+     * Chamado pelo temporizador (quando vence o prazo) e no despawn (force).
+     */
+    private static void flushDirtyFields(NpcRecord rec, long now, boolean force) {
+        if (rec == null) return;
+        if (!force && now < rec.nextPersistFlushMillis) return;
+
+        synchronized (rec) {
+            rec.nextPersistFlushMillis = 0L;
+            cancelTimer(rec.persistTimer);
+            rec.persistTimer = null;
+        }
+        int fields = rec.dirtyFields.getAndSet(0);
+        if (fields == 0) return;
+
+        AmigoPersistence.saveNpcFields(rec.ownerId, fields,
+                rec.totalXp, rec.baseHp, rec.baseDef,
+                SwordProgression.clampLevel(rec.level), rec.equippedWeaponId,
+                rec.defendeEnabled, rec.autoLootEnabled,
+                rec.backpack);
+    }
+
+    /**
+     * Desligamento: grava na hora os campos pendentes de todos os records vivos
+     * (os temporizadores de flush não vão mais disparar). Chamar antes do AmigoPersistence.flushAll().
+     */
+    public void flushAllDirty() {
+        long now = System.currentTimeMillis();
+        for (NpcRecord rec : npcRefPorPlayer.values()) {
+            try {
+                flushDirtyFields(rec, now, true);
+            } catch (Throwable ignored) {}
         }
     }
 
@@ -1718,6 +2072,7 @@ private static final int LOOT_PENDING_MAX = 512;
         // Ao entrar em combate real (alguém te atingiu), limpamos a assistência
         rec.assistTargetRefObj = null;
         rec.assistUntilMillis = 0L;
+        wakeFollow(rec);
         debugCombat(rec, ownerId, "startCombat: agressorRef=" + attackerRefObj + " (defender=" + (rec.defendeEnabled ? "ON" : "OFF") + ")");
     }
 
@@ -1744,6 +2099,7 @@ private static final int LOOT_PENDING_MAX = 512;
 
         rec.assistTargetRefObj = targetRefObj;
         rec.assistUntilMillis = 0L; // sem timeout enquanto houver alvo
+        wakeFollow(rec);
         debugCombat(rec, ownerId, "startAssist: targetRef=" + targetRefObj);
     }
 
@@ -1766,8 +2122,10 @@ public void recordCombatTag(UUID ownerId, Object targetRefObj, Store<EntityStore
     if (!(targetRefObj instanceof Ref)) return;
 
     long now = System.currentTimeMillis();
-    rec.lastCombatTagMillis = now;
-    rec.wasInCombat = true;
+    CombatTagState ct = rec.combat();
+    ct.lastCombatTagMillis = now;
+    ct.wasInCombat = true;
+    wakeFollow(rec);
 
 
     try {
@@ -1776,22 +2134,22 @@ public void recordCombatTag(UUID ownerId, Object targetRefObj, Store<EntityStore
         if (tc == null || tc.getPosition() == null) return;
 
         Vector3d pos = tc.getPosition();
-        rec.lastBattleCenter = pos;
+        ct.lastBattleCenter = pos;
 
-        synchronized (rec.combatTags) {
+        synchronized (ct.tags) {
             // Atualiza se já existe
             CombatTag existing = null;
-            for (CombatTag t : rec.combatTags) {
+            for (CombatTag t : ct.tags) {
                 if (t != null && refEq(t.targetRefObj, targetRefObj)) { existing = t; break; }
             }
             if (existing != null) {
                 existing.pos = pos;
                 existing.lastSeenMillis = now;
             } else {
-                if (rec.combatTags.size() >= COMBAT_TAG_MAX) {
-                    rec.combatTags.remove(0);
+                if (ct.tags.size() >= COMBAT_TAG_MAX) {
+                    ct.tags.remove(0);
                 }
-                rec.combatTags.add(new CombatTag(targetRefObj, pos, now));
+                ct.tags.add(new CombatTag(targetRefObj, pos, now));
             }
         }
     } catch (Throwable ignored) {}
@@ -1941,83 +2299,15 @@ public void recordCombatTag(UUID ownerId, Object targetRefObj, Store<EntityStore
      * - Se nao existe agressor e nao existe assist atual, tenta pegar a entidade viva mais proxima do dono
      *   dentro de um raio fixo (horizontal) e tolerancia vertical.
      * - Nao mira no dono, no proprio NPC, nem em players quando amigopvp estiver OFF.
+     *
+     * Consulta a foto do mundo (tickSnapshot) em vez de varrer o Store inteiro.
      */
     @SuppressWarnings({"unchecked", "rawtypes"})
     private Object findNearestDefenderTarget(Store<EntityStore> store, NpcRecord rec, Object ownerRefObj, com.hypixel.hytale.math.vector.Vector3d ownerPos) {
         if (store == null || rec == null || ownerRefObj == null || ownerPos == null) return null;
         if (!(ownerRefObj instanceof Ref) || !(rec.refObj instanceof Ref)) return null;
 
-        Ref<EntityStore> ownerRef = (Ref<EntityStore>) ownerRefObj;
-        Ref<EntityStore> npcRef = (Ref<EntityStore>) rec.refObj;
-
-        final double r = DEFENDER_AUTO_ACQUIRE_RADIUS;
-        final double r2 = r * r;
-        final double maxDy = DEFENDER_AUTO_ACQUIRE_MAX_DY;
-
-        final Object[] bestRef = new Object[1];
-        final double[] bestD2 = new double[]{Double.POSITIVE_INFINITY};
-
-        try {
-            store.forEachChunk((chunk, cb) -> {
-                int sz;
-                try { sz = chunk.size(); } catch (Throwable t) { return; }
-
-                for (int i = 0; i < sz; i++) {
-                    Ref<EntityStore> ref;
-                    try { ref = (Ref<EntityStore>) chunk.getReferenceTo(i); } catch (Throwable t) { continue; }
-                    if (ref == null) continue;
-                    if (refEq(ref, ownerRef) || refEq(ref, npcRef)) continue;
-
-                    // Nao perseguir players quando PvP estiver OFF
-                    try {
-                        Player maybePlayer = (Player) chunk.getComponent(i, Player.getComponentType());
-                        if (maybePlayer != null && !pvpEnabled) continue;
-                    } catch (Throwable ignored) {}
-
-                    // Ignora entidades já marcadas como mortas (cadáver / death animation)
-                    try {
-                        DeathComponent dc = (DeathComponent) chunk.getComponent(i, DeathComponent.getComponentType());
-                        if (dc != null) continue;
-                    } catch (Throwable ignored) {}
-
-                    // Ignora entidades já marcadas como mortas (cadáver / death animation)
-                    try {
-                        DeathComponent dc = (DeathComponent) chunk.getComponent(i, DeathComponent.getComponentType());
-                        if (dc != null) continue;
-                    } catch (Throwable ignored) {}
-
-                    TransformComponent tc;
-                    try { tc = (TransformComponent) chunk.getComponent(i, TransformComponent.getComponentType()); } catch (Throwable t) { continue; }
-                    if (tc == null || tc.getPosition() == null) continue;
-
-                    var p = tc.getPosition();
-                    double dy = Math.abs(p.getY() - ownerPos.getY());
-                    if (dy > maxDy) continue;
-
-                    double dx = p.getX() - ownerPos.getX();
-                    double dz = p.getZ() - ownerPos.getZ();
-                    double d2 = dx * dx + dz * dz;
-                    if (d2 > r2) continue;
-
-                    // So entidades "vivas" (tem stats + vida > 0). Ajuda a nao mirar em projeteis/itens.
-                    try {
-                        EntityStatMap stats = (EntityStatMap) chunk.getComponent(i, EntityStatMap.getComponentType());
-                        if (stats == null) continue;
-                        var hp = stats.get(DefaultEntityStatTypes.getHealth());
-                        if (hp != null && hp.get() <= 0.0f) continue;
-                    } catch (Throwable ignored) {
-                        continue;
-                    }
-
-                    if (d2 < bestD2[0]) {
-                        bestD2[0] = d2;
-                        bestRef[0] = ref;
-                    }
-                }
-            });
-        } catch (Throwable ignored) {}
-
-        return bestRef[0];
+        return findNearestLiving(store, ownerRefObj, rec.refObj, null, ownerPos, DEFENDER_AUTO_ACQUIRE_RADIUS, !pvpEnabled);
     }
 
     /**
@@ -2033,68 +2323,81 @@ public void recordCombatTag(UUID ownerId, Object targetRefObj, Store<EntityStore
         if (store == null || rec == null || ownerRefObj == null || npcPos == null) return null;
         if (!(ownerRefObj instanceof Ref) || !(rec.refObj instanceof Ref)) return null;
 
-        Ref<EntityStore> ownerRef = (Ref<EntityStore>) ownerRefObj;
-        Ref<EntityStore> npcRef = (Ref<EntityStore>) rec.refObj;
+        return findNearestLiving(store, ownerRefObj, rec.refObj, excludeRefObj, npcPos, DEFENDER_AUTO_ACQUIRE_RADIUS, !pvpEnabled);
+    }
 
-        final double r = DEFENDER_AUTO_ACQUIRE_RADIUS;
-        final double r2 = r * r;
-        final double maxDy = DEFENDER_AUTO_ACQUIRE_MAX_DY;
+    // =========================================================
+    // Foto do mundo por tick (1 rebuild por passada do tickFollow, por mundo)
+    // =========================================================
 
-        final Object[] bestRef = new Object[1];
-        final double[] bestD2 = new double[]{Double.POSITIVE_INFINITY};
+    /**
+     * Foto do Store para a passada atual (a passada é aberta por Store em runFollowBatch).
+     * Deve ser chamada na thread do mundo.
+     */
+    private static WorldTickSnapshot tickSnapshot(Store<EntityStore> store) {
+        return WorldTickSnapshot.of(store);
+    }
 
+    /**
+     * Confirma no Store (estado atual, não o da grade) que a entidade ainda está viva.
+     * Só é chamado para candidatos que melhoram o melhor atual.
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean isStillAlive(Store<EntityStore> store, Object refObj) {
+        if (!(refObj instanceof Ref)) return false;
+        Ref<EntityStore> ref = (Ref<EntityStore>) refObj;
         try {
-            store.forEachChunk((chunk, cb) -> {
-                int sz;
-                try { sz = chunk.size(); } catch (Throwable t) { return; }
-
-                for (int i = 0; i < sz; i++) {
-                    Ref<EntityStore> ref;
-                    try { ref = (Ref<EntityStore>) chunk.getReferenceTo(i); } catch (Throwable t) { continue; }
-                    if (ref == null) continue;
-                    if (refEq(ref, ownerRef) || refEq(ref, npcRef)) continue;
-                    if (excludeRefObj instanceof Ref && refEq(ref, (Ref<EntityStore>) excludeRefObj)) continue;
-
-                    // Nao perseguir players quando PvP estiver OFF
-                    try {
-                        Player maybePlayer = (Player) chunk.getComponent(i, Player.getComponentType());
-                        if (maybePlayer != null && !pvpEnabled) continue;
-                    } catch (Throwable ignored) {}
-
-                    // Ignora entidades já marcadas como mortas (cadáver / death animation)
-                    try {
-                        DeathComponent dc = (DeathComponent) chunk.getComponent(i, DeathComponent.getComponentType());
-                        if (dc != null) continue;
-                    } catch (Throwable ignored) {}
-
-                    TransformComponent tc;
-                    try { tc = (TransformComponent) chunk.getComponent(i, TransformComponent.getComponentType()); } catch (Throwable t) { continue; }
-                    if (tc == null || tc.getPosition() == null) continue;
-
-                    var p = tc.getPosition();
-                    double dy = Math.abs(p.getY() - npcPos.getY());
-                    if (dy > maxDy) continue;
+            if (!ref.isValid()) return false;
+        } catch (Throwable ignored) {}
+        try {
+            if (store.getComponent(ref, DeathComponent.getComponentType()) != null) return false;
+        } catch (Throwable ignored) {}
+        try {
+            EntityStatMap stats = store.getComponent(ref, EntityStatMap.getComponentType());
+            if (stats == null) return false;
+            var hp = stats.get(DefaultEntityStatTypes.getHealth());
+            if (hp != null && hp.get() <= 0.0f) return false;
+        } catch (Throwable ignored) {
+            return false;
+        }
+        return true;
+    }
 
-                    double dx = p.getX() - npcPos.getX();
-                    double dz = p.getZ() - npcPos.getZ();
-                    double d2 = dx * dx + dz * dz;
-                    if (d2 > r2) continue;
+    private static Object findNearestLiving(Store<EntityStore> store,
+                                            Object ownerRefObj,
+                                            Object npcRefObj,
+                                            Object excludeRefObj,
+                                            Vector3d center,
+                                            double radius,
+                                            boolean skipPlayers) {
+        return findNearestLiving(tickSnapshot(store).living(), store, ownerRefObj, npcRefObj, excludeRefObj,
+                center, radius, skipPlayers);
+    }
+
+    private static Object findNearestLiving(EntitySpatialGrid grid,
+                                            Store<EntityStore> store,
+                                            Object ownerRefObj,
+                                            Object npcRefObj,
+                                            Object excludeRefObj,
+                                            Vector3d center,
+                                            double radius,
+                                            boolean skipPlayers) {
+        final Object[] bestRef = new Object[1];
+        final double[] bestD2 = new double[]{Double.POSITIVE_INFINITY};
 
-                    // So entidades vivas
-                    try {
-                        EntityStatMap stats = (EntityStatMap) chunk.getComponent(i, EntityStatMap.getComponentType());
-                        if (stats == null) continue;
-                        var hp = stats.get(DefaultEntityStatTypes.getHealth());
-                        if (hp != null && hp.get() <= 0.0f) continue;
-                    } catch (Throwable ignored) {
-                        continue;
-                    }
+        try {
+            grid.forEachInRadius(center.getX(), center.getY(), center.getZ(), radius, DEFENDER_AUTO_ACQUIRE_MAX_DY, (i, d2) -> {
+                if (d2 >= bestD2[0]) return true;
+                if (skipPlayers && (grid.flagsAt(i) & WorldTickSnapshot.FLAG_PLAYER) != 0) return true;
 
-                    if (d2 < bestD2[0]) {
-                        bestD2[0] = d2;
-                        bestRef[0] = ref;
-                    }
-                }
+                Object ref = grid.refAt(i);
+                if (refEq(ref, ownerRefObj) || refEq(ref, npcRefObj)) return true;
+                if (excludeRefObj != null && refEq(ref, excludeRefObj)) return true;
+                if (!isStillAlive(store, ref)) return true;
+
+                bestD2[0] = d2;
+                bestRef[0] = ref;
+                return true;
             });
         } catch (Throwable ignored) {}
 
@@ -2114,66 +2417,21 @@ private static boolean isAnyEnemyNearNpc(Store<EntityStore> store,
     if (store == null || rec == null || ownerRefObj == null || npcPos == null) return false;
     if (!(ownerRefObj instanceof Ref) || !(rec.refObj instanceof Ref)) return false;
 
-    @SuppressWarnings("unchecked")
-    Ref<EntityStore> ownerRef = (Ref<EntityStore>) ownerRefObj;
-    @SuppressWarnings("unchecked")
-    Ref<EntityStore> npcRef = (Ref<EntityStore>) rec.refObj;
-
-    final double r2 = radius * radius;
-    final double maxDy = DEFENDER_AUTO_ACQUIRE_MAX_DY;
-
+    final Object npcRefObj = rec.refObj;
+    final EntitySpatialGrid grid = tickSnapshot(store).living();
     final boolean[] found = new boolean[]{false};
 
     try {
-        store.forEachChunk((chunk, cb) -> {
-            if (found[0]) return;
-
-            int sz;
-            try { sz = chunk.size(); } catch (Throwable t) { return; }
-
-            for (int i = 0; i < sz; i++) {
-                Ref<EntityStore> ref;
-                try { ref = (Ref<EntityStore>) chunk.getReferenceTo(i); } catch (Throwable t) { continue; }
-                if (ref == null) continue;
-                if (refEq(ref, ownerRef) || refEq(ref, npcRef)) continue;
-
-                // Não perseguir players (mantém comportamento seguro; PvP entre NPCs é controlado em /amigopvp)
-                try {
-                    Player maybePlayer = (Player) chunk.getComponent(i, Player.getComponentType());
-                    if (maybePlayer != null) continue;
-                } catch (Throwable ignored) {}
-// Ignora entidades já marcadas como mortas (cadáver / death animation)
-                try {
-                    DeathComponent dc = (DeathComponent) chunk.getComponent(i, DeathComponent.getComponentType());
-                    if (dc != null) continue;
-                } catch (Throwable ignored) {}
-
-                TransformComponent tc;
-                try { tc = (TransformComponent) chunk.getComponent(i, TransformComponent.getComponentType()); } catch (Throwable t) { continue; }
-                if (tc == null || tc.getPosition() == null) continue;
-
-                var p = tc.getPosition();
-                double dy = Math.abs(p.getY() - npcPos.getY());
-                if (dy > maxDy) continue;
-
-                double dx = p.getX() - npcPos.getX();
-                double dz = p.getZ() - npcPos.getZ();
-                double d2 = dx * dx + dz * dz;
-                if (d2 > r2) continue;
+        grid.forEachInRadius(npcPos.getX(), npcPos.getY(), npcPos.getZ(), radius, DEFENDER_AUTO_ACQUIRE_MAX_DY, (i, d2) -> {
+            // Não perseguir players (mantém comportamento seguro; PvP entre NPCs é controlado em /amigopvp)
+            if ((grid.flagsAt(i) & WorldTickSnapshot.FLAG_PLAYER) != 0) return true;
 
-                // Só entidades vivas (tem stats + vida > 0).
-                try {
-                    EntityStatMap stats = (EntityStatMap) chunk.getComponent(i, EntityStatMap.getComponentType());
-                    if (stats == null) continue;
-                    var hp = stats.get(DefaultEntityStatTypes.getHealth());
-                    if (hp != null && hp.get() <= 0.0f) continue;
-                } catch (Throwable ignored) {
-                    continue;
-                }
+            Object ref = grid.refAt(i);
+            if (refEq(ref, ownerRefObj) || refEq(ref, npcRefObj)) return true;
+            if (!isStillAlive(store, ref)) return true;
 
-                found[0] = true;
-                return;
-            }
+            found[0] = true;
+            return false;
         });
     } catch (Throwable ignored) {}
 
@@ -2190,15 +2448,8 @@ private static double dist2(Vector3d a, Vector3d b) {
 
 private void clearCombatTagsAndLoot(NpcRecord rec) {
     if (rec == null) return;
-    synchronized (rec.combatTags) {
-        rec.combatTags.clear();
-    }
-    rec.pendingLootRefObjs.clear();
-    rec.lootTargetRefObj = null;
-    rec.lootTargetSinceMillis = 0L;
-    rec.lootingActive = false;
-    rec.lastCombatEndMillis = 0L;
-    rec.lastBattleCenter = null;
+    rec.combat = null;
+    rec.loot = null;
 }
 
 private static boolean isItemRefValid(Store<EntityStore> store, Object refObj) {
@@ -2223,20 +2474,27 @@ private static boolean isItemRefValid(Store<EntityStore> store, Object refObj) {
 private static void lootChatAccAdd(NpcRecord rec, String itemId, int qty, long now) {
     if (rec == null || itemId == null || itemId.isBlank() || qty <= 0) return;
     try {
-        Integer cur = rec.lootChatAcc.get(itemId);
-        rec.lootChatAcc.put(itemId, (cur == null ? 0 : cur) + qty);
-        rec.lootChatSendAtMillis = now + LOOT_CHAT_SUMMARY_DELAY_MS;
+        LootChatState chat = rec.lootChat();
+        Integer cur = chat.acc.get(itemId);
+        chat.acc.put(itemId, (cur == null ? 0 : cur) + qty);
+        chat.sendAtMillis = now + LOOT_CHAT_SUMMARY_DELAY_MS;
+
+        cancelTimer(rec.lootChatTimer);
+        rec.lootChatTimer = TIMERS.schedule(chat.sendAtMillis,
+                () -> runOnWorld(rec, () -> SHARED.lootChatAccFlushIfDue(rec, rec.ownerId, rec.worldObj, System.currentTimeMillis())));
     } catch (Throwable ignored) {}
 }
 
 /** Se o atraso expirou, envia o resumo do loot no chat e limpa o acumulador. */
 private void lootChatAccFlushIfDue(NpcRecord rec, UUID ownerId, Object worldObj, long now) {
     if (rec == null || ownerId == null || worldObj == null) return;
-    long at = rec.lootChatSendAtMillis;
+    LootChatState chat = rec.lootChat;
+    if (chat == null) return;
+    long at = chat.sendAtMillis;
     if (at <= 0L || now < at) return;
 
-    if (rec.lootChatAcc.isEmpty()) {
-        rec.lootChatSendAtMillis = 0L;
+    if (chat.acc.isEmpty()) {
+        rec.lootChat = null;
         return;
     }
 
@@ -2244,7 +2502,7 @@ private void lootChatAccFlushIfDue(NpcRecord rec, UUID ownerId, Object worldObj,
         StringBuilder sb = new StringBuilder();
         sb.append("AmigoNPC: Coletado ");
         boolean first = true;
-        for (java.util.Map.Entry<String, Integer> en : rec.lootChatAcc.entrySet()) {
+        for (java.util.Map.Entry<String, Integer> en : chat.acc.entrySet()) {
             if (en == null) continue;
             String id = en.getKey();
             Integer q = en.getValue();
@@ -2260,8 +2518,8 @@ private void lootChatAccFlushIfDue(NpcRecord rec, UUID ownerId, Object worldObj,
     } catch (Throwable ignored) {
         // não quebra tick por causa de chat
     } finally {
-        rec.lootChatAcc.clear();
-        rec.lootChatSendAtMillis = 0L;
+        // Resumo enviado: solta o acumulador (o próximo item cria outro)
+        if (rec.lootChat == chat) rec.lootChat = null;
     }
 }
 
@@ -2311,7 +2569,8 @@ private boolean tryPickupGroundItemIntoBackpack(Store<EntityStore> store,
             // Se estiver totalmente cheio, abandona o looting e avisa (com cooldown)
             if (isBackpackCompletelyFull(bag)) {
                 rec.lootPausedInventoryFull = true;
-                rec.lootingActive = false;
+                LootState loot = rec.loot;
+                if (loot != null) loot.active = false;
                 maybeNotifyBackpackFull(rec, ownerId, rec.worldObj, System.currentTimeMillis());
             } else {
             }
@@ -2319,9 +2578,8 @@ private boolean tryPickupGroundItemIntoBackpack(Store<EntityStore> store,
         }
 
         // Marca dirty (persistência)
-        rec.backpackDirty = true;
         long now = System.currentTimeMillis();
-        if (rec.nextBackpackSaveMillis == 0L) rec.nextBackpackSaveMillis = now + 5_000L;
+        markDirty(rec, AmigoPersistence.FIELD_BACKPACK, 5_000L);
 
         // Atualiza chão: remove se entrou tudo, senão ajusta quantidade restante
         if (rem == null || remQty <= 0) {
@@ -2350,67 +2608,54 @@ private void refreshPendingLootFromCombatTags(Store<EntityStore> store,
                                              Vector3d ownerPos,
                                              long now) {
     if (store == null || rec == null) return;
+    CombatTagState ct = rec.combat;
+    if (ct == null) return;
+    final LootState loot = rec.loot();
 
     // Prune do mapa de "ignorados por um tempo"
     try {
-        rec.lootProcessedUntil.entrySet().removeIf(e -> e == null || e.getValue() == null || e.getValue() <= now);
+        loot.processedUntil.entrySet().removeIf(e -> e == null || e.getValue() == null || e.getValue() <= now);
     } catch (Throwable ignored) {}
 
     // Snapshot tags
     java.util.ArrayList<CombatTag> tags = new java.util.ArrayList<>();
-    synchronized (rec.combatTags) { tags.addAll(rec.combatTags); }
+    synchronized (ct.tags) { tags.addAll(ct.tags); }
 
     if (tags.isEmpty()) return;
 
     final double tagR2 = LOOT_TAG_SCAN_RADIUS * LOOT_TAG_SCAN_RADIUS;
 
     // IMPORTANTE: iterar apenas sobre entidades que são Item drops (Transform + ItemComponent)
-    // para evitar tentar "loot" de entidades normais.
-    try {
-        store.forEachChunk(AUTOLOOT_QUERY, (chunkObj, cb) -> {
-            if (!(chunkObj instanceof com.hypixel.hytale.component.ArchetypeChunk<?> rawChunk)) return true;
+    // para evitar tentar "loot" de entidades normais. A foto do tick já separa os itens.
+    final EntitySpatialGrid items = tickSnapshot(store).items();
+    if (items.size() == 0) return;
 
-            com.hypixel.hytale.component.ArchetypeChunk<EntityStore> chunk;
-            try { chunk = (com.hypixel.hytale.component.ArchetypeChunk<EntityStore>) rawChunk; }
-            catch (Throwable t) { return true; }
+    for (CombatTag t : tags) {
+        if (t == null || t.pos == null) continue;
+        if (loot.pending.size() >= LOOT_PENDING_MAX) return;
 
-            int sz;
-            try { sz = chunk.size(); } catch (Throwable t) { return true; }
+        final Vector3d tagPos = t.pos;
+        try {
+            items.forEachInRadius(tagPos.getX(), tagPos.getY(), tagPos.getZ(), LOOT_TAG_SCAN_RADIUS, LOOT_TAG_SCAN_RADIUS, (i, hd2) -> {
+                if (loot.pending.size() >= LOOT_PENDING_MAX) return false;
 
-            for (int i = 0; i < sz; i++) {
-                if (rec.pendingLootRefObjs.size() >= LOOT_PENDING_MAX) return true;
+                double dy = items.yAt(i) - tagPos.getY();
+                if (hd2 + dy * dy > tagR2) return true;
 
-                Ref<EntityStore> ref;
-                try { ref = (Ref<EntityStore>) chunk.getReferenceTo(i); } catch (Throwable t) { continue; }
-                if (ref == null) continue;
+                Ref<EntityStore> ref = (Ref<EntityStore>) items.refAt(i);
 
                 // Se já está pendente, não repete
-                if (containsRef(rec.pendingLootRefObjs, ref)) continue;
+                if (containsRef(loot.pending, ref)) return true;
 
                 // Ignora se foi marcado como "não tentar agora"
-                Long until = rec.lootProcessedUntil.get(ref);
-                if (until != null && until > now) continue;
+                Long until = loot.processedUntil.get(ref);
+                if (until != null && until > now) return true;
 
-                TransformComponent tc;
-                try { tc = (TransformComponent) chunk.getComponent(i, TransformComponent.getComponentType()); }
-                catch (Throwable t) { continue; }
-                if (tc == null || tc.getPosition() == null) continue;
-
-                Vector3d p = tc.getPosition();
-
-                boolean nearAnyTag = false;
-                for (CombatTag t : tags) {
-                    if (t == null || t.pos == null) continue;
-                    if (dist2(p, t.pos) <= tagR2) { nearAnyTag = true; break; }
-                }
-                if (!nearAnyTag) continue;
-
-                rec.pendingLootRefObjs.add(ref);
-            }
-
-            return true;
-        });
-    } catch (Throwable ignored) {}
+                loot.pending.add(ref);
+                return true;
+            });
+        } catch (Throwable ignored) {}
+    }
 }
 
 private static boolean containsRef(java.util.ArrayList<Object> list, Ref<EntityStore> ref) {
@@ -2427,14 +2672,16 @@ private static boolean containsRef(java.util.ArrayList<Object> list, Ref<EntityS
 @SuppressWarnings({"unchecked", "rawtypes"})
 private Object chooseNearestPendingLoot(NpcRecord rec, Store<EntityStore> store, Vector3d npcPos) {
     if (rec == null || store == null || npcPos == null) return null;
+    LootState loot = rec.loot;
+    if (loot == null) return null;
     Object best = null;
     double bestD2 = Double.POSITIVE_INFINITY;
 
     // Limpa refs inválidos enquanto escolhe
-    for (int i = rec.pendingLootRefObjs.size() - 1; i >= 0; i--) {
-        Object r = rec.pendingLootRefObjs.get(i);
+    for (int i = loot.pending.size() - 1; i >= 0; i--) {
+        Object r = loot.pending.get(i);
         if (!isItemRefValid(store, r)) {
-            rec.pendingLootRefObjs.remove(i);
+            loot.pending.remove(i);
             continue;
         }
 
@@ -2470,35 +2717,40 @@ private void tickCombatTaggedLooting(Store<EntityStore> store,
 
     // Se entrou em combate, pausa LOOTING imediatamente
     if (inCombatOrAssistNow) {
-        rec.wasInCombat = true;
-        rec.lootingActive = false;
-        rec.lootTargetRefObj = null;
-        rec.lootTargetSinceMillis = 0L;
-        rec.pendingLootRefObjs.clear();
+        rec.combat().wasInCombat = true;
+        rec.loot = null;
         return;
     }
 
     // Transição: acabou o combate → inicia LOOTING (se houver tags)
-    if (rec.wasInCombat) {
-        rec.wasInCombat = false;
-        rec.lastCombatEndMillis = now;
+    CombatTagState ct = rec.combat;
+    if (ct != null && ct.wasInCombat) {
+        ct.wasInCombat = false;
+        ct.lastCombatEndMillis = now;
         // se não tiver tags, não inicia
         boolean hasTags;
-        synchronized (rec.combatTags) { hasTags = !rec.combatTags.isEmpty(); }
-        rec.lootingActive = hasTags;
-        rec.lootTargetRefObj = null;
-        rec.lootTargetSinceMillis = 0L;
-        rec.pendingLootRefObjs.clear();
+        synchronized (ct.tags) { hasTags = !ct.tags.isEmpty(); }
+        if (hasTags) {
+            LootState fresh = new LootState();
+            fresh.active = true;
+            rec.loot = fresh;
+        } else {
+            rec.loot = null;
+        }
     }
 
-    if (!rec.lootingActive) return;
+    LootState loot = rec.loot;
+    if (loot == null || !loot.active) {
+        releaseIdleLootState(rec, now);
+        return;
+    }
 
     // Limpa tags ao sair do local da batalha ou após timeout
-    if (rec.lastCombatEndMillis > 0L) {
-        boolean timeUp = (now - rec.lastCombatEndMillis) >= COMBAT_TAG_CLEAR_MS;
+    if (ct != null && ct.lastCombatEndMillis > 0L) {
+        boolean timeUp = (now - ct.lastCombatEndMillis) >= COMBAT_TAG_CLEAR_MS;
         boolean distUp = false;
-        if (rec.lastBattleCenter != null && ownerPos != null) {
-            distUp = dist2(rec.lastBattleCenter, ownerPos) >= (COMBAT_TAG_CLEAR_DISTANCE * COMBAT_TAG_CLEAR_DISTANCE);
+        if (ct.lastBattleCenter != null && ownerPos != null) {
+            distUp = dist2(ct.lastBattleCenter, ownerPos) >= (COMBAT_TAG_CLEAR_DISTANCE * COMBAT_TAG_CLEAR_DISTANCE);
         }
         if (timeUp || distUp) {
             clearCombatTagsAndLoot(rec);
@@ -2509,10 +2761,7 @@ private void tickCombatTaggedLooting(Store<EntityStore> store,
     // Só entra/continua loot se não há inimigo muito perto do NPC
     if (ownerRefObj != null && isAnyEnemyNearNpc(store, rec, ownerRefObj, npcPos, LOOTING_NO_ENEMY_RADIUS)) {
         // libera o Defender retomar (não bloqueia)
-        rec.lootingActive = false;
-        rec.lootTargetRefObj = null;
-        rec.lootTargetSinceMillis = 0L;
-        rec.pendingLootRefObjs.clear();
+        rec.loot = null;
         return;
     }
 
@@ -2525,32 +2774,32 @@ private void tickCombatTaggedLooting(Store<EntityStore> store,
     // Mochila cheia é tratada por item no momento do pickup (para permitir empilhar)
     rec.lootPausedInventoryFull = false;
     // Se não há target atual, tenta montar pendentes e escolher um
-    if (rec.lootTargetRefObj == null) {
-        if (rec.pendingLootRefObjs.isEmpty()) {
+    if (loot.targetRefObj == null) {
+        if (loot.pending.isEmpty()) {
             refreshPendingLootFromCombatTags(store, rec, npcPos, ownerPos, now);
         }
         Object chosen = chooseNearestPendingLoot(rec, store, npcPos);
         if (chosen == null) {
             // acabou o loot dessa luta
-            rec.lootingActive = false;
+            loot.active = false;
             return;
         }
-        rec.lootTargetRefObj = chosen;
-        rec.lootTargetSinceMillis = now;
+        loot.targetRefObj = chosen;
+        loot.targetSinceMillis = now;
     }
 
     // Se o target ficou inválido, troca
-    if (!isItemRefValid(store, rec.lootTargetRefObj)) {
-        rec.lootTargetRefObj = null;
-        rec.lootTargetSinceMillis = 0L;
+    if (!isItemRefValid(store, loot.targetRefObj)) {
+        loot.targetRefObj = null;
+        loot.targetSinceMillis = 0L;
         return;
     }
 
     // Timeout para não ficar preso em item inalcançável
-    if (rec.lootTargetSinceMillis > 0L && (now - rec.lootTargetSinceMillis) > LOOT_TARGET_TIMEOUT_MS) {
-        rec.lootProcessedUntil.put(rec.lootTargetRefObj, now + LOOT_SKIP_RETRY_MS);
-        rec.lootTargetRefObj = null;
-        rec.lootTargetSinceMillis = 0L;
+    if (loot.targetSinceMillis > 0L && (now - loot.targetSinceMillis) > LOOT_TARGET_TIMEOUT_MS) {
+        loot.processedUntil.put(loot.targetRefObj, now + LOOT_SKIP_RETRY_MS);
+        loot.targetRefObj = null;
+        loot.targetSinceMillis = 0L;
         return;
     }
 
@@ -2558,8 +2807,7 @@ private void tickCombatTaggedLooting(Store<EntityStore> store,
     try {
         Object npcEntityObj = getComponentFromStore(store, rec.refObj, NPCEntity.getComponentType());
         if (npcEntityObj != null) {
-            setLockedTargetOnNpcEntity(npcEntityObj, rec.lootTargetRefObj);
-            setMarkedTargetOnNpcEntity(npcEntityObj, "CombatTarget", null);
+            markCompanionTargets(rec, npcEntityObj, loot.targetRefObj, null, now);
             setFlockState(store, rec.refObj, "Run", "");
         }
     } catch (Throwable ignored) {}
@@ -2567,7 +2815,7 @@ private void tickCombatTaggedLooting(Store<EntityStore> store,
     // Se chegou perto do item, tenta pickup
     try {
         @SuppressWarnings("unchecked")
-        Ref<EntityStore> itemRef = (Ref<EntityStore>) rec.lootTargetRefObj;
+        Ref<EntityStore> itemRef = (Ref<EntityStore>) loot.targetRefObj;
         TransformComponent itc = store.getComponent(itemRef, TransformComponent.getComponentType());
         if (itc == null || itc.getPosition() == null) return;
 
@@ -2581,18 +2829,32 @@ private void tickCombatTaggedLooting(Store<EntityStore> store,
 
             if (!inserted) {
                 // Não coube / erro: ignora esse item por um tempo e tenta outro
-                rec.lootProcessedUntil.put(itemRef, now + LOOT_SKIP_RETRY_MS);
+                loot.processedUntil.put(itemRef, now + LOOT_SKIP_RETRY_MS);
             }
             // Remove da lista pendente (independente de sucesso) para evitar loop imediato
-            removeRefFromList(rec.pendingLootRefObjs, itemRef);
+            removeRefFromList(loot.pending, itemRef);
 
             // troca alvo
-            rec.lootTargetRefObj = null;
-            rec.lootTargetSinceMillis = 0L;
+            loot.targetRefObj = null;
+            loot.targetSinceMillis = 0L;
         }
     } catch (Throwable ignored) {}
 }
 
+/**
+ * Fora de LOOTING: solta o estado de loot e, passada a janela da luta, as combat tags.
+ * (Tags só servem para o loot pós-combate; a próxima luta cria outras.)
+ */
+private static void releaseIdleLootState(NpcRecord rec, long now) {
+    rec.loot = null;
+    CombatTagState ct = rec.combat;
+    if (ct != null && !ct.wasInCombat
+            && (ct.lastCombatEndMillis == 0L || now - ct.lastCombatEndMillis >= COMBAT_TAG_CLEAR_MS)
+            && now - ct.lastCombatTagMillis >= COMBAT_TAG_CLEAR_MS) {
+        rec.combat = null;
+    }
+}
+
 private static void removeRefFromList(java.util.ArrayList<Object> list, Ref<EntityStore> ref) {
     if (list == null || ref == null) return;
     for (int i = list.size() - 1; i >= 0; i--) {
@@ -2672,127 +2934,103 @@ private static void removeRefFromList(java.util.ArrayList<Object> list, Ref<Enti
         final java.util.ArrayList<Ref<EntityStore>> updateLaterRef = new java.util.ArrayList<>();
         final java.util.ArrayList<ItemComponent> updateLaterComp = new java.util.ArrayList<>();
 
+        // Itens candidatos vêm da foto do tick; o ItemComponent é lido ao vivo
+        // (outro NPC do mesmo mundo pode ter coletado/alterado o item nesta passada).
+        final EntitySpatialGrid items = tickSnapshot(store).items();
+
         try {
-            store.forEachChunk(AUTOLOOT_QUERY, (chunkObj, cb) -> {
-                // Preferir acesso direto ao ArchetypeChunk (mais confiável). Mantém fallback por reflexão.
-                com.hypixel.hytale.component.ArchetypeChunk<EntityStore> chunk = null;
-                if (chunkObj instanceof com.hypixel.hytale.component.ArchetypeChunk<?> rawChunk) {
-                    try { chunk = (com.hypixel.hytale.component.ArchetypeChunk<EntityStore>) rawChunk; } catch (Throwable ignored) { chunk = null; }
+            items.forEachInRadius(npcPos.getX(), npcPos.getY(), npcPos.getZ(), radius, radius, (i, hd2) -> {
+                if (picked[0] >= maxPerScan) return false;
+
+                double ddy = items.yAt(i) - npcPos.getY();
+                if (hd2 + ddy * ddy > r2) return true;
+
+                Ref<EntityStore> itemRef = (Ref<EntityStore>) items.refAt(i);
+                if (itemRef == null || !itemRef.isValid()) return true;
+
+                ItemComponent ic;
+                try {
+                    ic = store.getComponent(itemRef, ItemComponent.getComponentType());
+                } catch (Throwable t) {
+                    return true;
                 }
+                if (ic == null) return true;
+
+                ItemStack before = ic.getItemStack();
+                if (before == null) return true;
 
-                final int size;
+                int beforeQty;
                 try {
-                    size = (chunk != null) ? chunk.size() : chunkGetSize(chunkObj);
+                    beforeQty = before.getQuantity();
                 } catch (Throwable t) {
                     return true;
                 }
+                if (beforeQty <= 0) return true;
+
+                // inserir no inventário do NPC (server-authoritative)
+                ItemStackTransaction tx;
+                try {
+                    tx = bag.addItemStack(before);
+                } catch (Throwable t) {
+                    tx = null;
+                }
 
-                for (int i = 0; i < size; i++) {
-                    if (picked[0] >= maxPerScan) break;
+                ItemStack remainder = null;
+                try {
+                    remainder = (tx != null) ? tx.getRemainder() : null;
+                } catch (Throwable ignored) {
+                }
 
-                    Ref<EntityStore> itemRef;
+                int remQty = 0;
+                if (remainder != null) {
                     try {
-                        itemRef = (chunk != null) ? (Ref<EntityStore>) chunk.getReferenceTo(i) : chunkGetEntity(chunkObj, i);
-                    } catch (Throwable t) {
-                        continue;
+                        remQty = remainder.getQuantity();
+                    } catch (Throwable ignored) {
+                        remQty = beforeQty;
                     }
-                    if (itemRef == null || !itemRef.isValid()) continue;
+                }
 
-                    TransformComponent tc;
-                    ItemComponent ic;
-                    try {
-                        tc = (chunk != null)
-                                ? (TransformComponent) chunk.getComponent(i, TransformComponent.getComponentType())
-                                : (TransformComponent) chunkGetComponent(chunkObj, i, TransformComponent.getComponentType());
-                        ic = (chunk != null)
-                                ? (ItemComponent) chunk.getComponent(i, ItemComponent.getComponentType())
-                                : (ItemComponent) chunkGetComponent(chunkObj, i, ItemComponent.getComponentType());
-                    } catch (Throwable t) {
-                        continue;
+                if (remainder != null && remQty >= beforeQty) {
+                    // não entrou nada
+                    if (isBackpackCompletelyFull(bag)) {
+                        rec.lootPausedInventoryFull = true;
+                        rec.nextLootFullRecheckMillis = now + 1_000L;
+                        maybeNotifyBackpackFull(rec, ownerId, worldObj, now);
+                        return false; // pausa scan
                     }
-                    if (tc == null || ic == null) continue;
-
-                    Vector3d pos = tc.getPosition();
-                    if (pos == null) continue;
-                    if (distSq(pos, npcPos) > r2) continue;
-
-                    ItemStack before = ic.getItemStack();
-                    if (before == null) continue;
+                    return true;
+                }
 
-                    int beforeQty;
+                int inserted = beforeQty - (remainder != null ? remQty : 0);
+                if (inserted > 0) {
+                    String itemId;
                     try {
-                        beforeQty = before.getQuantity();
+                        Object id = before.getItemId();
+                        itemId = (id != null) ? id.toString() : "item";
                     } catch (Throwable t) {
-                        continue;
+                        itemId = "item";
                     }
-                    if (beforeQty <= 0) continue;
+                    lootChatAccAdd(rec, itemId, inserted, now);
+                }
 
-                    // inserir no inventário do NPC (server-authoritative)
-                    ItemStackTransaction tx;
-                    try {
-                        tx = bag.addItemStack(before);
-                    } catch (Throwable t) {
-                        tx = null;
-                    }
+                picked[0]++;
+                markDirty(rec, AmigoPersistence.FIELD_BACKPACK, BACKPACK_SAVE_DEBOUNCE_MS);
 
-                    ItemStack remainder = null;
+                // remover do chão SOMENTE o que entrou
+                if (remainder == null || remQty <= 0) {
+                    removeLater.add(itemRef);
+                } else {
                     try {
-                        remainder = (tx != null) ? tx.getRemainder() : null;
+                        ic.setItemStack(remainder);
+                        updateLaterRef.add(itemRef);
+                        updateLaterComp.add(ic);
                     } catch (Throwable ignored) {
                     }
-
-                    int remQty = 0;
-                    if (remainder != null) {
-                        try {
-                            remQty = remainder.getQuantity();
-                        } catch (Throwable ignored) {
-                            remQty = beforeQty;
-                        }
-                    }
-
-                    if (remainder != null && remQty >= beforeQty) {
-                        // não entrou nada
-                        if (isBackpackCompletelyFull(bag)) {
-                            rec.lootPausedInventoryFull = true;
-                            rec.nextLootFullRecheckMillis = now + 1_000L;
-                            maybeNotifyBackpackFull(rec, ownerId, worldObj, now);
-                            return false; // pausa scan
-                        }
-                        continue;
-                    }
-
-                    int inserted = beforeQty - (remainder != null ? remQty : 0);
-                    if (inserted > 0) {
-                        String itemId;
-                        try {
-                            Object id = before.getItemId();
-                            itemId = (id != null) ? id.toString() : "item";
-                        } catch (Throwable t) {
-                            itemId = "item";
-                        }
-                        lootChatAccAdd(rec, itemId, inserted, now);
-                    }
-
-                    picked[0]++;
-                    rec.backpackDirty = true;
-                    rec.nextBackpackSaveMillis = Math.min(rec.nextBackpackSaveMillis, now + BACKPACK_SAVE_DEBOUNCE_MS);
-
-                    // remover do chão SOMENTE o que entrou
-                    if (remainder == null || remQty <= 0) {
-                        removeLater.add(itemRef);
-                    } else {
-                        try {
-                            ic.setItemStack(remainder);
-                            updateLaterRef.add(itemRef);
-                            updateLaterComp.add(ic);
-                        } catch (Throwable ignored) {
-                        }
-                    }
                 }
                 return true;
             });
         } catch (Throwable t) {
-            debugCombat(rec, ownerId, "AutoLoot forEachChunk falhou: " + t.getClass().getSimpleName() + ": " + t.getMessage());
+            debugCombat(rec, ownerId, "AutoLoot scan falhou: " + t.getClass().getSimpleName() + ": " + t.getMessage());
         }
 
         // Aplica updates fora do loop do ECS
@@ -2816,18 +3054,7 @@ private static void removeRefFromList(java.util.ArrayList<Object> list, Ref<Enti
             }
         }
 
-        // Persistência do inventário
-        if (rec.backpackDirty && now >= rec.nextBackpackSaveMillis) {
-            try {
-                AmigoPersistence.saveBackpack(ownerId, bag);
-                rec.backpackDirty = false;
-            } catch (Throwable t) {
-                debugCombat(rec, ownerId, "Falha ao salvar mochila: " + t.getMessage());
-            }
-        }
-
-        // Flush do resumo no chat (0.5s)
-        lootChatAccFlushIfDue(rec, ownerId, worldObj, now);
+        // Persistência do inventário e resumo no chat: disparados pelos temporizadores (markDirty / lootChatAccAdd)
     }
 
     private static boolean isBackpackCompletelyFull(SimpleItemContainer bag) {
@@ -2858,66 +3085,6 @@ private static void removeRefFromList(java.util.ArrayList<Object> list, Ref<Enti
         return dx*dx + dy*dy + dz*dz;
     }
 
-    // Compat: algumas builds não expõem o tipo concreto do "chunk" no classpath.
-    // Para manter compilação estável, acessamos por reflexão.
-    // OBS: a API real do chunk costuma ser size() + getReferenceTo(i).
-    private static int chunkGetSize(Object chunk) {
-        // Hytale ECS: ArchetypeChunk#size()
-        Object v = invokeNoArg(chunk, "size");
-        if (v == null) {
-            // fallback (algumas versões podem expor getSize())
-            v = invokeNoArg(chunk, "getSize");
-        }
-        if (v instanceof Integer i) return i;
-        if (v instanceof Short s) return s;
-        if (v instanceof Long l) return (int) (long) l;
-        return 0;
-    }
-
-    @SuppressWarnings("unchecked")
-    private static Ref<EntityStore> chunkGetEntity(Object chunk, int index) {
-        if (chunk == null) return null;
-        try {
-            // API mais comum: getReferenceTo(i)
-            java.lang.reflect.Method m = chunk.getClass().getMethod("getReferenceTo", int.class);
-            return (Ref<EntityStore>) m.invoke(chunk, index);
-        } catch (Throwable ignored) {
-        }
-        try {
-            for (java.lang.reflect.Method m : chunk.getClass().getMethods()) {
-                String name = m.getName();
-                if (!(name.equals("getReferenceTo") || name.equals("getEntity") || name.equals("getReference"))) continue;
-                if (m.getParameterCount() != 1) continue;
-                Class<?> p0 = m.getParameterTypes()[0];
-                if (!(p0 == int.class || p0 == Integer.class || p0 == short.class || p0 == Short.class)) continue;
-                Object idx = (p0 == short.class || p0 == Short.class) ? (short) index : index;
-                return (Ref<EntityStore>) m.invoke(chunk, idx);
-            }
-        } catch (Throwable ignored) {
-        }
-        return null;
-    }
-
-    private static Object chunkGetComponent(Object chunk, int index, Object componentType) {
-        if (chunk == null || componentType == null) return null;
-        try {
-            for (java.lang.reflect.Method m : chunk.getClass().getMethods()) {
-                if (!m.getName().equals("getComponent")) continue;
-                if (m.getParameterCount() != 2) continue;
-                Class<?>[] p = m.getParameterTypes();
-                boolean firstIsIndex = (p[0] == int.class || p[0] == Integer.class || p[0] == short.class || p[0] == Short.class);
-                if (!firstIsIndex) continue;
-                Object idx = (p[0] == short.class || p[0] == Short.class) ? (short) index : index;
-                try {
-                    return m.invoke(chunk, idx, componentType);
-                } catch (Throwable ignored) {
-                }
-            }
-        } catch (Throwable ignored) {
-        }
-        return null;
-    }
-
     private void maybeNotifyBackpackFull(NpcRecord rec, UUID ownerId, Object worldObj, long now) {
         if (rec == null || ownerId == null || worldObj == null) return;
         if (now < rec.nextLootFullMsgMillis) return;
@@ -2939,482 +3106,809 @@ private static void removeRefFromList(java.util.ArrayList<Object> list, Ref<Enti
     }
 
 
-    /** Ticker (1s) chamado pelo plugin: revive automático quando o timer expirar. */
-    public void tickDowned() {
-        long now = System.currentTimeMillis();
-        for (Map.Entry<UUID, NpcRecord> e : npcRefPorPlayer.entrySet()) {
-            UUID owner = e.getKey();
-            NpcRecord rec = e.getValue();
-            if (rec == null) continue;
-            if (!rec.downed) continue;
-            if (rec.downedUntilMillis <= 0L) continue;
-
-            // Se o corpo sumiu (despawn por algum sistema), limpa o registro para evitar "NPC já existe"
-            // e permite respawn/revive correto.
-            if (rec.refObj != null && rec.worldObj != null) {
-                Object worldObj = rec.worldObj;
-                HytaleBridge.worldExecute(worldObj, () -> {
-                    try {
-                        Object storeObj = getComponentStoreFromWorld(worldObj);
-                        if (!(storeObj instanceof Store<?> rawStore)) return;
-                        @SuppressWarnings("unchecked")
-                        Store<EntityStore> store = (Store<EntityStore>) rawStore;
+    // =========================================================
+    // Prazos (roda de temporizadores): revive, respawn pendente, gravação, resumo do loot
+    // =========================================================
 
-                        Object npcTransform = getComponentFromStore(store, rec.refObj, TransformComponent.getComponentType());
-                        if (!(npcTransform instanceof TransformComponent)) {
-                            amigoRefs.remove(rec.refObj);
-                            npcRefPorPlayer.remove(owner, rec);
-                        }
-                    } catch (Throwable ignored) {}
-                });
+    private static final long TIMER_TICK_MS = 50L;
+    private static final long DOWNED_WATCH_MS = 1000L;
+
+    /** Prazos do manager; cada evento é agendado/cancelado em O(1), sem varrer os records. */
+    private static final TimerWheel TIMERS = new TimerWheel(TIMER_TICK_MS, 512);
+
+    /** Chamado pelo plugin a cada TIMER_TICK_MS: dispara os prazos vencidos. */
+    public void advanceTimers() {
+        TIMERS.advance(System.currentTimeMillis());
+    }
+
+    private static void cancelTimer(TimerWheel.Timeout t) {
+        if (t != null) t.cancel();
+    }
+
+    /** Roda na thread do mundo do NPC (ou na hora, se o mundo não aceitar a task). */
+    private static void runOnWorld(NpcRecord rec, Runnable task) {
+        if (rec.worldObj == null || !HytaleBridge.worldExecute(rec.worldObj, task)) {
+            task.run();
+        }
+    }
+
+    private void schedulePendingRespawn(UUID ownerId, PendingRespawn pr) {
+        pendingRespawns.put(ownerId, pr);
+        TIMERS.schedule(pr.atMillis, () -> firePendingRespawn(ownerId, pr));
+    }
+
+    private void firePendingRespawn(UUID ownerId, PendingRespawn pr) {
+        // Substituído por outro pedido (ou cancelado) depois de agendado
+        if (!pendingRespawns.remove(ownerId, pr)) return;
+        if (pr.worldObj == null) return;
+
+        // Evita respawn duplicado se alguém já deu /amigo spawn no meio
+        if (npcRefPorPlayer.containsKey(ownerId)) return;
+
+        if (pr.message != null && !pr.message.isBlank()) {
+            sendToOwner(pr.worldObj, ownerId, pr.message);
+        }
+        spawn(pr.worldObj, ownerId, pr.senderObj);
+    }
+
+    /** DOWNED: revive no prazo + vigia (1s) do corpo enquanto estiver caído. */
+    private void scheduleDownedTimers(UUID owner, NpcRecord rec) {
+        synchronized (rec) {
+            cancelTimer(rec.reviveTimer);
+            cancelTimer(rec.downedWatchTimer);
+            if (rec.downedUntilMillis <= 0L) return;
+            rec.reviveTimer = TIMERS.schedule(rec.downedUntilMillis, () -> onReviveDue(owner, rec));
+            rec.downedWatchTimer = TIMERS.schedule(System.currentTimeMillis() + DOWNED_WATCH_MS, () -> onDownedWatch(owner, rec));
+        }
+    }
+
+    /**
+     * Se o corpo sumiu (despawn por algum sistema), limpa o registro para evitar "NPC já existe"
+     * e permite respawn/revive correto.
+     */
+    private void onDownedWatch(UUID owner, NpcRecord rec) {
+        if (npcRefPorPlayer.get(owner) != rec || !rec.downed || rec.downedUntilMillis <= 0L) return;
+
+        if (rec.refObj != null && rec.worldObj != null) {
+            Object worldObj = rec.worldObj;
+            HytaleBridge.worldExecute(worldObj, () -> {
+                try {
+                    Object storeObj = getComponentStoreFromWorld(worldObj);
+                    if (!(storeObj instanceof Store<?> rawStore)) return;
+                    @SuppressWarnings("unchecked")
+                    Store<EntityStore> store = (Store<EntityStore>) rawStore;
+
+                    Object npcTransform = getComponentFromStore(store, rec.refObj, TransformComponent.getComponentType());
+                    if (!(npcTransform instanceof TransformComponent)) {
+                        flushDirtyFields(rec, System.currentTimeMillis(), true);
+                        amigoRefs.remove(rec.refObj);
+                        unregister(owner, rec);
+                    }
+                } catch (Throwable ignored) {}
+            });
+        }
+
+        synchronized (rec) {
+            if (rec.downed) {
+                rec.downedWatchTimer = TIMERS.schedule(System.currentTimeMillis() + DOWNED_WATCH_MS, () -> onDownedWatch(owner, rec));
             }
-            if (now < rec.downedUntilMillis) continue;
-            // Revive automático. Se o corpo tiver sumido, respawna um novo.
-            if (npcRefPorPlayer.get(owner) == rec) {
-                revive(owner, false);
-                // Se ainda está downed após tentar revive (ex.: entidade sumiu), faz respawn limpo.
-                NpcRecord still = npcRefPorPlayer.get(owner);
-                if (still == rec && rec.downed) {
-                    amigoRefs.remove(rec.refObj);
-                    npcRefPorPlayer.remove(owner, rec);
-                    spawn(rec.worldObj, owner, null);
+        }
+    }
+
+    /** Revive automático. Se o corpo tiver sumido, respawna um novo. */
+    private void onReviveDue(UUID owner, NpcRecord rec) {
+        if (npcRefPorPlayer.get(owner) != rec || !rec.downed) return;
+        long now = System.currentTimeMillis();
+        if (rec.downedUntilMillis <= 0L) return;
+        if (now < rec.downedUntilMillis) {
+            // prazo foi estendido depois do agendamento
+            rec.reviveTimer = TIMERS.schedule(rec.downedUntilMillis, () -> onReviveDue(owner, rec));
+            return;
+        }
+
+        revive(owner, false);
+        // Se ainda está downed após tentar revive (ex.: entidade sumiu), faz respawn limpo.
+        NpcRecord still = npcRefPorPlayer.get(owner);
+        if (still == rec && rec.downed) {
+            cancelTimer(rec.downedWatchTimer);
+            flushDirtyFields(rec, now, true);
+            amigoRefs.remove(rec.refObj);
+            unregister(owner, rec);
+            spawn(rec.worldObj, owner, null);
+        }
+    }
+
+    /**
+     * Ticker (1s) chamado pelo plugin: mantém follow e aplica "teleporte" seguro
+     * quando distância passar dos limites (20 horizontal / 8 vertical).
+     * NPCs já tickados pelo AmigoFollowTickSystem são pulados (aqui fica só o fallback).
+     */
+    public void tickFollow() {
+    // Agrupa por mundo: 1 task por mundo por passada (em vez de 1 por NPC)
+    Map<Object, java.util.ArrayList<NpcRecord>> byWorld = new java.util.IdentityHashMap<>();
+    long passNow = System.currentTimeMillis();
+    // Varredura na tabela densa: só os vencidos tocam no registro
+    int limit = COMPANIONS.limit();
+    CompanionTable.Columns cols = COMPANIONS.columns();
+    for (int slot = 1; slot < limit; slot++) {
+        if ((cols.flags[slot] & (CompanionTable.FLAG_ACTIVE | CompanionTable.FLAG_DOWNED)) != CompanionTable.FLAG_ACTIVE) continue;
+        // Já tickado pelo AmigoFollowTickSystem (fallback só para quem o sistema não alcança)
+        if (passNow - cols.nativeSeenMillis[slot] < NATIVE_TICK_STALE_MS) continue;
+        if (passNow < cols.nextDueMillis[slot]) continue;
+
+        NpcRecord rec = COMPANIONS.recordAt(cols, slot);
+        if (rec == null) continue;
+        if (rec.refObj == null || rec.worldObj == null) continue;
+
+        byWorld.computeIfAbsent(rec.worldObj, k -> new java.util.ArrayList<>()).add(rec);
+    }
+
+    for (Map.Entry<Object, java.util.ArrayList<NpcRecord>> we : byWorld.entrySet()) {
+        Object worldObj = we.getKey();
+        java.util.ArrayList<NpcRecord> batch = we.getValue();
+
+        // Executa no contexto do mundo (thread-safe)
+        HytaleBridge.worldExecute(worldObj, () -> {
+            Object storeObj = getComponentStoreFromWorld(worldObj);
+            if (!(storeObj instanceof Store<?> rawStore)) return;
+
+            @SuppressWarnings("unchecked")
+            Store<EntityStore> store = (Store<EntityStore>) rawStore;
+
+            runFollowBatch(store, worldObj, batch);
+        });
+    }
+}
+
+    // =========================================================
+    // Tick nativo (AmigoFollowTickSystem)
+    // =========================================================
+
+    private static final long FOLLOW_TICK_MS = 200L;
+
+    /** Sem sinal do sistema por este tempo, o NPC volta para o ticker (executor). */
+    private static final long NATIVE_TICK_STALE_MS = 1000L;
+
+    /** NPCs vencidos no tick atual, por Store. Só acessado na thread do mundo dono do Store. */
+    private final Map<Object, java.util.ArrayList<NpcRecord>> nativeBatches =
+            java.util.Collections.synchronizedMap(new java.util.WeakHashMap<>());
+
+    /**
+     * Chamado pelo AmigoFollowTickSystem para cada NPC do mundo (thread do mundo).
+     * Só marca o Amigo como vencido; o lote roda logo depois, fora do processamento dos sistemas.
+     */
+    public void onCompanionSystemTick(Store<EntityStore> store, Object refObj) {
+        if (store == null || refObj == null) return;
+        onCompanionSystemTick(store, refObj, amigoRefs.get(refObj));
+    }
+
+    /**
+     * Mesmo que acima, com o dono já lido do AmigoCompanionComponent (query pelo marcador).
+     */
+    public void onCompanionSystemTick(Store<EntityStore> store, Object refObj, UUID owner) {
+        if (store == null || refObj == null) return;
+        if (owner == null) return;
+
+        NpcRecord rec = npcRefPorPlayer.get(owner);
+        if (rec == null || rec.worldObj == null || !refEq(rec.refObj, refObj)) return;
+
+        long now = System.currentTimeMillis();
+        rec.setLastNativeTick(now);
+        if (rec.state != State.ACTIVE || rec.downed) return;
+        if (now < rec.nextFollowDue()) return;
+        // Provisório (evita entrar 2x no lote); o LOD real é definido depois do tick
+        rec.setNextFollowDue(now + FOLLOW_TICK_MS);
+
+        java.util.ArrayList<NpcRecord> batch = nativeBatches.computeIfAbsent(store, k -> new java.util.ArrayList<>());
+        batch.add(rec);
+        if (batch.size() > 1) return; // lote deste tick já agendado
+
+        Object worldObj = rec.worldObj;
+        boolean queued = HytaleBridge.worldExecute(worldObj, () -> runNativeBatch(store, worldObj, batch));
+        if (!queued) {
+            batch.clear();
+            rec.setLastNativeTick(0L); // deixa o ticker cuidar
+        }
+    }
+
+    private void runNativeBatch(Store<EntityStore> store, Object worldObj, java.util.ArrayList<NpcRecord> batch) {
+        NpcRecord[] due = batch.toArray(new NpcRecord[0]);
+        batch.clear();
+
+        runFollowBatch(store, worldObj, java.util.Arrays.asList(due));
+    }
+
+    // =========================================================
+    // Orçamento de CPU por mundo (round-robin com adiamento)
+    // =========================================================
+
+    /**
+     * Tempo máximo por mundo por passada, em microssegundos (0 = sem limite).
+     * Ex.: -Damigonpc.tickBudgetMicros=1500
+     */
+    private static final long TICK_BUDGET_NANOS = readTickBudgetNanos();
+
+    private static long readTickBudgetNanos() {
+        try {
+            long us = Long.parseLong(System.getProperty("amigonpc.tickBudgetMicros", "2000").trim());
+            return Math.max(0L, us) * 1000L;
+        } catch (Throwable ignored) {
+            return 2_000_000L;
+        }
+    }
+
+    /** Cursor do round-robin por Store (só acessado na thread do mundo dono do Store). */
+    private final Map<Object, int[]> followCursors =
+            java.util.Collections.synchronizedMap(new java.util.WeakHashMap<>());
+
+    /**
+     * Processa os NPCs vencidos de 1 mundo dentro do orçamento.
+     *
+     * Ordem: combate primeiro, depois os adiados da passada anterior, depois o resto a partir do cursor.
+     * Estourou o orçamento: os restantes ficam vencidos (nextFollowDue = 0) e marcados como adiados,
+     * então entram na frente na próxima passada (ninguém fica sem tick). Pelo menos 1 NPC sempre roda.
+     */
+    private void runFollowBatch(Store<EntityStore> store, Object worldObj, List<NpcRecord> due) {
+        int n = due.size();
+        if (n == 0) return;
+
+        // Nova passada deste mundo: a foto (WorldTickSnapshot) é reconstruída no 1o uso
+        WorldTickSnapshot.beginPass(store);
+
+        java.util.ArrayList<NpcRecord> order = new java.util.ArrayList<>(n);
+        for (NpcRecord rec : due) {
+            if (rec.tickLod() == TickLod.COMBAT) order.add(rec);
+        }
+        for (NpcRecord rec : due) {
+            if (rec.tickLod() != TickLod.COMBAT && rec.followDeferred()) order.add(rec);
+        }
+        int[] cursor = followCursors.computeIfAbsent(store, k -> new int[1]);
+        int start = Math.floorMod(cursor[0], n);
+        for (int i = 0; i < n; i++) {
+            NpcRecord rec = due.get((start + i) % n);
+            if (rec.tickLod() != TickLod.COMBAT && !rec.followDeferred()) order.add(rec);
+        }
+
+        long deadline = System.nanoTime() + TICK_BUDGET_NANOS;
+        int processed = 0;
+        for (NpcRecord rec : order) {
+            // Pode ter sido despawnado entre o enfileiramento e a execução
+            if (rec.state != State.ACTIVE || rec.downed) continue;
+
+            // Dormente: só a sonda (fora do orçamento); acordou -> tick completo ainda nesta passada
+            if (rec.tickLod() == TickLod.DORMANT) {
+                if (!shouldWakeDormant(store, worldObj, rec)) {
+                    rec.setNextFollowDue(System.currentTimeMillis() + TickLod.DORMANT.intervalMs);
+                    continue;
                 }
+                exitDormant(rec);
+            }
+
+            if (TICK_BUDGET_NANOS > 0L && processed > 0 && System.nanoTime() >= deadline) {
+                rec.setFollowDeferred(true);
+                rec.setNextFollowDue(0L);
+                continue;
             }
+
+            rec.setFollowDeferred(false);
+            try {
+                tickFollowRecord(store, worldObj, rec.ownerId, rec);
+            } catch (Throwable ignored) {}
+            scheduleNextFollow(rec, System.currentTimeMillis());
+            if (rec.tickLod() == TickLod.DORMANT) parkDormant(store, rec);
+            processed++;
         }
+        cursor[0] = start + processed;
+    }
+
+    // =========================================================
+    // LOD do tick (intervalo por contexto)
+    // =========================================================
+
+    /** Dono/NPC parados há menos que isso ainda contam como "andando". */
+    private static final long MOVING_HOLD_MS = 1500L;
+    private static final double OWNER_MOVED_EPS2 = 0.30 * 0.30;
+    /** Além desta distância do dono o NPC fica no LOD de movimento mesmo parado. */
+    private static final double LOD_NEAR_DISTANCE = 8.0;
+
+    /** Classifica o NPC pelo estado atual (após o tick) e agenda a próxima passada completa. */
+    private static void scheduleNextFollow(NpcRecord rec, long now) {
+        TickLod lod;
+        boolean combat = rec.defendeEnabled
+                && (rec.combatTargetRefObj != null || rec.assistTargetRefObj != null
+                    || now < rec.combatUntilMillis || now < rec.assistUntilMillis);
+        if (combat) {
+            lod = TickLod.COMBAT;
+        } else if (rec.autoLootEnabled && (rec.lootingActive() || rec.hasPendingLoot())) {
+            lod = TickLod.LOOTING;
+        } else if (now - rec.lastOwnerMoved() < MOVING_HOLD_MS
+                || now - rec.lastNpcMoved() < MOVING_HOLD_MS
+                || rec.lastOwnerHorizontal() > LOD_NEAR_DISTANCE
+                || rec.farSinceMillis > 0L) {
+            lod = TickLod.MOVING;
+        } else if (rec.hasOwnerSample() && rec.hasNpcSample()
+                && now - Math.max(rec.lastOwnerMoved(), rec.lastNpcMoved()) >= DORMANT_AFTER_MS) {
+            // A âncora do sono é a última amostra do dono (não muda enquanto o tick completo não roda)
+            lod = TickLod.DORMANT;
+        } else {
+            lod = TickLod.IDLE;
+        }
+        rec.setTickLod(lod);
+        rec.setNextFollowDue(now + lod.intervalMs);
+    }
+
+    /** Evento relevante (dano, assistência, toggle): próxima passada do tick já processa o NPC. */
+    private static void wakeFollow(NpcRecord rec) {
+        if (rec == null) return;
+        if (rec.tickLod() == TickLod.DORMANT) exitDormant(rec);
+        rec.setNextFollowDue(0L);
+    }
+
+    /**
+     * Acorda o NPC do dono (ex.: o próprio NPC levou dano). Seguro de chamar de qualquer thread.
+     */
+    public void wakeCompanion(UUID ownerId) {
+        if (ownerId == null) return;
+        wakeFollow(npcRefPorPlayer.get(ownerId));
+    }
+
+    // =========================================================
+    // Dormente (dono AFK)
+    // =========================================================
+
+    /** Tudo parado (dono e NPC) por este tempo no LOD IDLE: o NPC estaciona. */
+    private static final long DORMANT_AFTER_MS = 5000L;
+    /** Dono saiu mais que isso da posição em que o NPC estacionou: acorda. */
+    private static final double DORMANT_WAKE_DIST2 = 1.5 * 1.5;
+    /**
+     * Idade máxima da foto do mundo usada pela sonda. Com alguém acordado a foto é da passada;
+     * mundo só com dormentes varre o Store no máximo 1x neste intervalo (item/alvo novo: até 5s de atraso).
+     */
+    private static final long DORMANT_SNAPSHOT_MAX_AGE_NANOS = 5_000_000_000L;
+
+    private static void exitDormant(NpcRecord rec) {
+        rec.setTickLod(TickLod.IDLE);
+        // Ninguém se moveu durante o sono; sem isso voltaria a dormir logo no próximo tick
+        rec.setLastOwnerMoved(System.currentTimeMillis());
+    }
+
+    /** Ao entrar no estado dormente: deixa o NPC em idle (nada mais é recalculado enquanto dorme). */
+    @SuppressWarnings("unchecked")
+    private static void parkDormant(Store<EntityStore> store, NpcRecord rec) {
+        if (!(rec.refObj instanceof Ref)) return;
+        applyMovementAnimation(store, (Ref<EntityStore>) rec.refObj, rec, null, 0.0, 0.0, false, 0.0);
     }
 
     /**
-     * Ticker (1s) chamado pelo plugin: mantém follow e aplica "teleporte" seguro
-     * quando distância passar dos limites (20 horizontal / 8 vertical).
+     * Sonda do NPC dormente (thread do mundo): 1 leitura do Transform do dono e, conforme os modos,
+     * uma consulta na foto do mundo (itens perto do NPC / alvo do Defender perto do dono).
+     * A foto pode ser de uma passada anterior (WorldTickSnapshot.recent): a sonda sozinha não força varredura.
+     * Dano, assistência, combat tag e comandos acordam direto via wakeFollow.
      */
-    public void tickFollow() {
-        // Processa respawns pendentes (teleport/troca de mundo do dono)
-        if (!pendingRespawns.isEmpty()) {
-            long now = System.currentTimeMillis();
-            java.util.Iterator<Map.Entry<UUID, PendingRespawn>> it = pendingRespawns.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<UUID, PendingRespawn> en = it.next();
-                UUID ownerId = en.getKey();
-                PendingRespawn pr = en.getValue();
-                if (pr == null || pr.worldObj == null) {
-                    it.remove();
-                    continue;
-                }
-                if (now < pr.atMillis) continue;
-
-                // Evita respawn duplicado se alguém já deu /amigo spawn no meio
-                if (npcRefPorPlayer.containsKey(ownerId)) {
-                    it.remove();
-                    continue;
-                }
+    private boolean shouldWakeDormant(Store<EntityStore> store, Object worldObj, NpcRecord rec) {
+        if (!(rec.refObj instanceof Ref<?> npcRef)) return true;
+        try {
+            if (!npcRef.isValid()) return true;
+        } catch (Throwable ignored) {}
 
-                if (pr.message != null && !pr.message.isBlank()) {
-                    sendToOwner(pr.worldObj, ownerId, pr.message);
-                }
-                spawn(pr.worldObj, ownerId, pr.senderObj);
-                it.remove();
-            }
-        }
+        Object ownerRef = invokeOneArg(worldObj, "getEntityRef", UUID.class, rec.ownerId);
+        if (ownerRef == null) return true;
+        Object ownerTransform = getComponentFromStore(store, ownerRef, TransformComponent.getComponentType());
+        if (!(ownerTransform instanceof TransformComponent ot) || ot.getPosition() == null) return true;
 
-    for (Map.Entry<UUID, NpcRecord> e : npcRefPorPlayer.entrySet()) {
-        UUID owner = e.getKey();
-        NpcRecord rec = e.getValue();
-        if (rec == null) continue;
-        if (rec.state != State.ACTIVE) continue;
-        if (rec.refObj == null || rec.worldObj == null) continue;
-        if (rec.downed) continue;
+        Vector3d op = ot.getPosition();
+        if (rec.ownerSampleDistSq(op) > DORMANT_WAKE_DIST2) return true;
+        if (!rec.hasNpcSample()) return true;
+        final double nx = rec.npcX(), ny = rec.npcY(), nz = rec.npcZ();
 
-        Object worldObj = rec.worldObj;
+        WorldTickSnapshot snap = null;
 
-        // Executa no contexto do mundo (thread-safe)
-        HytaleBridge.worldExecute(worldObj, () -> {
+        // Item dropado perto do NPC (mesmo raio do tryAutoLoot)
+        if (rec.autoLootEnabled && !rec.lootPausedInventoryFull) {
+            snap = WorldTickSnapshot.recent(store, DORMANT_SNAPSHOT_MAX_AGE_NANOS);
+            final boolean[] found = new boolean[]{false};
             try {
-                Object storeObj = getComponentStoreFromWorld(worldObj);
-                if (!(storeObj instanceof Store<?> rawStore)) return;
-
-                @SuppressWarnings("unchecked")
-                Store<EntityStore> store = (Store<EntityStore>) rawStore;
+                snap.items().forEachInRadius(nx, ny, nz, 4.0, 4.0, (i, hd2) -> {
+                    found[0] = true;
+                    return false;
+                });
+            } catch (Throwable ignored) {}
+            if (found[0]) return true;
+        }
 
-                Object ownerRef = invokeOneArg(worldObj, "getEntityRef", UUID.class, owner);
-                if (ownerRef == null) return;
+        // Defender: algo que a auto-aquisição pegaria (mesma busca do findNearestDefenderTarget)
+        if (rec.defendeEnabled && !rec.chaseDisengaged) {
+            if (snap == null) snap = WorldTickSnapshot.recent(store, DORMANT_SNAPSHOT_MAX_AGE_NANOS);
+            if (findNearestLiving(snap.living(), store, ownerRef, rec.refObj, null, op,
+                    DEFENDER_AUTO_ACQUIRE_RADIUS, !pvpEnabled) != null) return true;
+        }
+        return false;
+    }
 
-                Object ownerTransform = getComponentFromStore(store, ownerRef, TransformComponent.getComponentType());
-                Object npcTransform = getComponentFromStore(store, rec.refObj, TransformComponent.getComponentType());
-                // Se o NPC sumiu do mundo (despawn por algum sistema), limpa o registro para permitir /amigo spawn
-                if (!(npcTransform instanceof TransformComponent)) {
-                    amigoRefs.remove(rec.refObj);
-                    npcRefPorPlayer.remove(owner, rec);
-                    return;
-                }
+    /**
+     * Follow/defender/autoloot/resgate de 1 NPC. Roda na thread do mundo, dentro da task em lote do tickFollow.
+     */
+    private void tickFollowRecord(Store<EntityStore> store, Object worldObj, UUID owner, NpcRecord rec) {
+        Object ownerRef = invokeOneArg(worldObj, "getEntityRef", UUID.class, owner);
+        if (ownerRef == null) return;
+
+        Object ownerTransform = getComponentFromStore(store, ownerRef, TransformComponent.getComponentType());
+        Object npcTransform = getComponentFromStore(store, rec.refObj, TransformComponent.getComponentType());
+        // Se o NPC sumiu do mundo (despawn por algum sistema), limpa o registro para permitir /amigo spawn
+        if (!(npcTransform instanceof TransformComponent)) {
+            flushDirtyFields(rec, System.currentTimeMillis(), true);
+            amigoRefs.remove(rec.refObj);
+            unregister(owner, rec);
+            return;
+        }
 
-                // Segurança: se por algum motivo o HP do NPC chegou a 0 e ele não entrou em DOWNED,
-                // força o estado DOWNED para não continuar correndo/atacando sem vida.
+        // Segurança: se por algum motivo o HP do NPC chegou a 0 e ele não entrou em DOWNED,
+        // força o estado DOWNED para não continuar correndo/atacando sem vida.
+        try {
+            @SuppressWarnings("unchecked")
+            Ref<EntityStore> npcRef = (Ref<EntityStore>) rec.refObj;
+            EntityStatMap st = store.getComponent(npcRef, EntityStatMap.getComponentType());
+            if (st != null) {
                 try {
-                    @SuppressWarnings("unchecked")
-                    Ref<EntityStore> npcRef = (Ref<EntityStore>) rec.refObj;
-                    EntityStatMap st = store.getComponent(npcRef, EntityStatMap.getComponentType());
-                    if (st != null) {
-                        try {
-                            var hp = st.get(DefaultEntityStatTypes.getHealth());
-                            if (hp != null && hp.get() <= 0.0f) {
-                                markDowned(owner);
-                                return;
-                            }
-                        } catch (Throwable ignored) {}
+                    var hp = st.get(DefaultEntityStatTypes.getHealth());
+                    if (hp != null && hp.get() <= 0.0f) {
+                        markDowned(owner);
+                        return;
                     }
                 } catch (Throwable ignored) {}
-                if (!(ownerTransform instanceof TransformComponent)) return;
+            }
+        } catch (Throwable ignored) {}
+        if (!(ownerTransform instanceof TransformComponent)) return;
+
+        TransformComponent ot = (TransformComponent) ownerTransform;
+        TransformComponent nt = (TransformComponent) npcTransform;
+
+        var op = ot.getPosition();
+        var np = nt.getPosition();
+        if (op == null || np == null) return;
 
-                TransformComponent ot = (TransformComponent) ownerTransform;
-                TransformComponent nt = (TransformComponent) npcTransform;
+        double dx = op.getX() - np.getX();
+        double dz = op.getZ() - np.getZ();
+        double dy = op.getY() - np.getY();
 
-                var op = ot.getPosition();
-                var np = nt.getPosition();
-                if (op == null || np == null) return;
+        double horizontal = Math.sqrt(dx * dx + dz * dz);
 
-                double dx = op.getX() - np.getX();
-                double dz = op.getZ() - np.getZ();
-                double dy = op.getY() - np.getY();
+        // LOD: amostra do dono (cópia só quando ele se move)
+        if (rec.ownerSampleDistSq(op) > OWNER_MOVED_EPS2) {
+            rec.setOwnerSample(op);
+            rec.setLastOwnerMoved(System.currentTimeMillis());
+        }
+        rec.setLastOwnerHorizontal(horizontal);
+
+        // Se o NPC já voltou para perto do dono, libera novamente a aquisição de alvo.
+        if (rec.chaseDisengaged && horizontal <= CHASE_REACQUIRE_DISTANCE) {
+            rec.chaseDisengaged = false;
+        }
+
+        // controle: tempo fora do raio de follow (25 blocos)
+        if (horizontal > 25.0) {
+            if (rec.farSinceMillis == 0L) rec.farSinceMillis = System.currentTimeMillis();
+        } else {
+            rec.farSinceMillis = 0L;
+        }
+
+        // Amostra de movimento real do NPC (anti-teleporte agressivo)
+        long now = System.currentTimeMillis();
+        if (rec.lastNpcMoved() == 0L) rec.setLastNpcMoved(now);
+        if (!rec.hasNpcSample()) rec.setNpcSample(np, now);
+        if (now - rec.npcSampleMillis() >= 400L) {
+            double moved = Math.sqrt(rec.npcSampleDistSq(np));
+            if (moved > 0.25) rec.setLastNpcMoved(now);
+            rec.setNpcSample(np, now);
+        }
 
-                double horizontal = Math.sqrt(dx * dx + dz * dz);
+        // Limpa animação de ataque antiga (best-effort)
+        clearExpiredAttackAnimation(store, rec.refObj, rec, now);
 
-                // Se o NPC já voltou para perto do dono, libera novamente a aquisição de alvo.
-                if (rec.chaseDisengaged && horizontal <= CHASE_REACQUIRE_DISTANCE) {
-                    rec.chaseDisengaged = false;
+        // Defender: por padrão OFF (sem ataques). Quando ON, escolhe alvo e persegue.
+        try {
+            // Defender OFF: limpa qualquer alvo em memória e apenas segue.
+            if (!rec.defendeEnabled) {
+                rec.combatUntilMillis = 0L;
+                rec.combatTargetRefObj = null;
+                rec.assistUntilMillis = 0L;
+                rec.assistTargetRefObj = null;
+                rec.chaseDisengaged = false;
+                rec.targetLostSinceMillis = 0L;
+                rec.targetStuckSinceMillis = 0L;
+                rec.lastTargetHorizontal = -1.0;
+                rec.lastTargetSampleMillis = 0L;
+
+                Object npcEntityObj = getComponentFromStore(store, rec.refObj, NPCEntity.getComponentType());
+                if (npcEntityObj != null) {
+                    markCompanionTargets(rec, npcEntityObj, ownerRef, null, now);
+                }
+            } else {
+                // expira combate por tempo
+                if (rec.combatUntilMillis > 0L && now > rec.combatUntilMillis) {
+                    rec.combatUntilMillis = 0L;
+                    rec.combatTargetRefObj = null;
                 }
 
-                // controle: tempo fora do raio de follow (25 blocos)
-                if (horizontal > 25.0) {
-                    if (rec.farSinceMillis == 0L) rec.farSinceMillis = System.currentTimeMillis();
-                } else {
-                    rec.farSinceMillis = 0L;
+                // se o agressor sumiu/morreu, encerra combate
+                Object combatTarget = getActiveCombatTarget(rec, now);
+                if (combatTarget != null && !isAliveEntityRef(store, combatTarget)) {
+                    rec.combatUntilMillis = 0L;
+                    rec.combatTargetRefObj = null;
+                    combatTarget = null;
                 }
 
-                // Amostra de movimento real do NPC (anti-teleporte agressivo)
-                long now = System.currentTimeMillis();
-                if (rec.lastNpcMovedMillis == 0L) rec.lastNpcMovedMillis = now;
-                if (rec.lastSampleMillis == 0L) rec.lastSampleMillis = now;
-                if (rec.lastNpcPos == null) rec.lastNpcPos = np;
-                if (now - rec.lastSampleMillis >= 400L) {
-                    double mdx = np.getX() - rec.lastNpcPos.getX();
-                    double mdy = np.getY() - rec.lastNpcPos.getY();
-                    double mdz = np.getZ() - rec.lastNpcPos.getZ();
-                    double moved = Math.sqrt(mdx * mdx + mdy * mdy + mdz * mdz);
-                    if (moved > 0.25) rec.lastNpcMovedMillis = now;
-                    rec.lastNpcPos = np;
-                    rec.lastSampleMillis = now;
+                // assistência: termina 3s após ficar sem alvo
+                tickAssistHousekeeping(rec, store, now);
+
+                // Auto-aquisicao: com Defender ON, se nao ha agressor nem assist atual, pega um alvo no raio.
+                // Se estourou o limite de chase, aguarda voltar para perto do dono.
+                if (!rec.chaseDisengaged && !rec.lootingActive() && combatTarget == null && rec.assistTargetRefObj == null && rec.assistUntilMillis == 0L) {
+                    Object autoTarget = findNearestDefenderTarget(store, rec, ownerRef, op);
+                    if (autoTarget != null) {
+                        rec.assistTargetRefObj = autoTarget;
+                        rec.assistUntilMillis = 0L;
+                        debugCombat(rec, owner, "autoAssist: targetRef=" + autoTarget);
+                    }
                 }
 
-                // Limpa animação de ataque antiga (best-effort)
-                clearExpiredAttackAnimation(store, rec.refObj, rec, now);
 
-                // Defender: por padrão OFF (sem ataques). Quando ON, escolhe alvo e persegue.
-                try {
-                    // Defender OFF: limpa qualquer alvo em memória e apenas segue.
-                    if (!rec.defendeEnabled) {
+                Object desiredTarget = combatTarget;
+                if (desiredTarget == null) {
+                    Object assistTarget = getActiveAssistTarget(rec, now);
+                    desiredTarget = (assistTarget != null) ? assistTarget : ownerRef;
+                }
+
+                boolean inCombatOrAssist = (desiredTarget != null && !refEq(desiredTarget, ownerRef));
+
+                // Limite de perseguição: se o NPC se afastar demais do dono,
+                // ele desiste do alvo e volta para o player. Isso evita o NPC
+                // correr para longe e também ajuda o auto-loot voltar após o combate.
+                if (inCombatOrAssist && horizontal > CHASE_MAX_DISTANCE) {
+                    // Cancela agressor/assist atual
+                    rec.combatUntilMillis = 0L;
+                    rec.combatTargetRefObj = null;
+                    rec.assistTargetRefObj = null;
+                    rec.chaseDisengaged = true;
+                    // Dá um pequeno grace para não retargetar imediatamente enquanto retorna
+                    rec.assistUntilMillis = now + ASSIST_GRACE_MILLIS;
+
+                    desiredTarget = ownerRef;
+                    inCombatOrAssist = false;
+
+                    rec.targetLostSinceMillis = 0L;
+                    rec.targetStuckSinceMillis = 0L;
+                    rec.lastTargetHorizontal = -1.0;
+                    rec.lastTargetSampleMillis = 0L;
+                }
+
+                // Se o alvo já está morto (HP zerou), não fique esperando o corpo sumir.
+                // - Defender ON: retarget imediato para um alvo perto do próprio NPC.
+                if (inCombatOrAssist && !isAliveEntityRef(store, desiredTarget)) {
+                    // limpa refs antigas
+                    if (combatTarget != null && refEq(desiredTarget, combatTarget)) {
                         rec.combatUntilMillis = 0L;
                         rec.combatTargetRefObj = null;
-                        rec.assistUntilMillis = 0L;
+                        combatTarget = null;
+                    }
+                    if (rec.assistTargetRefObj != null && refEq(desiredTarget, rec.assistTargetRefObj)) {
                         rec.assistTargetRefObj = null;
-                        rec.chaseDisengaged = false;
+                        rec.assistUntilMillis = now + ASSIST_GRACE_MILLIS;
+                    }
+
+                    Object rt = findNearestTargetNearNpc(store, rec, ownerRef, np, desiredTarget);
+                    if (rt != null) {
+                        rec.assistTargetRefObj = rt;
+                        rec.assistUntilMillis = 0L;
+                        desiredTarget = rt;
+                        inCombatOrAssist = true;
+
+                        // reseta trackers para não herdar "lost" do alvo anterior
                         rec.targetLostSinceMillis = 0L;
                         rec.targetStuckSinceMillis = 0L;
                         rec.lastTargetHorizontal = -1.0;
                         rec.lastTargetSampleMillis = 0L;
 
-                        Object npcEntityObj = getComponentFromStore(store, rec.refObj, NPCEntity.getComponentType());
-                        if (npcEntityObj != null) {
-                            setLockedTargetOnNpcEntity(npcEntityObj, ownerRef);
-                            setMarkedTargetOnNpcEntity(npcEntityObj, "CombatTarget", null);
-                        }
+                        debugCombat(rec, owner, "retargetOnDeath: targetRef=" + rt);
                     } else {
-                        // expira combate por tempo
-                        if (rec.combatUntilMillis > 0L && now > rec.combatUntilMillis) {
-                            rec.combatUntilMillis = 0L;
-                            rec.combatTargetRefObj = null;
-                        }
-
-                        // se o agressor sumiu/morreu, encerra combate
-                        Object combatTarget = getActiveCombatTarget(rec, now);
-                        if (combatTarget != null && !isAliveEntityRef(store, combatTarget)) {
-                            rec.combatUntilMillis = 0L;
-                            rec.combatTargetRefObj = null;
-                            combatTarget = null;
-                        }
-
-                        // assistência: termina 3s após ficar sem alvo
-                        tickAssistHousekeeping(rec, store, now);
-
-                        // Auto-aquisicao: com Defender ON, se nao ha agressor nem assist atual, pega um alvo no raio.
-                        // Se estourou o limite de chase, aguarda voltar para perto do dono.
-                        if (!rec.chaseDisengaged && !rec.lootingActive && combatTarget == null && rec.assistTargetRefObj == null && rec.assistUntilMillis == 0L) {
-                            Object autoTarget = findNearestDefenderTarget(store, rec, ownerRef, op);
-                            if (autoTarget != null) {
-                                rec.assistTargetRefObj = autoTarget;
-                                rec.assistUntilMillis = 0L;
-                                debugCombat(rec, owner, "autoAssist: targetRef=" + autoTarget);
-                            }
-                        }
+                        desiredTarget = ownerRef;
+                        inCombatOrAssist = false;
+                    }
+                }
 
+                // Target lost (A): se ficar longe demais / altura ruim / travado → limpa e volta a seguir.
+                if (inCombatOrAssist) {
+                    try {
+                        if (desiredTarget instanceof Ref && rec.refObj instanceof Ref) {
+                            Ref<EntityStore> tgtRef = (Ref<EntityStore>) desiredTarget;
+                            Ref<EntityStore> npcRef = (Ref<EntityStore>) rec.refObj;
+
+                            TransformComponent npcT = store.getComponent(npcRef, TransformComponent.getComponentType());
+                            TransformComponent tgtT = store.getComponent(tgtRef, TransformComponent.getComponentType());
+
+                            if (npcT != null && tgtT != null && npcT.getPosition() != null && tgtT.getPosition() != null) {
+                                var np2 = npcT.getPosition();
+                                var tp2 = tgtT.getPosition();
+
+                                double dx2 = tp2.getX() - np2.getX();
+                                double dz2 = tp2.getZ() - np2.getZ();
+                                double dy2 = tp2.getY() - np2.getY();
+                                double h2 = Math.sqrt(dx2 * dx2 + dz2 * dz2);
+                                double ady2 = Math.abs(dy2);
+
+                                // Alvos altos (~2 blocos): relaxa o limite vertical e tenta reposicionar
+                                double targetHeight = getEntityHeight(store, tgtRef);
+                                boolean tallTarget = (targetHeight >= 1.9);
+                                double allowedDy = tallTarget ? 3.0 : 1.5;
+
+                                if (tallTarget && h2 < 0.90 && (now - rec.lastCombatNudgeMillis) > 900L) {
+                                    try {
+                                        double len = Math.sqrt(dx2 * dx2 + dz2 * dz2);
+                                        double nx = (len > 0.001) ? (-dx2 / len) : 1.0;
+                                        double nz = (len > 0.001) ? (-dz2 / len) : 0.0;
+                                        Vector3d npos = new Vector3d(np2.getX() + nx * 0.80, np2.getY(), np2.getZ() + nz * 0.80);
+                                        npcT.teleportPosition(npos);
+                                        rec.lastCombatNudgeMillis = now;
+                                    } catch (Throwable ignored) {}
+                                }
 
-                        Object desiredTarget = combatTarget;
-                        if (desiredTarget == null) {
-                            Object assistTarget = getActiveAssistTarget(rec, now);
-                            desiredTarget = (assistTarget != null) ? assistTarget : ownerRef;
-                        }
+                                boolean tooFar = (h2 > 20.0);
+                                boolean tooHigh = (ady2 > allowedDy);
 
-                        boolean inCombatOrAssist = (desiredTarget != null && !refEq(desiredTarget, ownerRef));
-
-                        // Limite de perseguição: se o NPC se afastar demais do dono,
-                        // ele desiste do alvo e volta para o player. Isso evita o NPC
-                        // correr para longe e também ajuda o auto-loot voltar após o combate.
-                        if (inCombatOrAssist && horizontal > CHASE_MAX_DISTANCE) {
-                            // Cancela agressor/assist atual
-                            rec.combatUntilMillis = 0L;
-                            rec.combatTargetRefObj = null;
-                            rec.assistTargetRefObj = null;
-                            rec.chaseDisengaged = true;
-                            // Dá um pequeno grace para não retargetar imediatamente enquanto retorna
-                            rec.assistUntilMillis = now + ASSIST_GRACE_MILLIS;
-
-                            desiredTarget = ownerRef;
-                            inCombatOrAssist = false;
-
-                            rec.targetLostSinceMillis = 0L;
-                            rec.targetStuckSinceMillis = 0L;
-                            rec.lastTargetHorizontal = -1.0;
-                            rec.lastTargetSampleMillis = 0L;
-                        }
+                                // Stuck: se não conseguir reduzir distância por ~2s
+                                if (now - rec.lastTargetSampleMillis >= 350L) {
+                                    if (rec.lastTargetHorizontal >= 0 && h2 >= (rec.lastTargetHorizontal - 0.20)) {
+                                        if (rec.targetStuckSinceMillis == 0L) rec.targetStuckSinceMillis = now;
+                                    } else {
+                                        rec.targetStuckSinceMillis = 0L;
+                                    }
+                                    rec.lastTargetHorizontal = h2;
+                                    rec.lastTargetSampleMillis = now;
+                                }
+                                boolean stuckTooLong = (rec.targetStuckSinceMillis > 0L && (now - rec.targetStuckSinceMillis) > 2000L);
 
-                        // Se o alvo já está morto (HP zerou), não fique esperando o corpo sumir.
-                        // - Defender ON: retarget imediato para um alvo perto do próprio NPC.
-                        if (inCombatOrAssist && !isAliveEntityRef(store, desiredTarget)) {
-                            // limpa refs antigas
-                            if (combatTarget != null && refEq(desiredTarget, combatTarget)) {
-                                rec.combatUntilMillis = 0L;
-                                rec.combatTargetRefObj = null;
-                                combatTarget = null;
-                            }
-                            if (rec.assistTargetRefObj != null && refEq(desiredTarget, rec.assistTargetRefObj)) {
-                                rec.assistTargetRefObj = null;
-                                rec.assistUntilMillis = now + ASSIST_GRACE_MILLIS;
-                            }
+                                boolean lostCond = tooFar || tooHigh || stuckTooLong;
+                                if (lostCond) {
+                                    if (rec.targetLostSinceMillis == 0L) rec.targetLostSinceMillis = now;
+                                } else {
+                                    rec.targetLostSinceMillis = 0L;
+                                }
 
-                            Object rt = findNearestTargetNearNpc(store, rec, ownerRef, np, desiredTarget);
-                            if (rt != null) {
-                                rec.assistTargetRefObj = rt;
-                                rec.assistUntilMillis = 0L;
-                                desiredTarget = rt;
-                                inCombatOrAssist = true;
-
-                                // reseta trackers para não herdar "lost" do alvo anterior
-                                rec.targetLostSinceMillis = 0L;
-                                rec.targetStuckSinceMillis = 0L;
-                                rec.lastTargetHorizontal = -1.0;
-                                rec.lastTargetSampleMillis = 0L;
-
-                                debugCombat(rec, owner, "retargetOnDeath: targetRef=" + rt);
-                            } else {
-                                desiredTarget = ownerRef;
-                                inCombatOrAssist = false;
-                            }
-                        }
+                                // Renova janela de combate por sinais válidos (evita expirar enquanto persegue)
+                                if (combatTarget != null && refEq(desiredTarget, combatTarget)) {
+                                    boolean okToRenew = (!lostCond) && (h2 <= 25.0);
+                                    if (okToRenew) {
+                                        rec.combatUntilMillis = now + COMBAT_WINDOW_MILLIS;
+                                    }
+                                }
 
-                        // Target lost (A): se ficar longe demais / altura ruim / travado → limpa e volta a seguir.
-                        if (inCombatOrAssist) {
-                            try {
-                                if (desiredTarget instanceof Ref && rec.refObj instanceof Ref) {
-                                    Ref<EntityStore> tgtRef = (Ref<EntityStore>) desiredTarget;
-                                    Ref<EntityStore> npcRef = (Ref<EntityStore>) rec.refObj;
-
-                                    TransformComponent npcT = store.getComponent(npcRef, TransformComponent.getComponentType());
-                                    TransformComponent tgtT = store.getComponent(tgtRef, TransformComponent.getComponentType());
-
-                                    if (npcT != null && tgtT != null && npcT.getPosition() != null && tgtT.getPosition() != null) {
-                                        var np2 = npcT.getPosition();
-                                        var tp2 = tgtT.getPosition();
-
-                                        double dx2 = tp2.getX() - np2.getX();
-                                        double dz2 = tp2.getZ() - np2.getZ();
-                                        double dy2 = tp2.getY() - np2.getY();
-                                        double h2 = Math.sqrt(dx2 * dx2 + dz2 * dz2);
-                                        double ady2 = Math.abs(dy2);
-
-                                        // Alvos altos (~2 blocos): relaxa o limite vertical e tenta reposicionar
-                                        double targetHeight = getEntityHeight(store, tgtRef);
-                                        boolean tallTarget = (targetHeight >= 1.9);
-                                        double allowedDy = tallTarget ? 3.0 : 1.5;
-
-                                        if (tallTarget && h2 < 0.90 && (now - rec.lastCombatNudgeMillis) > 900L) {
-                                            try {
-                                                double len = Math.sqrt(dx2 * dx2 + dz2 * dz2);
-                                                double nx = (len > 0.001) ? (-dx2 / len) : 1.0;
-                                                double nz = (len > 0.001) ? (-dz2 / len) : 0.0;
-                                                Vector3d npos = new Vector3d(np2.getX() + nx * 0.80, np2.getY(), np2.getZ() + nz * 0.80);
-                                                npcT.teleportPosition(npos);
-                                                rec.lastCombatNudgeMillis = now;
-                                            } catch (Throwable ignored) {}
-                                        }
-
-                                        boolean tooFar = (h2 > 20.0);
-                                        boolean tooHigh = (ady2 > allowedDy);
-
-                                        // Stuck: se não conseguir reduzir distância por ~2s
-                                        if (now - rec.lastTargetSampleMillis >= 350L) {
-                                            if (rec.lastTargetHorizontal >= 0 && h2 >= (rec.lastTargetHorizontal - 0.20)) {
-                                                if (rec.targetStuckSinceMillis == 0L) rec.targetStuckSinceMillis = now;
-                                            } else {
-                                                rec.targetStuckSinceMillis = 0L;
-                                            }
-                                            rec.lastTargetHorizontal = h2;
-                                            rec.lastTargetSampleMillis = now;
-                                        }
-                                        boolean stuckTooLong = (rec.targetStuckSinceMillis > 0L && (now - rec.targetStuckSinceMillis) > 2000L);
-
-                                        boolean lostCond = tooFar || tooHigh || stuckTooLong;
-                                        if (lostCond) {
-                                            if (rec.targetLostSinceMillis == 0L) rec.targetLostSinceMillis = now;
-                                        } else {
-                                            rec.targetLostSinceMillis = 0L;
-                                        }
-
-                                        // Renova janela de combate por sinais válidos (evita expirar enquanto persegue)
-                                        if (combatTarget != null && refEq(desiredTarget, combatTarget)) {
-                                            boolean okToRenew = (!lostCond) && (h2 <= 25.0);
-                                            if (okToRenew) {
-                                                rec.combatUntilMillis = now + COMBAT_WINDOW_MILLIS;
-                                            }
-                                        }
-
-                                        // Se perdeu o target por ~2s → limpa alvo e volta a seguir (A)
-                                        if (rec.targetLostSinceMillis > 0L && (now - rec.targetLostSinceMillis) > 2000L) {
-                                            if (combatTarget != null && refEq(desiredTarget, combatTarget)) {
-                                                rec.combatUntilMillis = 0L;
-                                                rec.combatTargetRefObj = null;
-                                                combatTarget = null;
-                                            } else {
-                                                // perdeu assist
-                                                rec.assistTargetRefObj = null;
-                                                rec.assistUntilMillis = now + ASSIST_GRACE_MILLIS;
-                                            }
-                                            rec.targetLostSinceMillis = 0L;
-                                            rec.targetStuckSinceMillis = 0L;
-                                            rec.lastTargetHorizontal = -1.0;
-                                            rec.lastTargetSampleMillis = 0L;
-                                            desiredTarget = ownerRef;
-                                            inCombatOrAssist = false;
-                                        }
+                                // Se perdeu o target por ~2s → limpa alvo e volta a seguir (A)
+                                if (rec.targetLostSinceMillis > 0L && (now - rec.targetLostSinceMillis) > 2000L) {
+                                    if (combatTarget != null && refEq(desiredTarget, combatTarget)) {
+                                        rec.combatUntilMillis = 0L;
+                                        rec.combatTargetRefObj = null;
+                                        combatTarget = null;
+                                    } else {
+                                        // perdeu assist
+                                        rec.assistTargetRefObj = null;
+                                        rec.assistUntilMillis = now + ASSIST_GRACE_MILLIS;
                                     }
+                                    rec.targetLostSinceMillis = 0L;
+                                    rec.targetStuckSinceMillis = 0L;
+                                    rec.lastTargetHorizontal = -1.0;
+                                    rec.lastTargetSampleMillis = 0L;
+                                    desiredTarget = ownerRef;
+                                    inCombatOrAssist = false;
                                 }
-                            } catch (Throwable ignored) {}
-                        } else {
-                            rec.targetLostSinceMillis = 0L;
-                            rec.targetStuckSinceMillis = 0L;
-                            rec.lastTargetHorizontal = -1.0;
-                            rec.lastTargetSampleMillis = 0L;
+                            }
                         }
+                    } catch (Throwable ignored) {}
+                } else {
+                    rec.targetLostSinceMillis = 0L;
+                    rec.targetStuckSinceMillis = 0L;
+                    rec.lastTargetHorizontal = -1.0;
+                    rec.lastTargetSampleMillis = 0L;
+                }
 
-                        Object npcEntityObj = getComponentFromStore(store, rec.refObj, NPCEntity.getComponentType());
-                        if (npcEntityObj != null) {
-                            // Em combate/assist: LockedTarget aponta para o alvo (perseguição em movimento).
-                            // Fora: LockedTarget volta a seguir o dono.
-                            setLockedTargetOnNpcEntity(npcEntityObj, inCombatOrAssist ? desiredTarget : ownerRef);
-                            setMarkedTargetOnNpcEntity(npcEntityObj, "CombatTarget", inCombatOrAssist ? desiredTarget : null);
+                Object npcEntityObj = getComponentFromStore(store, rec.refObj, NPCEntity.getComponentType());
+                if (npcEntityObj != null) {
+                    // Em combate/assist: LockedTarget aponta para o alvo (perseguição em movimento).
+                    // Fora: LockedTarget volta a seguir o dono.
+                    markCompanionTargets(rec, npcEntityObj,
+                            inCombatOrAssist ? desiredTarget : ownerRef,
+                            inCombatOrAssist ? desiredTarget : null, now);
 
-                            // Força estado para ajudar repath/velocidade/animações
-                            setFlockState(store, rec.refObj, inCombatOrAssist ? "Run" : "Walk", "");
+                    // Força estado para ajudar repath/velocidade/animações
+                    setFlockState(store, rec.refObj, inCombatOrAssist ? "Run" : "Walk", "");
 
-                            // Ataque corpo a corpo quando há alvo
-                            if (inCombatOrAssist) {
-                                tryMeleeAttack(store, rec, ownerRef, desiredTarget, now);
-                            }
-                        }
+                    // Ataque corpo a corpo quando há alvo
+                    if (inCombatOrAssist) {
+                        tryMeleeAttack(store, rec, ownerRef, desiredTarget, now);
                     }
-                } catch (Throwable ignored) {}
+                }
+            }
+        } catch (Throwable ignored) {}
 	// AUTOLOOT (/autoloot)
 	                // ON: coleta tudo num raio fixo, mesmo em combate.
 	                // OFF: não coleta nada.
 	                // Esta flag precisa existir fora do bloco try/catch acima.
 	                boolean inCombatOrAssistNow = rec.defendeEnabled && ((now < rec.combatUntilMillis) || (now < rec.assistUntilMillis));
 	                if (rec.autoLootEnabled) {
-                    // Loot pós-combate (combat tags): só fora de combate e quando não há inimigo muito perto.
-                    // (Durante combate/assist, essa rotina pausa automaticamente.)
+            // Loot pós-combate (combat tags): só fora de combate e quando não há inimigo muito perto.
+            // (Durante combate/assist, essa rotina pausa automaticamente.)
 	                    tickCombatTaggedLooting(store, owner, rec, ownerRef, np, op, now, worldObj, inCombatOrAssistNow);
 
-                    // Auto-loot curto: coleta itens próximos no raio fixo.
-                    // Observação: o /autoloot ON permite coletar mesmo em combate.
-                    tryAutoLoot(store, owner, rec, np, op, now, worldObj);
-                } else {
-                    // /autoloot OFF: desliga qualquer looting.
-                    endCombatTaggedLooting(rec);
-                }
+            // Auto-loot curto: coleta itens próximos no raio fixo.
+            // Observação: o /autoloot ON permite coletar mesmo em combate.
+            tryAutoLoot(store, owner, rec, np, op, now, worldObj);
+        } else {
+            // /autoloot OFF: desliga qualquer looting.
+            endCombatTaggedLooting(rec);
+        }
 
 // Teleporte de segurança (RESGATE) — só quando realmente "travou"/se perdeu.
-                // Evita teleporte quando o NPC está caminhando normalmente.
-                // Teleporte só como "resgate" (não como modo normal de follow)
-                // - Deixa o role fazer o Seek/Walk/Run.
-                // - Se o NPC ficar travado e MUITO longe, aí sim teleport.
-                boolean stalled = (now - rec.lastNpcMovedMillis) > 6000L;
-                boolean stalledShort = (now - rec.lastNpcMovedMillis) > 3500L;
-
-                // Seguimento (fora de combate): se ficar muito longe e travar, faz resgate mais cedo.
+        // Evita teleporte quando o NPC está caminhando normalmente.
+        // Teleporte só como "resgate" (não como modo normal de follow)
+        // - Deixa o role fazer o Seek/Walk/Run.
+        // - Se o NPC ficar travado e MUITO longe, aí sim teleport.
+        boolean stalled = (now - rec.lastNpcMoved()) > 6000L;
+        boolean stalledShort = (now - rec.lastNpcMoved()) > 3500L;
+
+        // Seguimento (fora de combate): se ficar muito longe e travar, faz resgate mais cedo.
 	                boolean inCombatOrAssist = inCombatOrAssistNow;
-                boolean followSoft = (horizontal > 25.0) || (Math.abs(dy) > 12.0);
-                boolean followHard = (horizontal > 35.0) || (Math.abs(dy) > 18.0);
-
-                boolean farHard = (horizontal > 120.0) || (Math.abs(dy) > 30.0);
-                boolean farSoft = (horizontal > 70.0) || (Math.abs(dy) > 20.0);
-
-                boolean shouldRescue = false;
-                // Se ficar fora do raio de 25 blocos, faz resgate para perto.
-                // - Fora de combate: ~2.5s
-                // - Em combate (player fugiu): ~1.5s (para não ficar preso no mob)
-                if (rec.farSinceMillis > 0L) {
-                    long limit = inCombatOrAssist ? 1500L : 2500L;
-                    if ((now - rec.farSinceMillis) > limit) {
-                        shouldRescue = true;
-                    }
-                }
-                if (!inCombatOrAssist) {
-                    shouldRescue = shouldRescue || followHard || (followSoft && stalledShort);
-                }
-                // Resgate extremo sempre (mesmo em combate), para não perder o NPC.
-                if (!shouldRescue) {
-                    shouldRescue = farHard || (farSoft && stalled);
-                }
+        boolean followSoft = (horizontal > 25.0) || (Math.abs(dy) > 12.0);
+        boolean followHard = (horizontal > 35.0) || (Math.abs(dy) > 18.0);
+
+        boolean farHard = (horizontal > 120.0) || (Math.abs(dy) > 30.0);
+        boolean farSoft = (horizontal > 70.0) || (Math.abs(dy) > 20.0);
+
+        boolean shouldRescue = false;
+        // Se ficar fora do raio de 25 blocos, faz resgate para perto.
+        // - Fora de combate: ~2.5s
+        // - Em combate (player fugiu): ~1.5s (para não ficar preso no mob)
+        if (rec.farSinceMillis > 0L) {
+            long limit = inCombatOrAssist ? 1500L : 2500L;
+            if ((now - rec.farSinceMillis) > limit) {
+                shouldRescue = true;
+            }
+        }
+        if (!inCombatOrAssist) {
+            shouldRescue = shouldRescue || followHard || (followSoft && stalledShort);
+        }
+        // Resgate extremo sempre (mesmo em combate), para não perder o NPC.
+        if (!shouldRescue) {
+            shouldRescue = farHard || (farSoft && stalled);
+        }
 
-                if (shouldRescue && (now - rec.lastTeleportMillis) > 3000L) {
-                    rec.lastTeleportMillis = now;
+        if (shouldRescue && (now - rec.lastTeleportMillis) > 3000L) {
+            rec.lastTeleportMillis = now;
 
-                    // Se o player fugiu no meio do combate, limpamos o alvo e voltamos a seguir.
-                    if (inCombatOrAssist) {
-                        rec.combatUntilMillis = 0L;
-                        rec.combatTargetRefObj = null;
-                        rec.assistUntilMillis = 0L;
-                        rec.assistTargetRefObj = null;
-                        rec.targetLostSinceMillis = 0L;
-                        rec.targetStuckSinceMillis = 0L;
-                        rec.lastTargetHorizontal = -1.0;
-                        rec.lastTargetSampleMillis = 0L;
-                    }
+            // Se o player fugiu no meio do combate, limpamos o alvo e voltamos a seguir.
+            if (inCombatOrAssist) {
+                rec.combatUntilMillis = 0L;
+                rec.combatTargetRefObj = null;
+                rec.assistUntilMillis = 0L;
+                rec.assistTargetRefObj = null;
+                rec.targetLostSinceMillis = 0L;
+                rec.targetStuckSinceMillis = 0L;
+                rec.lastTargetHorizontal = -1.0;
+                rec.lastTargetSampleMillis = 0L;
+            }
 
-                    // Posiciona um pouco afastado do player (4~7 blocos), preferindo a direção de onde o NPC veio.
-                    double vx = np.getX() - op.getX();
-                    double vz = np.getZ() - op.getZ();
-                    double vlen = Math.sqrt(vx * vx + vz * vz);
-                    double ox = (vlen > 1.0e-6) ? (vx / vlen) : 1.0;
-                    double oz = (vlen > 1.0e-6) ? (vz / vlen) : 0.0;
-                    double dist = 6.0;
-                    nt.teleportPosition(new com.hypixel.hytale.math.vector.Vector3d(
-                            op.getX() + (ox * dist),
-                            op.getY(),
-                            op.getZ() + (oz * dist)
-                    ));
-                }
-            } catch (Throwable ignored) {}
-        });
+            // Posiciona um pouco afastado do player (4~7 blocos), preferindo a direção de onde o NPC veio.
+            double vx = np.getX() - op.getX();
+            double vz = np.getZ() - op.getZ();
+            double vlen = Math.sqrt(vx * vx + vz * vz);
+            double ox = (vlen > 1.0e-6) ? (vx / vlen) : 1.0;
+            double oz = (vlen > 1.0e-6) ? (vz / vlen) : 0.0;
+            double dist = 6.0;
+            nt.teleportPosition(new com.hypixel.hytale.math.vector.Vector3d(
+                    op.getX() + (ox * dist),
+                    op.getY(),
+                    op.getZ() + (oz * dist)
+            ));
+        }
     }
-}
 
 /**
      * Ajusta flags de movimento do NPC para bater com o estado do dono e com a decisão de mover.
@@ -3422,54 +3916,113 @@ private static void removeRefFromList(java.util.ArrayList<Object> list, Ref<Enti
      */
     private static void applyMovementAnimation(Store<EntityStore> store,
                                                Ref<EntityStore> npcRef,
+                                               NpcRecord rec,
                                                MovementStates ownerStates,
                                                double ownerSpeed,
                                                double npcSpeed,
                                                boolean moving,
                                                double distance) {
-        try {
-            MovementStatesComponent msComp = store.ensureAndGetComponent(npcRef, MovementStatesComponent.getComponentType());
+        int bits;
+
+        // Se não está movendo, ou se a velocidade real é muito baixa, força idle
+        if (!moving || npcSpeed < 0.20) {
+            bits = MOVE_IDLE;
+        } else {
+            boolean ownerSprint = ownerStates != null && ownerStates.sprinting;
+            boolean ownerRun = ownerStates != null && (ownerStates.running || ownerStates.sprinting);
+
+            // Decide andar/correr baseado no contexto (espelha o player quando fizer sentido)
+            // Animação: só corre quando realmente precisa (ex.: ficou distante do dono)
+            boolean wantSprint = ownerSprint || ownerSpeed > 6.0 || distance > 35.0;
+            boolean wantRun = ownerRun || ownerSpeed > 4.2 || distance > 25.0;
+
+            // Se o NPC ainda não ganhou velocidade de verdade, evita "correndo parado"
+            if (npcSpeed < 1.2) {
+                wantSprint = false;
+                wantRun = false;
+            }
 
-            // Copia estados do player como base (crouch/jump etc), mas decide andar/correr pelo estado real do NPC.
-            MovementStates s = (ownerStates != null) ? new MovementStates(ownerStates) : new MovementStates();
+            if (wantSprint) bits = MOVE_SPRINTING;
+            else if (wantRun) bits = MOVE_RUNNING;
+            else bits = MOVE_WALKING;
+        }
 
-            // Mantém coerência mínima
-            s.onGround = true;
+        writeMovementStates(store, npcRef, rec, bits, false);
+    }
 
-            // Se não está movendo, ou se a velocidade real é muito baixa, força idle
-            if (!moving || npcSpeed < 0.20) {
-                s.idle = true;
-                s.horizontalIdle = true;
+    // Flags de movimento que o AmigoNPC controla (o resto do MovementStates fica com o engine)
+    private static final int MOVE_ON_GROUND = 1;
+    private static final int MOVE_IDLE_FLAG = 1 << 1;
+    private static final int MOVE_HORIZONTAL_IDLE = 1 << 2;
+    private static final int MOVE_WALK_FLAG = 1 << 3;
+    private static final int MOVE_RUN_FLAG = 1 << 4;
+    private static final int MOVE_SPRINT_FLAG = 1 << 5;
 
-                s.walking = false;
-                s.running = false;
-                s.sprinting = false;
-            } else {
-                boolean ownerSprint = ownerStates != null && ownerStates.sprinting;
-                boolean ownerRun = ownerStates != null && (ownerStates.running || ownerStates.sprinting);
-
-                // Decide andar/correr baseado no contexto (espelha o player quando fizer sentido)
-                // Animação: só corre quando realmente precisa (ex.: ficou distante do dono)
-                boolean wantSprint = ownerSprint || ownerSpeed > 6.0 || distance > 35.0;
-                boolean wantRun = ownerRun || ownerSpeed > 4.2 || distance > 25.0;
-
-                // Se o NPC ainda não ganhou velocidade de verdade, evita "correndo parado"
-                if (npcSpeed < 1.2) {
-                    wantSprint = false;
-                    wantRun = false;
-                }
+    private static final int MOVE_IDLE = MOVE_ON_GROUND | MOVE_IDLE_FLAG | MOVE_HORIZONTAL_IDLE;
+    private static final int MOVE_WALKING = MOVE_ON_GROUND | MOVE_WALK_FLAG;
+    private static final int MOVE_RUNNING = MOVE_ON_GROUND | MOVE_RUN_FLAG;
+    private static final int MOVE_SPRINTING = MOVE_ON_GROUND | MOVE_SPRINT_FLAG;
+
+    private static int movementBits(MovementStates s) {
+        int b = 0;
+        if (s.onGround) b |= MOVE_ON_GROUND;
+        if (s.idle) b |= MOVE_IDLE_FLAG;
+        if (s.horizontalIdle) b |= MOVE_HORIZONTAL_IDLE;
+        if (s.walking) b |= MOVE_WALK_FLAG;
+        if (s.running) b |= MOVE_RUN_FLAG;
+        if (s.sprinting) b |= MOVE_SPRINT_FLAG;
+        return b;
+    }
+
+    private static void setMovementBits(MovementStates s, int bits) {
+        s.onGround = (bits & MOVE_ON_GROUND) != 0;
+        s.idle = (bits & MOVE_IDLE_FLAG) != 0;
+        s.horizontalIdle = (bits & MOVE_HORIZONTAL_IDLE) != 0;
+        s.walking = (bits & MOVE_WALK_FLAG) != 0;
+        s.running = (bits & MOVE_RUN_FLAG) != 0;
+        s.sprinting = (bits & MOVE_SPRINT_FLAG) != 0;
+    }
 
-                s.idle = false;
-                s.horizontalIdle = false;
+    /**
+     * Grava as flags de movimento só quando mudam (cada escrita vira sync de rede do componente).
+     *
+     * - Compara com as últimas flags gravadas no record; se baterem, ainda confere o componente
+     *   (a IA do engine também mexe nele) antes de pular — leitura de 6 booleanos, sem alocar
+     * - Quando grava: altera os MovementStates existentes no lugar (atual e "sent"); só cria na falta
+     * - {@code put}: reinsere o componente no store (caminho do DOWNED, que precisa refletir na hora)
+     */
+    private static void writeMovementStates(Store<EntityStore> store, Ref<EntityStore> npcRef, NpcRecord rec,
+                                            int bits, boolean put) {
+        try {
+            MovementStatesComponent ms = store.ensureAndGetComponent(npcRef, MovementStatesComponent.getComponentType());
+            MovementStates cur = ms.getMovementStates();
+            MovementStates sent = ms.getSentMovementStates();
+
+            if (rec != null && rec.appliedMoveBits == bits && rec.appliedMoveRef == npcRef
+                    && cur != null && movementBits(cur) == bits
+                    && sent != null && movementBits(sent) == bits) {
+                return;
+            }
+
+            if (cur == null) {
+                cur = new MovementStates();
+                ms.setMovementStates(cur);
+            }
+            setMovementBits(cur, bits);
 
-                s.walking = !wantRun && !wantSprint;
-                s.running = wantRun && !wantSprint;
-                s.sprinting = wantSprint;
+            // Em algumas builds, o engine usa "sent" para rede; manter junto ajuda o client a refletir rápido.
+            if (sent == null || sent == cur) {
+                ms.setSentMovementStates(new MovementStates(cur));
+            } else {
+                setMovementBits(sent, bits);
             }
 
-            msComp.setMovementStates(s);
-            // Em algumas builds, o engine usa "sent" para rede; manter junto ajuda.
-            msComp.setSentMovementStates(new MovementStates(s));
+            if (put) store.putComponent(npcRef, MovementStatesComponent.getComponentType(), ms);
+
+            if (rec != null) {
+                rec.appliedMoveBits = bits;
+                rec.appliedMoveRef = npcRef;
+            }
         } catch (Throwable ignored) {}
     }
 
@@ -3484,8 +4037,10 @@ private static void removeRefFromList(java.util.ArrayList<Object> list, Ref<Enti
         if (rec.refObj == null) return;
         if (rec.worldObj == null) return;
 
-        rec.downed = false;
+        rec.setDowned(false);
         rec.downedUntilMillis = 0L;
+        cancelTimer(rec.reviveTimer);
+        cancelTimer(rec.downedWatchTimer);
 
         // XP já foi penalizado no momento em que o NPC entrou em DOWNED (markDowned).
         // Aqui apenas restauramos HP/estado.
@@ -3522,6 +4077,11 @@ private static void removeRefFromList(java.util.ArrayList<Object> list, Ref<Enti
     // =========================================================
 
     private static Object getComponentStoreFromWorld(Object worldObj) {
+        if (worldObj instanceof World w) {
+            try {
+                return w.getEntityStore().getStore();
+            } catch (Throwable ignored) {}
+        }
         Object entityStore = invokeNoArg(worldObj, "getEntityStore", "entityStore");
         if (entityStore == null) return null;
         return invokeNoArg(entityStore, "getStore", "store");
@@ -3569,20 +4129,28 @@ private static void removeRefFromList(java.util.ArrayList<Object> list, Ref<Enti
     }
 
     private static Object invokeStoreGetComponent(Object store, Object ref, Object componentType) {
+        if (store == null) return null;
         try {
-            for (Method m : store.getClass().getMethods()) {
-                if (!m.getName().equals("getComponent")) continue;
-                if (m.getParameterCount() != 2) continue;
-                return m.invoke(store, ref, componentType);
-            }
+            ReflectionCache.Candidate[] cs = ReflectionCache.candidates(store.getClass(), "getComponent", 2);
+            if (cs.length == 0) return null;
+            return ReflectionCache.invoke2(cs[0].handle, store, ref, componentType);
         } catch (Throwable ignored) {}
         return null;
     }
 
     /**
-     * Helper compat: busca componente no Store via reflection (Store.getComponent(ref, componentType)).
+     * Helper compat: busca componente no Store (Store.getComponent(ref, componentType)).
+     * Caminho direto quando os tipos da API estão presentes; reflexão (cacheada) só como fallback.
      */
+    @SuppressWarnings({"unchecked", "rawtypes"})
     private static Object getComponentFromStore(Object store, Object ref, Object componentTypeObj) {
+        if (store instanceof Store s && ref instanceof Ref r && componentTypeObj instanceof ComponentType ct) {
+            try {
+                return s.getComponent(r, ct);
+            } catch (Throwable ignored) {
+                return null;
+            }
+        }
         return invokeStoreGetComponent(store, ref, componentTypeObj);
     }
 
@@ -3751,6 +4319,46 @@ private static void removeRefFromList(java.util.ArrayList<Object> list, Ref<Enti
         setMarkedTargetOnNpcEntity(npcEntity, "LockedTarget", ownerRef);
     }
 
+    /** Valor "desconhecido" do cache de marked targets (diferente de qualquer Ref e de null). */
+    private static final Object MARK_UNSET = new Object();
+
+    /**
+     * Regrava os marked targets mesmo sem mudança após este tempo
+     * (o role/IA do engine pode limpar o slot por conta própria).
+     */
+    private static final long MARK_REFRESH_MS = 5000L;
+
+    /**
+     * LockedTarget/CombatTarget do Amigo com supressão de escrita: só chama a reflexão quando o alvo
+     * desejado muda (ou a entidade mudou, ou venceu o refresh). Follow estável = zero escritas.
+     * locked null = não mexe no LockedTarget (mesma regra do setLockedTargetOnNpcEntity).
+     */
+    private static void markCompanionTargets(NpcRecord rec, Object npcEntityObj, Object locked, Object combat, long now) {
+        if (npcEntityObj == null) return;
+        if (rec.markedOnEntity != npcEntityObj || now - rec.markedAtMillis >= MARK_REFRESH_MS) {
+            rec.markedOnEntity = npcEntityObj;
+            rec.markedLocked = MARK_UNSET;
+            rec.markedCombat = MARK_UNSET;
+            rec.markedAtMillis = now;
+        }
+
+        if (locked != null && !refEq(locked, rec.markedLocked)) {
+            setLockedTargetOnNpcEntity(npcEntityObj, locked);
+            rec.markedLocked = locked;
+        }
+        if (!refEq(combat, rec.markedCombat)) {
+            setMarkedTargetOnNpcEntity(npcEntityObj, "CombatTarget", combat);
+            rec.markedCombat = combat;
+        }
+    }
+
+    /** Alguém escreveu os slots por fora do cache (ex.: DOWNED): a próxima chamada regrava. */
+    private static void forgetMarkedTargets(NpcRecord rec) {
+        rec.markedOnEntity = null;
+        rec.markedLocked = MARK_UNSET;
+        rec.markedCombat = MARK_UNSET;
+    }
+
 
     /**
      * Troca o State do Role para permitir seguir com distância diferente em combate.
@@ -4026,8 +4634,7 @@ recordCombatTag(ownerId, targetRefObj, store);
 
             Object npcEntityObj = getComponentFromStore(store, npcRefObj, NPCEntity.getComponentType());
             if (npcEntityObj != null) {
-                setLockedTargetOnNpcEntity(npcEntityObj, next);
-                setMarkedTargetOnNpcEntity(npcEntityObj, "CombatTarget", next);
+                markCompanionTargets(rec, npcEntityObj, next, next, now);
                 setFlockState(store, rec.refObj, "Run", "");
             }
         } catch (Throwable ignored) {
@@ -4046,47 +4653,10 @@ recordCombatTag(ownerId, targetRefObj, store);
 
             // 1) Tenta tocar swing/attack usando ItemPlayerAnimations (padrão do player).
             // Aqui o "animationId" é a CHAVE (ex.: "attack"), não o id thirdPerson.
-            String itemAnimsId = null;
-            ItemPlayerAnimations ipa = null;
-            try {
-                if (weaponId != null && !weaponId.isBlank()) {
-                    Item it = Item.getAssetMap().getAsset(weaponId);
-                    if (it != null) {
-                        boolean usePlayerAnims = false;
-                        try { usePlayerAnims = it.getUsePlayerAnimations(); } catch (Throwable ignored) {}
-                        try { itemAnimsId = it.getPlayerAnimationsId(); } catch (Throwable ignored) {}
-                        if ((itemAnimsId == null || itemAnimsId.isBlank()) && usePlayerAnims) {
-                            try { itemAnimsId = ItemPlayerAnimations.DEFAULT_ID; } catch (Throwable ignored) {}
-                        }
-                    }
-                }
-            } catch (Throwable ignored) {}
-
-            if (itemAnimsId == null || itemAnimsId.isBlank()) {
-                try { itemAnimsId = ItemPlayerAnimations.DEFAULT_ID; } catch (Throwable ignored) { itemAnimsId = null; }
-            }
-
-            try {
-                if (itemAnimsId != null && !itemAnimsId.isBlank()) {
-                    ipa = ItemPlayerAnimations.getAssetMap().getAsset(itemAnimsId);
-                }
-            } catch (Throwable ignored) {
-                ipa = null;
-            }
-
-            String key = null;
-            try {
-                if (ipa != null) {
-                    key = pickAttackKeyFromPlayerAnimations(ipa.getAnimations());
-                }
-            } catch (Throwable ignored) {
-                key = null;
-            }
-
-            if (key == null || key.isBlank()) {
-                // fallback seguro (chave comum)
-                key = "attack";
-            }
+            // Item/ItemPlayerAnimations/chave já resolvidos no warm-up (SwordWeaponTable).
+            SwordWeaponTable.Entry weapon = SwordWeaponTable.get(weaponId);
+            String itemAnimsId = weapon.animationsId;
+            String key = weapon.attackKey;
 
             boolean played = false;
             try {
@@ -4155,81 +4725,6 @@ recordCombatTag(ownerId, targetRefObj, store);
         }
     }
 
-    /** Resolve a chave de animação de ataque para um itemId (cache + heurística de keys). */
-    private static String resolveWeaponAttackAnimId(String weaponId, boolean moving) {
-        if (weaponId == null || weaponId.isBlank()) return null;
-        String cacheKey = weaponId + (moving ? "|m" : "|s");
-        if (WEAPON_ATTACK_ANIM_CACHE.containsKey(cacheKey)) {
-            String v = WEAPON_ATTACK_ANIM_CACHE.get(cacheKey);
-            return (v == null || v.isBlank()) ? null : v;
-        }
-
-        String foundKey = null;
-        try {
-            Item it = Item.getAssetMap().getAsset(weaponId);
-            String animsId = null;
-            boolean usePlayerAnims = false;
-            if (it != null) {
-                try { usePlayerAnims = it.getUsePlayerAnimations(); } catch (Throwable ignored) {}
-                try { animsId = it.getPlayerAnimationsId(); } catch (Throwable ignored) {}
-            }
-            if ((animsId == null || animsId.isBlank()) && usePlayerAnims) {
-                try { animsId = ItemPlayerAnimations.DEFAULT_ID; } catch (Throwable ignored) {}
-            }
-            if (animsId != null && !animsId.isBlank()) {
-                ItemPlayerAnimations ipa = ItemPlayerAnimations.getAssetMap().getAsset(animsId);
-                if (ipa != null) {
-                    foundKey = pickAttackKeyFromPlayerAnimations(ipa.getAnimations());
-                }
-            }
-        } catch (Throwable ignored) {
-        }
-
-        WEAPON_ATTACK_ANIM_CACHE.put(cacheKey, foundKey == null ? "" : foundKey);
-        return foundKey;
-    }
-
-    /**
-     * Heurística para achar a CHAVE de ataque dentro do mapa de ItemPlayerAnimations.
-     * Preferimos keys com 'attack'/'melee'/'swing' etc.
-     */
-    private static String pickAttackKeyFromPlayerAnimations(java.util.Map<String, ItemAnimation> map) {
-        try {
-            if (map == null || map.isEmpty()) return null;
-
-            String[] prefer = {
-                    "attack", "primary", "primary_attack", "melee", "melee_attack", "swing", "hit", "strike", "slash", "stab", "chop"
-            };
-
-            // 1) match exato (ignore-case)
-            for (String p : prefer) {
-                for (String k : map.keySet()) {
-                    if (k != null && k.equalsIgnoreCase(p)) {
-                        return k;
-                    }
-                }
-            }
-
-            // 2) match parcial (contains)
-            for (String k : map.keySet()) {
-                if (k == null) continue;
-                String lk = k.toLowerCase(Locale.ROOT);
-                if (lk.contains("attack") || lk.contains("melee") || lk.contains("swing") || lk.contains("hit") || lk.contains("strike")) {
-                    return k;
-                }
-            }
-
-            // 3) fallback: primeira key
-            for (String k : map.keySet()) {
-                if (k != null && !k.isBlank()) return k;
-            }
-
-            return null;
-        } catch (Throwable ignored) {
-            return null;
-        }
-    }
-
 private static Object buildNoopTriConsumer() {
         try {
             // com.hypixel.hytale.function.consumer.TriConsumer
@@ -4541,12 +5036,16 @@ private static Object buildNoopTriConsumer() {
     // Generic reflection helpers
     // =========================================================
 
+    // Resolução cacheada em ReflectionCache: getMethod só na 1a chamada por (classe, nome, assinatura).
+
     private static Object invokeNoArg(Object target, String... methodNames) {
         if (target == null) return null;
+        Class<?> c = target.getClass();
         for (String name : methodNames) {
+            java.lang.invoke.MethodHandle h = ReflectionCache.method(c, name);
+            if (h == null) continue;
             try {
-                Method m = target.getClass().getMethod(name);
-                return m.invoke(target);
+                return ReflectionCache.invoke0(h, target);
             } catch (Throwable ignored) {}
         }
         return null;
@@ -4554,9 +5053,10 @@ private static Object buildNoopTriConsumer() {
 
     private static Object invokeOneArg(Object target, String methodName, Class<?> argType, Object arg) {
         if (target == null) return null;
+        java.lang.invoke.MethodHandle h = ReflectionCache.method(target.getClass(), methodName, argType);
+        if (h == null) return null;
         try {
-            Method m = target.getClass().getMethod(methodName, argType);
-            return m.invoke(target, arg);
+            return ReflectionCache.invoke1(h, target, arg);
         } catch (Throwable ignored) {}
         return null;
     }
@@ -4593,22 +5093,17 @@ private static Object buildNoopTriConsumer() {
                                          Class<?> argType1, Class<?> argType2,
                                          Object arg1, Object arg2) {
         if (target == null) return false;
+        Class<?> c = target.getClass();
         try {
-            try {
-                java.lang.reflect.Method m = target.getClass().getMethod(methodName, argType1, argType2);
-                m.invoke(target, arg1, arg2);
+            java.lang.invoke.MethodHandle h = ReflectionCache.method(c, methodName, argType1, argType2);
+            if (h != null) {
+                ReflectionCache.invoke2(h, target, arg1, arg2);
+                return true;
+            }
+            for (ReflectionCache.Candidate cand : ReflectionCache.candidates(c, methodName, 2)) {
+                if (!cand.accepts(0, arg1, argType1) || !cand.accepts(1, arg2, argType2)) continue;
+                ReflectionCache.invoke2(cand.handle, target, arg1, arg2);
                 return true;
-            } catch (NoSuchMethodException ignored) {
-                for (java.lang.reflect.Method m : target.getClass().getMethods()) {
-                    if (!m.getName().equals(methodName)) continue;
-                    if (m.getParameterCount() != 2) continue;
-                    Class<?>[] p = m.getParameterTypes();
-                    boolean ok1 = arg1 == null || p[0].isAssignableFrom(arg1.getClass()) || p[0].isAssignableFrom(argType1);
-                    boolean ok2 = arg2 == null || p[1].isAssignableFrom(arg2.getClass()) || p[1].isAssignableFrom(argType2);
-                    if (!ok1 || !ok2) continue;
-                    m.invoke(target, arg1, arg2);
-                    return true;
-                }
             }
         } catch (Throwable ignored) {}
         return false;
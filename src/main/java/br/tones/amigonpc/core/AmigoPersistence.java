@@ -2,25 +2,37 @@ package br.tones.amigonpc.core;
 
 import com.hypixel.hytale.codec.ExtraInfo;
 import com.hypixel.hytale.server.core.Constants;
+import br.tones.amigonpc.core.swords.SwordProgression;
 import com.hypixel.hytale.server.core.inventory.container.SimpleItemContainer;
-import com.hypixel.hytale.server.core.util.BsonUtil;
 import org.bson.BsonDateTime;
 import org.bson.BsonDocument;
 import org.bson.BsonInt32;
 import org.bson.BsonDouble;
 import org.bson.BsonString;
+import org.bson.BsonValue;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Persistência simples do estado do AmigoNPC por player.
  *
- * - 1 arquivo por player (UUID.json)
+ * - 1 arquivo por player (UUID.json, ou UUID.bson com -Damigonpc.profileFormat=bson)
+ *   ou log em segmentos com -Damigonpc.profileStorage=log (ver ProfileStorage)
  * - Guarda apenas o que importa (por enquanto: mochila 45 slots + campos base)
  * - Salva dentro da pasta do universo (Constants.UNIVERSE_PATH)
+ * - Documento lido 1x por player e mantido em cache (load* não relê o arquivo)
+ * - Gravação assíncrona (write-behind): save* não espera disco; flushAll() no desligamento
  */
 public final class AmigoPersistence {
 
@@ -49,34 +61,439 @@ public final class AmigoPersistence {
     private static final String KEY_BASE_HP = "baseHp";
     private static final String KEY_BASE_DEF = "baseDef";
 
+    // Mochila (45 slots, via SimpleItemContainer.CODEC)
+    private static final String KEY_BACKPACK = "backpack";
+
+    // Cache de perfis: 1 leitura de disco por player (spawn lia o mesmo arquivo ~10x).
+    // Limitado (LRU) e esvaziado no logout via evict(UUID).
+    private static final int PROFILE_CACHE_MAX = 256;
+
+    // Write-behind: save* só altera o documento em memória; a gravação vai para a thread de IO
+    // depois deste debounce (várias alterações seguidas viram 1 escrita).
+    private static final long WRITE_DEBOUNCE_MS = 500L;
+    private static final long SHUTDOWN_FLUSH_TIMEOUT_MS = 10_000L;
+    // Slot do índice quente só volta a valer depois que um flush do armazenamento cobre a gravação
+    // (o log só faz force a cada ~1s; índice à frente do disco mentiria após uma queda).
+    private static final long HOT_INDEX_SYNC_MS = 1000L;
+    // Gravação que falhou: perfil continua dirty (fica no cache) e tenta de novo depois disto.
+    private static final long WRITE_RETRY_MS = 5_000L;
+
+    /** Documento do player em memória; todo acesso ao doc é feito com lock no próprio Profile. */
+    private static final class Profile {
+        final UUID ownerId;
+        final BsonDocument doc;
+        /** true: doc veio do disco (false = perfil novo, ainda sem arquivo). */
+        final boolean fromDisk;
+
+        // Estado do write-behind (alterado com lock no Profile)
+        volatile boolean dirty;
+        /** Incrementado a cada alteração: o flush só limpa dirty se nada mudou durante a escrita. */
+        long version;
+        boolean writeScheduled;
+        boolean evictWhenClean;
+
+        Profile(UUID ownerId, BsonDocument doc, boolean fromDisk) {
+            this.ownerId = ownerId;
+            this.doc = doc;
+            this.fromDisk = fromDisk;
+        }
+    }
+
+    private static final Map<UUID, Profile> PROFILES = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Profile> eldest) {
+            // Nunca descarta um perfil com alteração ainda não gravada
+            return size() > PROFILE_CACHE_MAX && !eldest.getValue().dirty;
+        }
+    };
+
+    // Players cujo perfil existe mas não pôde ser lido: nada é gravado por cima até o evict (logout).
+    // Sem isso, o documento vazio do cache sobrescreveria o arquivo no próximo save.
+    private static final Set<UUID> READ_FAILED = ConcurrentHashMap.newKeySet();
+    private static volatile String lastError;
+
+    private static ScheduledExecutorService io;
+    /**
+     * Slots do índice à espera do storage().flush(). Valor null = gravação em andamento
+     * (ninguém valida o slot do player enquanto isso). Acesso com lock no próprio mapa.
+     */
+    private static final Map<UUID, ProfileHotIndex.Entry> PENDING_HOT = new HashMap<>();
+    private static final AtomicBoolean HOT_SYNC_QUEUED = new AtomicBoolean();
+    /** Já há uma manutenção do armazenamento na fila de IO (no máximo 1). */
+    private static final AtomicBoolean MAINTENANCE_QUEUED = new AtomicBoolean();
+    /** Ligado pelo flushAll(): daí em diante toda gravação é síncrona e nenhum executor novo é criado. */
+    private static volatile boolean shuttingDown;
+
+    /** @return executor de IO, ou null durante o desligamento */
+    private static synchronized ScheduledExecutorService io() {
+        if (shuttingDown) return null;
+        if (io == null || io.isShutdown()) {
+            io = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "AmigoNPC-IO");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return io;
+    }
+
     private static Path baseDir() {
         // Mantém junto do save do universo (mesma raiz do player data)
         Path root = Constants.UNIVERSE_PATH;
         return root.resolve("amigonpc").resolve("players");
     }
 
+    /** Último perfil que não pôde ser lido/gravado, ou dano no armazenamento (null = sem erro). */
+    public static String getLastError() {
+        String e = lastError;
+        if (e != null) return e;
+        ProfileStorage st;
+        synchronized (AmigoPersistence.class) {
+            st = storage;
+        }
+        return st != null ? st.getLastError() : null;
+    }
+
     public static Path fileFor(UUID ownerId) {
         return baseDir().resolve(ownerId.toString() + ".json");
     }
 
-    public static SimpleItemContainer loadBackpack(UUID ownerId) {
-        if (ownerId == null) return new SimpleItemContainer(BACKPACK_CAPACITY);
+    // Formato em disco: "json" (padrão, v4) ou "bson" (binário compacto, ver ProfileBinary).
+    // Ex.: -Damigonpc.profileFormat=bson
+    private static final boolean BINARY_FORMAT =
+            "bson".equalsIgnoreCase(System.getProperty("amigonpc.profileFormat", "json").trim());
 
-        Path file = fileFor(ownerId);
-        if (!Files.exists(file)) {
-            return new SimpleItemContainer(BACKPACK_CAPACITY);
+    // Layout: "files" (padrão, 1 arquivo por player) ou "log" (segmentos append-only, ver SegmentLogProfileStorage).
+    // Ex.: -Damigonpc.profileStorage=log
+    private static final boolean LOG_STORAGE =
+            "log".equalsIgnoreCase(System.getProperty("amigonpc.profileStorage", "files").trim());
+
+    private static ProfileStorage storage;
+
+    private static synchronized ProfileStorage storage() {
+        if (storage == null) {
+            FileProfileStorage files = new FileProfileStorage(baseDir(), BINARY_FORMAT);
+            storage = LOG_STORAGE
+                    ? new SegmentLogProfileStorage(baseDir().resolveSibling("profiles"), files)
+                    : files;
         }
+        return storage;
+    }
 
+    private static ProfileHotIndex hotIndex;
+
+    private static synchronized ProfileHotIndex hotIndex() {
+        if (hotIndex == null) {
+            hotIndex = new ProfileHotIndex(baseDir().resolveSibling("profiles.idx"));
+        }
+        return hotIndex;
+    }
+
+    /** @return documento ou null se o player ainda não tem perfil; falha de leitura = IOException */
+    private static BsonDocument readDocument(UUID ownerId) throws IOException {
         try {
-            BsonDocument doc = BsonUtil.readDocumentNow(file);
-            if (doc == null) return new SimpleItemContainer(BACKPACK_CAPACITY);
+            return storage().read(ownerId);
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException(t);
+        }
+    }
 
-            // Compat: se não tiver, cria novo
-            if (!doc.containsKey("backpack")) {
-                return new SimpleItemContainer(BACKPACK_CAPACITY);
+    private static void writeDocument(UUID ownerId, BsonDocument doc) throws IOException {
+        storage().write(ownerId, doc);
+    }
+
+    // =========================================================
+    // Cache de perfil
+    // =========================================================
+
+    /**
+     * Perfil em cache (lê do disco na 1a vez).
+     * @return null se o perfil existe mas a leitura falhou (nada é cacheado; save* vira no-op até o evict)
+     */
+    private static Profile profile(UUID ownerId) {
+        synchronized (PROFILES) {
+            Profile p = PROFILES.get(ownerId);
+            if (p != null) return p;
+        }
+        if (READ_FAILED.contains(ownerId)) return null;
+
+        // Leitura fora do lock do cache (não trava outros players durante IO)
+        BsonDocument doc;
+        try {
+            doc = readDocument(ownerId);
+        } catch (IOException e) {
+            READ_FAILED.add(ownerId);
+            lastError = ownerId + ": " + e.getMessage();
+            return null;
+        }
+        Profile loaded = new Profile(ownerId, doc != null ? doc : new BsonDocument(), doc != null);
+
+        synchronized (PROFILES) {
+            Profile p = PROFILES.get(ownerId);
+            if (p != null) return p;
+            PROFILES.put(ownerId, loaded);
+            return loaded;
+        }
+    }
+
+    private static BsonValue field(UUID ownerId, String key) {
+        Profile p = profile(ownerId);
+        if (p == null) return null;
+        synchronized (p) {
+            return p.doc.get(key);
+        }
+    }
+
+    /**
+     * Marca o perfil como alterado e agenda a gravação (debounce) na thread de IO.
+     * Chamar com lock no Profile. Não bloqueia: quem chama (thread do mundo) nunca espera disco.
+     * @return true se não há thread de IO (desligamento): quem chamou roda flushProfile(p) DEPOIS de soltar
+     *         o lock do Profile (flushProfile pode pegar o lock de PROFILES, que o evict pega antes do Profile)
+     */
+    private static boolean writeProfile(UUID ownerId, Profile p) {
+        p.dirty = true;
+        p.version++;
+        if (p.writeScheduled) return false;
+
+        ScheduledExecutorService ex = io();
+        if (ex == null) return true;
+        try {
+            ex.schedule(() -> flushProfile(p), WRITE_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+        } catch (Throwable rejected) {
+            // Executor desligado entre o io() e o schedule
+            return true;
+        }
+        p.writeScheduled = true;
+        return false;
+    }
+
+    private static void submitIo(Runnable task, long delayMs) {
+        ScheduledExecutorService ex = io();
+        if (ex == null) {
+            // Desligando: grava na hora, na thread de quem chamou
+            task.run();
+            return;
+        }
+        try {
+            if (delayMs <= 0L) ex.execute(task);
+            else ex.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        } catch (Throwable rejected) {
+            // Executor indisponível (ex.: durante o desligamento): grava na hora
+            task.run();
+        }
+    }
+
+    /**
+     * Grava o estado atual do perfil (snapshot tirado sob lock; IO fora do lock).
+     * dirty só é limpo depois da escrita bem-sucedida; se falhar, o perfil fica no cache e reagenda.
+     */
+    private static void flushProfile(Profile p) {
+        BsonDocument snapshot;
+        long version;
+        synchronized (p) {
+            p.writeScheduled = false;
+            if (!p.dirty) return;
+
+            p.doc.put("formatVersion", new BsonInt32(FORMAT_VERSION));
+            p.doc.put("savedAt", new BsonDateTime(System.currentTimeMillis()));
+            snapshot = p.doc.clone();
+            version = p.version;
+        }
+
+        // Slot do índice inválido durante a escrita e até o flush do armazenamento: se ela falhar
+        // (ou o processo cair antes do force), o spawn lê o documento em vez de valores que não estão no disco
+        synchronized (PENDING_HOT) {
+            PENDING_HOT.put(p.ownerId, null);
+        }
+        try {
+            hotIndex().invalidate(p.ownerId);
+        } catch (Throwable ignored) {}
+
+        boolean written;
+        try {
+            writeDocument(p.ownerId, snapshot);
+            written = true;
+        } catch (Throwable t) {
+            // createDirectories / disco cheio / log indisponível
+            written = false;
+            lastError = p.ownerId + ": gravação falhou: " + t.getMessage();
+        }
+        ProfileHotIndex.Entry hot = null;
+        if (written) {
+            try { hot = hotEntry(snapshot); } catch (Throwable ignored) {}
+        }
+        synchronized (PENDING_HOT) {
+            if (hot != null) PENDING_HOT.put(p.ownerId, hot);
+            else PENDING_HOT.remove(p.ownerId); // falhou: slot fica inválido até a próxima gravação
+        }
+        if (written) {
+            scheduleHotIndexSync();
+            scheduleMaintenance();
+        }
+
+        boolean evictNow = false;
+        boolean retry = false;
+        synchronized (p) {
+            if (written) {
+                // Alteração feita durante a escrita já agendou outro flush (writeScheduled foi limpo acima)
+                if (p.version == version) p.dirty = false;
+                evictNow = p.evictWhenClean && !p.dirty;
+            } else if (!p.writeScheduled && !shuttingDown) {
+                // No desligamento não há retry (submitIo seria síncrono): fica dirty, sem evict
+                p.writeScheduled = true;
+                retry = true;
+            }
+        }
+        if (retry) {
+            submitIo(() -> flushProfile(p), WRITE_RETRY_MS);
+            return;
+        }
+        if (evictNow) {
+            synchronized (PROFILES) {
+                PROFILES.remove(p.ownerId, p);
+            }
+        }
+    }
+
+    private static void scheduleHotIndexSync() {
+        // No desligamento o flushAll() sincroniza no fim
+        if (shuttingDown || !HOT_SYNC_QUEUED.compareAndSet(false, true)) return;
+        submitIo(() -> {
+            HOT_SYNC_QUEUED.set(false);
+            syncHotIndex();
+        }, HOT_INDEX_SYNC_MS);
+    }
+
+    /** storage().flush() e então valida os slots das gravações que ele cobriu. */
+    private static void syncHotIndex() {
+        Map<UUID, ProfileHotIndex.Entry> ready = new HashMap<>();
+        synchronized (PENDING_HOT) {
+            for (Map.Entry<UUID, ProfileHotIndex.Entry> e : PENDING_HOT.entrySet()) {
+                if (e.getValue() != null) ready.put(e.getKey(), e.getValue());
+            }
+        }
+        if (ready.isEmpty()) return;
+
+        try {
+            storage().flush();
+        } catch (Throwable t) {
+            scheduleHotIndexSync();
+            return;
+        }
+
+        synchronized (PENDING_HOT) {
+            for (Map.Entry<UUID, ProfileHotIndex.Entry> e : ready.entrySet()) {
+                // Mesma entrada (identidade): ninguém regravou o player depois do flush começar
+                if (PENDING_HOT.get(e.getKey()) != e.getValue()) continue;
+                PENDING_HOT.remove(e.getKey());
+                try {
+                    hotIndex().put(e.getKey(), e.getValue());
+                } catch (Throwable ignored) {}
+            }
+        }
+    }
+
+    /** Compactação etc. do armazenamento: tarefa própria na thread de IO, nunca dentro de uma gravação. */
+    private static void scheduleMaintenance() {
+        if (shuttingDown || !MAINTENANCE_QUEUED.compareAndSet(false, true)) return;
+        submitIo(() -> {
+            MAINTENANCE_QUEUED.set(false);
+            if (shuttingDown) return;
+            try {
+                storage().maintain();
+            } catch (Throwable ignored) {}
+        }, 0L);
+    }
+
+    /** Antecipa a gravação pendente do player (ex.: logout). Não bloqueia. */
+    public static void flush(UUID ownerId) {
+        if (ownerId == null) return;
+        Profile p;
+        synchronized (PROFILES) {
+            p = PROFILES.get(ownerId);
+        }
+        if (p == null) return;
+        synchronized (p) {
+            if (!p.dirty) return;
+        }
+        submitIo(() -> flushProfile(p), 0L);
+    }
+
+    /**
+     * Grava tudo que estiver pendente e espera terminar (desligamento do plugin).
+     * Depois disso não há mais thread de IO: um save* tardio grava de forma síncrona na thread de quem chama.
+     */
+    public static void flushAll() {
+        synchronized (AmigoPersistence.class) {
+            shuttingDown = true;
+        }
+
+        java.util.ArrayList<Profile> pending = new java.util.ArrayList<>();
+        synchronized (PROFILES) {
+            for (Profile p : PROFILES.values()) {
+                if (p.dirty) pending.add(p);
             }
+        }
 
-            var val = doc.get("backpack");
+        ScheduledExecutorService ex;
+        synchronized (AmigoPersistence.class) {
+            ex = io;
+            io = null;
+        }
+        if (ex == null) {
+            for (Profile p : pending) flushProfile(p);
+        } else {
+            try {
+                for (Profile p : pending) ex.execute(() -> flushProfile(p));
+            } catch (Throwable rejected) {
+                for (Profile p : pending) flushProfile(p);
+            }
+            ex.shutdown();
+            try {
+                ex.awaitTermination(SHUTDOWN_FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try {
+            storage().flush();
+        } catch (Throwable ignored) {}
+        syncHotIndex();
+        hotIndex().force();
+    }
+
+    /**
+     * Remove o perfil do cache (logout). Se ainda houver gravação pendente,
+     * antecipa a gravação e só remove depois que ela terminar (evita reler um arquivo velho).
+     */
+    public static void evict(UUID ownerId) {
+        if (ownerId == null) return;
+        // Logout: a próxima sessão tenta ler o perfil de novo
+        READ_FAILED.remove(ownerId);
+        Profile p;
+        synchronized (PROFILES) {
+            p = PROFILES.get(ownerId);
+            if (p == null) return;
+            synchronized (p) {
+                if (!p.dirty) {
+                    PROFILES.remove(ownerId);
+                    return;
+                }
+                p.evictWhenClean = true;
+            }
+        }
+        submitIo(() -> flushProfile(p), 0L);
+    }
+
+    public static SimpleItemContainer loadBackpack(UUID ownerId) {
+        if (ownerId == null) return new SimpleItemContainer(BACKPACK_CAPACITY);
+
+        try {
+            // Compat: se não tiver, cria novo
+            var val = field(ownerId, KEY_BACKPACK);
             if (val == null) return new SimpleItemContainer(BACKPACK_CAPACITY);
 
             // Decode via CODEC
@@ -90,13 +507,8 @@ public final class AmigoPersistence {
 
     public static String loadModelId(UUID ownerId) {
         if (ownerId == null) return null;
-        Path file = fileFor(ownerId);
-        if (!Files.exists(file)) return null;
         try {
-            BsonDocument doc = BsonUtil.readDocumentNow(file);
-            if (doc == null) return null;
-            if (!doc.containsKey(KEY_MODEL_ID)) return null;
-            var v = doc.get(KEY_MODEL_ID);
+            var v = field(ownerId, KEY_MODEL_ID);
             return (v != null && v.isString()) ? v.asString().getValue() : null;
         } catch (Throwable ignored) {
             return null;
@@ -105,17 +517,8 @@ public final class AmigoPersistence {
 
     public static double loadModelScale(UUID ownerId) {
         if (ownerId == null) return 1.0;
-        Path file = fileFor(ownerId);
-        if (!Files.exists(file)) return 1.0;
         try {
-            BsonDocument doc = BsonUtil.readDocumentNow(file);
-            if (doc == null) return 1.0;
-            if (!doc.containsKey(KEY_MODEL_SCALE)) return 1.0;
-            var v = doc.get(KEY_MODEL_SCALE);
-            if (v == null) return 1.0;
-            if (v.isDouble()) return v.asDouble().getValue();
-            if (v.isInt32()) return v.asInt32().getValue();
-            return 1.0;
+            return modelScaleValue(field(ownerId, KEY_MODEL_SCALE));
         } catch (Throwable ignored) {
             return 1.0;
         }
@@ -123,15 +526,11 @@ public final class AmigoPersistence {
 
     public static void saveModel(UUID ownerId, String modelId, double scale) {
         if (ownerId == null) return;
-        try {
-            Path dir = baseDir();
-            Files.createDirectories(dir);
-
-            BsonDocument doc = BsonUtil.readDocumentNow(fileFor(ownerId));
-            if (doc == null) doc = new BsonDocument();
-
-            doc.put("formatVersion", new BsonInt32(FORMAT_VERSION));
-            doc.put("savedAt", new BsonDateTime(System.currentTimeMillis()));
+        Profile p = profile(ownerId);
+        if (p == null) return;
+        boolean flushNow;
+        synchronized (p) {
+            BsonDocument doc = p.doc;
 
             if (modelId == null || modelId.isBlank()) {
                 doc.remove(KEY_MODEL_ID);
@@ -141,21 +540,15 @@ public final class AmigoPersistence {
                 doc.put(KEY_MODEL_SCALE, new BsonDouble(scale));
             }
 
-            BsonUtil.writeDocument(fileFor(ownerId), doc, true).join();
-        } catch (IOException ignored) {
-        } catch (Throwable ignored) {
+            flushNow = writeProfile(ownerId, p);
         }
+        if (flushNow) flushProfile(p);
     }
 
     public static String loadNpcType(UUID ownerId) {
         if (ownerId == null) return null;
-        Path file = fileFor(ownerId);
-        if (!Files.exists(file)) return null;
         try {
-            BsonDocument doc = BsonUtil.readDocumentNow(file);
-            if (doc == null) return null;
-            if (!doc.containsKey(KEY_NPC_TYPE)) return null;
-            var v = doc.get(KEY_NPC_TYPE);
+            var v = field(ownerId, KEY_NPC_TYPE);
             return (v != null && v.isString()) ? v.asString().getValue() : null;
         } catch (Throwable ignored) {
             return null;
@@ -164,15 +557,11 @@ public final class AmigoPersistence {
 
     public static void saveNpcType(UUID ownerId, String npcType) {
         if (ownerId == null) return;
-        try {
-            Path dir = baseDir();
-            Files.createDirectories(dir);
-
-            BsonDocument doc = BsonUtil.readDocumentNow(fileFor(ownerId));
-            if (doc == null) doc = new BsonDocument();
-
-            doc.put("formatVersion", new BsonInt32(FORMAT_VERSION));
-            doc.put("savedAt", new BsonDateTime(System.currentTimeMillis()));
+        Profile p = profile(ownerId);
+        if (p == null) return;
+        boolean flushNow;
+        synchronized (p) {
+            BsonDocument doc = p.doc;
 
             if (npcType == null || npcType.isBlank()) {
                 doc.remove(KEY_NPC_TYPE);
@@ -180,28 +569,16 @@ public final class AmigoPersistence {
                 doc.put(KEY_NPC_TYPE, new BsonString(npcType));
             }
 
-            BsonUtil.writeDocument(fileFor(ownerId), doc, true).join();
-        } catch (IOException ignored) {
-        } catch (Throwable ignored) {
+            flushNow = writeProfile(ownerId, p);
         }
+        if (flushNow) flushProfile(p);
     }
 
 
     public static int loadSwordLevel(UUID ownerId) {
         if (ownerId == null) return 1;
-        Path file = fileFor(ownerId);
-        if (!Files.exists(file)) return 1;
         try {
-            BsonDocument doc = BsonUtil.readDocumentNow(file);
-            if (doc == null) return 1;
-            if (!doc.containsKey(KEY_SWORD_LEVEL)) return 1;
-            var v = doc.get(KEY_SWORD_LEVEL);
-            int lvl = 1;
-            if (v != null) {
-                if (v.isInt32()) lvl = v.asInt32().getValue();
-                else if (v.isDouble()) lvl = (int) v.asDouble().getValue();
-            }
-            return Math.max(1, lvl);
+            return swordLevelValue(field(ownerId, KEY_SWORD_LEVEL));
         } catch (Throwable ignored) {
             return 1;
         }
@@ -209,13 +586,8 @@ public final class AmigoPersistence {
 
     public static String loadEquippedWeaponId(UUID ownerId) {
         if (ownerId == null) return null;
-        Path file = fileFor(ownerId);
-        if (!Files.exists(file)) return null;
         try {
-            BsonDocument doc = BsonUtil.readDocumentNow(file);
-            if (doc == null) return null;
-            if (!doc.containsKey(KEY_EQUIPPED_WEAPON_ID)) return null;
-            var v = doc.get(KEY_EQUIPPED_WEAPON_ID);
+            var v = field(ownerId, KEY_EQUIPPED_WEAPON_ID);
             return (v != null && v.isString()) ? v.asString().getValue() : null;
         } catch (Throwable ignored) {
             return null;
@@ -224,52 +596,21 @@ public final class AmigoPersistence {
 
     public static void saveSwordState(UUID ownerId, int swordLevel, String equippedWeaponId) {
         if (ownerId == null) return;
-        try {
-            Path dir = baseDir();
-            Files.createDirectories(dir);
-
-            BsonDocument doc = BsonUtil.readDocumentNow(fileFor(ownerId));
-            if (doc == null) doc = new BsonDocument();
-
-            doc.put("formatVersion", new BsonInt32(FORMAT_VERSION));
-            doc.put("savedAt", new BsonDateTime(System.currentTimeMillis()));
-
-            doc.put(KEY_SWORD_LEVEL, new BsonInt32(Math.max(1, swordLevel)));
-            if (equippedWeaponId == null || equippedWeaponId.isBlank()) {
-                doc.remove(KEY_EQUIPPED_WEAPON_ID);
-            } else {
-                doc.put(KEY_EQUIPPED_WEAPON_ID, new BsonString(equippedWeaponId));
-            }
-
-            BsonUtil.writeDocument(fileFor(ownerId), doc, true).join();
-        } catch (IOException ignored) {
-        } catch (Throwable ignored) {
+        Profile p = profile(ownerId);
+        if (p == null) return;
+        boolean flushNow;
+        synchronized (p) {
+            putSwordState(p.doc, swordLevel, equippedWeaponId);
+            flushNow = writeProfile(ownerId, p);
         }
+        if (flushNow) flushProfile(p);
     }
 
 
     public static boolean loadDefenderEnabled(UUID ownerId) {
         if (ownerId == null) return false;
-        Path file = fileFor(ownerId);
-        if (!Files.exists(file)) return false;
         try {
-            BsonDocument doc = BsonUtil.readDocumentNow(file);
-            if (doc == null) return false;
-            if (!doc.containsKey(KEY_DEFENDER_ENABLED)) return false;
-            var v = doc.get(KEY_DEFENDER_ENABLED);
-            if (v == null) return false;
-
-            // aceitamos algumas formas por compatibilidade
-            if (v.isBoolean()) return v.asBoolean().getValue();
-            if (v.isInt32()) return v.asInt32().getValue() != 0;
-            if (v.isDouble()) return v.asDouble().getValue() != 0.0;
-            if (v.isString()) {
-                String s = v.asString().getValue();
-                if (s == null) return false;
-                s = s.trim().toLowerCase();
-                return s.equals("on") || s.equals("true") || s.equals("1") || s.equals("sim") || s.equals("yes");
-            }
-            return false;
+            return flagValue(field(ownerId, KEY_DEFENDER_ENABLED), false);
         } catch (Throwable ignored) {
             return false;
         }
@@ -277,45 +618,24 @@ public final class AmigoPersistence {
 
     public static void saveDefenderEnabled(UUID ownerId, boolean enabled) {
         if (ownerId == null) return;
-        try {
-            Path dir = baseDir();
-            Files.createDirectories(dir);
-
-            BsonDocument doc = BsonUtil.readDocumentNow(fileFor(ownerId));
-            if (doc == null) doc = new BsonDocument();
-
-            doc.put("formatVersion", new BsonInt32(FORMAT_VERSION));
-            doc.put("savedAt", new BsonDateTime(System.currentTimeMillis()));
+        Profile p = profile(ownerId);
+        if (p == null) return;
+        boolean flushNow;
+        synchronized (p) {
+            BsonDocument doc = p.doc;
 
             // salva como int para não depender de BsonBoolean na build
             doc.put(KEY_DEFENDER_ENABLED, new BsonInt32(enabled ? 1 : 0));
 
-            BsonUtil.writeDocument(fileFor(ownerId), doc, true).join();
-        } catch (IOException ignored) {
-        } catch (Throwable ignored) {
+            flushNow = writeProfile(ownerId, p);
         }
+        if (flushNow) flushProfile(p);
     }
 
     public static boolean loadAutoLootEnabled(UUID ownerId) {
         if (ownerId == null) return true;
-        Path file = fileFor(ownerId);
-        if (!Files.exists(file)) return true;
         try {
-            BsonDocument doc = BsonUtil.readDocumentNow(file);
-            if (doc == null) return true;
-            if (!doc.containsKey(KEY_AUTOLOOT_ENABLED)) return true;
-            var v = doc.get(KEY_AUTOLOOT_ENABLED);
-            if (v == null) return true;
-            if (v.isBoolean()) return v.asBoolean().getValue();
-            if (v.isInt32()) return v.asInt32().getValue() != 0;
-            if (v.isDouble()) return v.asDouble().getValue() != 0.0;
-            if (v.isString()) {
-                String s = v.asString().getValue();
-                if (s == null) return true;
-                s = s.trim().toLowerCase();
-                return s.equals("on") || s.equals("true") || s.equals("1") || s.equals("sim") || s.equals("yes");
-            }
-            return true;
+            return flagValue(field(ownerId, KEY_AUTOLOOT_ENABLED), true);
         } catch (Throwable ignored) {
             return true;
         }
@@ -323,21 +643,16 @@ public final class AmigoPersistence {
 
     public static void saveAutoLootEnabled(UUID ownerId, boolean enabled) {
         if (ownerId == null) return;
-        try {
-            Path dir = baseDir();
-            Files.createDirectories(dir);
-
-            BsonDocument doc = BsonUtil.readDocumentNow(fileFor(ownerId));
-            if (doc == null) doc = new BsonDocument();
-
-            doc.put("formatVersion", new BsonInt32(FORMAT_VERSION));
-            doc.put("savedAt", new BsonDateTime(System.currentTimeMillis()));
+        Profile p = profile(ownerId);
+        if (p == null) return;
+        boolean flushNow;
+        synchronized (p) {
+            BsonDocument doc = p.doc;
 
             doc.put(KEY_AUTOLOOT_ENABLED, new BsonInt32(enabled ? 1 : 0));
-            BsonUtil.writeDocument(fileFor(ownerId), doc, true).join();
-        } catch (IOException ignored) {
-        } catch (Throwable ignored) {
+            flushNow = writeProfile(ownerId, p);
         }
+        if (flushNow) flushProfile(p);
     }
 
     // =========================================================
@@ -346,21 +661,8 @@ public final class AmigoPersistence {
 
     public static long loadTotalXp(UUID ownerId) {
         if (ownerId == null) return 0L;
-        Path file = fileFor(ownerId);
-        if (!Files.exists(file)) return 0L;
         try {
-            BsonDocument doc = BsonUtil.readDocumentNow(file);
-            if (doc == null) return 0L;
-            if (!doc.containsKey(KEY_TOTAL_XP)) return 0L;
-            var v = doc.get(KEY_TOTAL_XP);
-            if (v == null) return 0L;
-            if (v.isInt64()) return v.asInt64().getValue();
-            if (v.isInt32()) return v.asInt32().getValue();
-            if (v.isDouble()) return (long) v.asDouble().getValue();
-            if (v.isString()) {
-                try { return Long.parseLong(v.asString().getValue()); } catch (Throwable ignored) {}
-            }
-            return 0L;
+            return longValue(field(ownerId, KEY_TOTAL_XP), 0L);
         } catch (Throwable ignored) {
             return 0L;
         }
@@ -368,21 +670,8 @@ public final class AmigoPersistence {
 
     public static long loadBaseHp(UUID ownerId) {
         if (ownerId == null) return -1L;
-        Path file = fileFor(ownerId);
-        if (!Files.exists(file)) return -1L;
         try {
-            BsonDocument doc = BsonUtil.readDocumentNow(file);
-            if (doc == null) return -1L;
-            if (!doc.containsKey(KEY_BASE_HP)) return -1L;
-            var v = doc.get(KEY_BASE_HP);
-            if (v == null) return -1L;
-            if (v.isInt64()) return v.asInt64().getValue();
-            if (v.isInt32()) return v.asInt32().getValue();
-            if (v.isDouble()) return (long) v.asDouble().getValue();
-            if (v.isString()) {
-                try { return Long.parseLong(v.asString().getValue()); } catch (Throwable ignored) {}
-            }
-            return -1L;
+            return longValue(field(ownerId, KEY_BASE_HP), -1L);
         } catch (Throwable ignored) {
             return -1L;
         }
@@ -390,21 +679,8 @@ public final class AmigoPersistence {
 
     public static long loadBaseDef(UUID ownerId) {
         if (ownerId == null) return -1L;
-        Path file = fileFor(ownerId);
-        if (!Files.exists(file)) return -1L;
         try {
-            BsonDocument doc = BsonUtil.readDocumentNow(file);
-            if (doc == null) return -1L;
-            if (!doc.containsKey(KEY_BASE_DEF)) return -1L;
-            var v = doc.get(KEY_BASE_DEF);
-            if (v == null) return -1L;
-            if (v.isInt64()) return v.asInt64().getValue();
-            if (v.isInt32()) return v.asInt32().getValue();
-            if (v.isDouble()) return (long) v.asDouble().getValue();
-            if (v.isString()) {
-                try { return Long.parseLong(v.asString().getValue()); } catch (Throwable ignored) {}
-            }
-            return -1L;
+            return longValue(field(ownerId, KEY_BASE_DEF), -1L);
         } catch (Throwable ignored) {
             return -1L;
         }
@@ -413,42 +689,17 @@ public final class AmigoPersistence {
     /** Salva totalXp e/ou baseHp/baseDef (qualquer valor < 0 é ignorado). */
     public static void saveNpcProgress(UUID ownerId, long totalXp, long baseHp, long baseDef) {
         if (ownerId == null) return;
-        try {
-            Path dir = baseDir();
-            Files.createDirectories(dir);
-
-            BsonDocument doc = BsonUtil.readDocumentNow(fileFor(ownerId));
-            if (doc == null) doc = new BsonDocument();
-
-            doc.put("formatVersion", new BsonInt32(FORMAT_VERSION));
-            doc.put("savedAt", new BsonDateTime(System.currentTimeMillis()));
-
-            if (totalXp >= 0) {
-                try {
-                    doc.put(KEY_TOTAL_XP, new org.bson.BsonInt64(totalXp));
-                } catch (Throwable ignored) {
-                    doc.put(KEY_TOTAL_XP, new BsonDouble((double) totalXp));
-                }
-            }
-            if (baseHp >= 0) {
-                try {
-                    doc.put(KEY_BASE_HP, new org.bson.BsonInt64(baseHp));
-                } catch (Throwable ignored) {
-                    doc.put(KEY_BASE_HP, new BsonDouble((double) baseHp));
-                }
-            }
-            if (baseDef >= 0) {
-                try {
-                    doc.put(KEY_BASE_DEF, new org.bson.BsonInt64(baseDef));
-                } catch (Throwable ignored) {
-                    doc.put(KEY_BASE_DEF, new BsonDouble((double) baseDef));
-                }
-            }
-
-            BsonUtil.writeDocument(fileFor(ownerId), doc, true).join();
-        } catch (IOException ignored) {
-        } catch (Throwable ignored) {
+        Profile p = profile(ownerId);
+        if (p == null) return;
+        boolean flushNow;
+        synchronized (p) {
+            if (totalXp >= 0) putLong(p.doc, KEY_TOTAL_XP, totalXp);
+            if (baseHp >= 0) putLong(p.doc, KEY_BASE_HP, baseHp);
+            if (baseDef >= 0) putLong(p.doc, KEY_BASE_DEF, baseDef);
+
+            flushNow = writeProfile(ownerId, p);
         }
+        if (flushNow) flushProfile(p);
     }
 
     public static void saveTotalXp(UUID ownerId, long totalXp) {
@@ -471,27 +722,237 @@ public final class AmigoPersistence {
     public static void saveBackpack(UUID ownerId, SimpleItemContainer backpack) {
         if (ownerId == null || backpack == null) return;
 
-        try {
-            Path dir = baseDir();
-            Files.createDirectories(dir);
+        Profile p = profile(ownerId);
+        if (p == null) return;
+        boolean flushNow;
+        synchronized (p) {
+            // ✅ merge: não apagar outros campos (ex.: aparência) — o documento em cache já tem tudo
+            if (!putBackpack(p.doc, backpack)) return;
+            flushNow = writeProfile(ownerId, p);
+        }
+        if (flushNow) flushProfile(p);
+    }
+
+    // =========================================================
+    // Campos quentes (spawn/login)
+    // =========================================================
+
+    /** Tudo que o spawn lê do perfil, exceto a mochila (carregada sob demanda). */
+    public static final class HotProfile {
+        public final long totalXp;
+        public final long baseHp;
+        public final long baseDef;
+        public final int swordLevel;
+        public final String equippedWeaponId;
+        public final boolean defenderEnabled;
+        public final boolean autoLootEnabled;
+        public final String modelId;
+        public final double modelScale;
+
+        /** Valores de um perfil vazio (player novo ou perfil ilegível): modelo padrão, espada 1, autoloot ligado. */
+        public static final HotProfile DEFAULTS =
+                new HotProfile(0L, -1L, -1L, 1, null, false, true, null, 1.0);
+
+        HotProfile(long totalXp, long baseHp, long baseDef, int swordLevel, String equippedWeaponId,
+                   boolean defenderEnabled, boolean autoLootEnabled, String modelId, double modelScale) {
+            this.totalXp = totalXp;
+            this.baseHp = baseHp;
+            this.baseDef = baseDef;
+            this.swordLevel = swordLevel;
+            this.equippedWeaponId = equippedWeaponId;
+            this.defenderEnabled = defenderEnabled;
+            this.autoLootEnabled = autoLootEnabled;
+            this.modelId = modelId;
+            this.modelScale = modelScale;
+        }
+    }
+
+    /**
+     * Campos do spawn. Perfil fora do cache: vem do índice mapeado (ProfileHotIndex), sem ler o documento.
+     * O documento só é lido se o índice não tiver o player ou se houver aparência / arma fora do padrão.
+     */
+    public static HotProfile loadHot(UUID ownerId) {
+        if (ownerId == null) return null;
+
+        Profile cached;
+        synchronized (PROFILES) {
+            cached = PROFILES.get(ownerId);
+        }
+        if (cached == null) {
+            ProfileHotIndex.Entry e = hotIndex().get(ownerId);
+            if (e != null && !e.has(ProfileHotIndex.FLAG_HAS_MODEL) && !e.has(ProfileHotIndex.FLAG_CUSTOM_WEAPON)) {
+                String weapon = e.has(ProfileHotIndex.FLAG_NO_WEAPON)
+                        ? null
+                        : SwordProgression.weaponIdForLevel(e.swordLevel);
+                return new HotProfile(e.totalXp, e.baseHp, e.baseDef, e.swordLevel, weapon,
+                        e.has(ProfileHotIndex.FLAG_DEFENDER), e.has(ProfileHotIndex.FLAG_AUTOLOOT),
+                        null, 1.0);
+            }
+        }
+
+        Profile p = profile(ownerId);
+        if (p == null) return null; // perfil ilegível: quem chama usa HotProfile.DEFAULTS
+        synchronized (p) {
+            BsonDocument doc = p.doc;
+            // Semeia o índice só com documento lido do disco e sem alteração pendente
+            if (p.fromDisk && !p.dirty) {
+                synchronized (PENDING_HOT) {
+                    // Gravação ainda sem flush: o que foi lido pode nem estar no disco de verdade
+                    if (!PENDING_HOT.containsKey(ownerId)) hotIndex().put(ownerId, hotEntry(doc));
+                }
+            }
+
+            return new HotProfile(
+                    longValue(doc.get(KEY_TOTAL_XP), 0L),
+                    longValue(doc.get(KEY_BASE_HP), -1L),
+                    longValue(doc.get(KEY_BASE_DEF), -1L),
+                    swordLevelValue(doc.get(KEY_SWORD_LEVEL)),
+                    stringValue(doc.get(KEY_EQUIPPED_WEAPON_ID)),
+                    flagValue(doc.get(KEY_DEFENDER_ENABLED), false),
+                    flagValue(doc.get(KEY_AUTOLOOT_ENABLED), true),
+                    stringValue(doc.get(KEY_MODEL_ID)),
+                    modelScaleValue(doc.get(KEY_MODEL_SCALE)));
+        }
+    }
+
+    private static ProfileHotIndex.Entry hotEntry(BsonDocument doc) {
+        int swordLevel = swordLevelValue(doc.get(KEY_SWORD_LEVEL));
+        String weapon = stringValue(doc.get(KEY_EQUIPPED_WEAPON_ID));
+
+        int flags = 0;
+        if (flagValue(doc.get(KEY_DEFENDER_ENABLED), false)) flags |= ProfileHotIndex.FLAG_DEFENDER;
+        if (flagValue(doc.get(KEY_AUTOLOOT_ENABLED), true)) flags |= ProfileHotIndex.FLAG_AUTOLOOT;
+        if (stringValue(doc.get(KEY_MODEL_ID)) != null) flags |= ProfileHotIndex.FLAG_HAS_MODEL;
+        if (weapon == null) flags |= ProfileHotIndex.FLAG_NO_WEAPON;
+        else if (!weapon.equals(SwordProgression.weaponIdForLevel(swordLevel))) flags |= ProfileHotIndex.FLAG_CUSTOM_WEAPON;
+
+        return new ProfileHotIndex.Entry(
+                longValue(doc.get(KEY_TOTAL_XP), 0L),
+                longValue(doc.get(KEY_BASE_HP), -1L),
+                longValue(doc.get(KEY_BASE_DEF), -1L),
+                swordLevel,
+                flags);
+    }
+
+    // =========================================================
+    // Gravação agrupada (vários campos -> 1 escrita)
+    // =========================================================
 
-            // ✅ merge: não apagar outros campos (ex.: aparência)
-            BsonDocument doc = BsonUtil.readDocumentNow(fileFor(ownerId));
-            if (doc == null) doc = new BsonDocument();
+    // Máscara de campos para saveNpcFields
+    public static final int FIELD_TOTAL_XP = 1;
+    public static final int FIELD_BASE_HP = 1 << 1;
+    public static final int FIELD_BASE_DEF = 1 << 2;
+    public static final int FIELD_SWORD = 1 << 3;
+    public static final int FIELD_DEFENDER = 1 << 4;
+    public static final int FIELD_AUTOLOOT = 1 << 5;
+    public static final int FIELD_BACKPACK = 1 << 6;
+
+    /**
+     * Grava de uma vez só os campos marcados em {@code fields} (demais parâmetros são ignorados).
+     * Usado pelo flush do NpcRecord: vários campos alterados no mesmo intervalo = 1 escrita.
+     */
+    public static void saveNpcFields(UUID ownerId, int fields,
+                                     long totalXp, long baseHp, long baseDef,
+                                     int swordLevel, String equippedWeaponId,
+                                     boolean defenderEnabled, boolean autoLootEnabled,
+                                     SimpleItemContainer backpack) {
+        if (ownerId == null || fields == 0) return;
+        Profile p = profile(ownerId);
+        if (p == null) return;
+        boolean flushNow;
+        synchronized (p) {
+            BsonDocument doc = p.doc;
+
+            if ((fields & FIELD_TOTAL_XP) != 0 && totalXp >= 0) putLong(doc, KEY_TOTAL_XP, totalXp);
+            if ((fields & FIELD_BASE_HP) != 0 && baseHp >= 0) putLong(doc, KEY_BASE_HP, baseHp);
+            if ((fields & FIELD_BASE_DEF) != 0 && baseDef >= 0) putLong(doc, KEY_BASE_DEF, baseDef);
+            if ((fields & FIELD_SWORD) != 0) putSwordState(doc, swordLevel, equippedWeaponId);
+            if ((fields & FIELD_DEFENDER) != 0) doc.put(KEY_DEFENDER_ENABLED, new BsonInt32(defenderEnabled ? 1 : 0));
+            if ((fields & FIELD_AUTOLOOT) != 0) doc.put(KEY_AUTOLOOT_ENABLED, new BsonInt32(autoLootEnabled ? 1 : 0));
+            if ((fields & FIELD_BACKPACK) != 0 && backpack != null) putBackpack(doc, backpack);
+
+            flushNow = writeProfile(ownerId, p);
+        }
+        if (flushNow) flushProfile(p);
+    }
 
-            doc.put("formatVersion", new BsonInt32(FORMAT_VERSION));
-            doc.put("savedAt", new BsonDateTime(System.currentTimeMillis()));
-            doc.put("backpack", SimpleItemContainer.CODEC.encode(backpack, new ExtraInfo()));
+    private static void putLong(BsonDocument doc, String key, long value) {
+        try {
+            doc.put(key, new org.bson.BsonInt64(value));
+        } catch (Throwable ignored) {
+            doc.put(key, new BsonDouble((double) value));
+        }
+    }
 
-            // writeDocument já cria .bak se pedir; por enquanto false
-            BsonUtil.writeDocument(fileFor(ownerId), doc, true).join();
+    private static void putSwordState(BsonDocument doc, int swordLevel, String equippedWeaponId) {
+        doc.put(KEY_SWORD_LEVEL, new BsonInt32(Math.max(1, swordLevel)));
+        if (equippedWeaponId == null || equippedWeaponId.isBlank()) {
+            doc.remove(KEY_EQUIPPED_WEAPON_ID);
+        } else {
+            doc.put(KEY_EQUIPPED_WEAPON_ID, new BsonString(equippedWeaponId));
+        }
+    }
 
-        } catch (IOException ignored) {
-            // createDirectories pode lançar IOException
+    private static boolean putBackpack(BsonDocument doc, SimpleItemContainer backpack) {
+        try {
+            doc.put(KEY_BACKPACK, SimpleItemContainer.CODEC.encode(backpack, new ExtraInfo()));
+            return true;
         } catch (Throwable ignored) {
-            // join/codec
+            // codec
+            return false;
         }
     }
 
+    // =========================================================
+    // Leitura de valores (aceita formatos antigos por compatibilidade)
+    // =========================================================
+
+    private static long longValue(BsonValue v, long def) {
+        if (v == null) return def;
+        if (v.isInt64()) return v.asInt64().getValue();
+        if (v.isInt32()) return v.asInt32().getValue();
+        if (v.isDouble()) return (long) v.asDouble().getValue();
+        if (v.isString()) {
+            try { return Long.parseLong(v.asString().getValue()); } catch (Throwable ignored) {}
+        }
+        return def;
+    }
+
+    private static boolean flagValue(BsonValue v, boolean def) {
+        if (v == null) return def;
+        if (v.isBoolean()) return v.asBoolean().getValue();
+        if (v.isInt32()) return v.asInt32().getValue() != 0;
+        if (v.isDouble()) return v.asDouble().getValue() != 0.0;
+        if (v.isString()) {
+            String s = v.asString().getValue();
+            if (s == null) return def;
+            s = s.trim().toLowerCase();
+            return s.equals("on") || s.equals("true") || s.equals("1") || s.equals("sim") || s.equals("yes");
+        }
+        return def;
+    }
+
+    private static int swordLevelValue(BsonValue v) {
+        int lvl = 1;
+        if (v != null) {
+            if (v.isInt32()) lvl = v.asInt32().getValue();
+            else if (v.isDouble()) lvl = (int) v.asDouble().getValue();
+        }
+        return Math.max(1, lvl);
+    }
+
+    private static String stringValue(BsonValue v) {
+        if (v == null || !v.isString()) return null;
+        String s = v.asString().getValue();
+        return (s == null || s.isBlank()) ? null : s;
+    }
+
+    private static double modelScaleValue(BsonValue v) {
+        if (v == null) return 1.0;
+        if (v.isDouble()) return v.asDouble().getValue();
+        if (v.isInt32()) return v.asInt32().getValue();
+        return 1.0;
+    }
+
     private AmigoPersistence() {}
 }
@@ -0,0 +1,156 @@
+package br.tones.amigonpc.core;
+
+/**
+ * Tabela densa (struct-of-arrays) com o estado quente do agendamento dos Amigos.
+ *
+ * Cada Amigo ocupa 1 slot (int pequeno); prazos, amostras de posição e flags ficam em arrays primitivos
+ * paralelos, então a varredura do ticker percorre memória contígua sem tocar nos registros.
+ * O registro (NpcRecord) guarda só o slot e o estado frio (refs, mochila, combate, comandos).
+ *
+ * Concorrência:
+ * - alocar/liberar/crescer e mudar flags: sob o lock da tabela
+ * - prazos e amostras: escrita simples (o dono do slot escreve; a varredura só lê).
+ *   Uma leitura atrasada só adianta/atrasa o NPC em uma passada.
+ * - o slot 0 (SCRATCH) nunca é varrido: registros já liberados escrevem nele sem afetar ninguém.
+ */
+final class CompanionTable<R> {
+
+    static final int SCRATCH = 0;
+
+    static final int FLAG_USED = 1;
+    static final int FLAG_ACTIVE = 1 << 1;
+    static final int FLAG_DOWNED = 1 << 2;
+    static final int FLAG_DEFERRED = 1 << 3;
+    static final int FLAG_OWNER_SAMPLE = 1 << 4;
+    static final int FLAG_NPC_SAMPLE = 1 << 5;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Colunas paralelas (trocadas inteiras ao crescer). */
+    static final class Columns {
+        final Object[] records;
+        final int[] flags;
+        final byte[] lod;
+        final long[] nextDueMillis;
+        final long[] nativeSeenMillis;
+        final long[] ownerMovedMillis;
+        final long[] npcMovedMillis;
+        final long[] npcSampleMillis;
+        final double[] ownerHorizontal;
+        final double[] ownerX, ownerY, ownerZ;
+        final double[] npcX, npcY, npcZ;
+
+        Columns(int capacity) {
+            records = new Object[capacity];
+            flags = new int[capacity];
+            lod = new byte[capacity];
+            nextDueMillis = new long[capacity];
+            nativeSeenMillis = new long[capacity];
+            ownerMovedMillis = new long[capacity];
+            npcMovedMillis = new long[capacity];
+            npcSampleMillis = new long[capacity];
+            ownerHorizontal = new double[capacity];
+            ownerX = new double[capacity];
+            ownerY = new double[capacity];
+            ownerZ = new double[capacity];
+            npcX = new double[capacity];
+            npcY = new double[capacity];
+            npcZ = new double[capacity];
+        }
+
+        int capacity() { return flags.length; }
+
+        void copyFrom(Columns o, int n) {
+            System.arraycopy(o.records, 0, records, 0, n);
+            System.arraycopy(o.flags, 0, flags, 0, n);
+            System.arraycopy(o.lod, 0, lod, 0, n);
+            System.arraycopy(o.nextDueMillis, 0, nextDueMillis, 0, n);
+            System.arraycopy(o.nativeSeenMillis, 0, nativeSeenMillis, 0, n);
+            System.arraycopy(o.ownerMovedMillis, 0, ownerMovedMillis, 0, n);
+            System.arraycopy(o.npcMovedMillis, 0, npcMovedMillis, 0, n);
+            System.arraycopy(o.npcSampleMillis, 0, npcSampleMillis, 0, n);
+            System.arraycopy(o.ownerHorizontal, 0, ownerHorizontal, 0, n);
+            System.arraycopy(o.ownerX, 0, ownerX, 0, n);
+            System.arraycopy(o.ownerY, 0, ownerY, 0, n);
+            System.arraycopy(o.ownerZ, 0, ownerZ, 0, n);
+            System.arraycopy(o.npcX, 0, npcX, 0, n);
+            System.arraycopy(o.npcY, 0, npcY, 0, n);
+            System.arraycopy(o.npcZ, 0, npcZ, 0, n);
+        }
+
+        /** Zera o slot (reuso sem herdar estado do Amigo anterior). */
+        void clear(int slot) {
+            records[slot] = null;
+            flags[slot] = 0;
+            lod[slot] = 0;
+            nextDueMillis[slot] = 0L;
+            nativeSeenMillis[slot] = 0L;
+            ownerMovedMillis[slot] = 0L;
+            npcMovedMillis[slot] = 0L;
+            npcSampleMillis[slot] = 0L;
+            ownerHorizontal[slot] = 0.0;
+            ownerX[slot] = ownerY[slot] = ownerZ[slot] = 0.0;
+            npcX[slot] = npcY[slot] = npcZ[slot] = 0.0;
+        }
+    }
+
+    private volatile Columns cols = new Columns(INITIAL_CAPACITY);
+    /** Slots [1, limit) já foram usados alguma vez (a varredura para aqui). */
+    private volatile int limit = 1;
+
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    Columns columns() { return cols; }
+
+    /** Ler ANTES de columns(): garante colunas com pelo menos {@code limit} posições. */
+    int limit() { return limit; }
+
+    @SuppressWarnings("unchecked")
+    R recordAt(Columns c, int slot) {
+        return (R) c.records[slot];
+    }
+
+    synchronized int allocate(R record) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = limit;
+            Columns c = cols;
+            if (slot >= c.capacity()) {
+                Columns grown = new Columns(c.capacity() * 2);
+                grown.copyFrom(c, slot);
+                cols = grown;
+            }
+            limit = slot + 1;
+        }
+        Columns c = cols;
+        c.clear(slot);
+        c.records[slot] = record;
+        c.flags[slot] = FLAG_USED;
+        return slot;
+    }
+
+    synchronized void release(int slot) {
+        if (slot <= SCRATCH || slot >= limit) return;
+        Columns c = cols;
+        if ((c.flags[slot] & FLAG_USED) == 0) return;
+        c.clear(slot);
+        if (freeCount == freeSlots.length) {
+            freeSlots = java.util.Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    synchronized void setFlag(int slot, int flag, boolean on) {
+        Columns c = cols;
+        if (slot != SCRATCH && (c.flags[slot] & FLAG_USED) == 0) return;
+        if (on) c.flags[slot] |= flag;
+        else c.flags[slot] &= ~flag;
+    }
+
+    boolean hasFlag(int slot, int flag) {
+        return (cols.flags[slot] & flag) != 0;
+    }
+}
@@ -0,0 +1,84 @@
+package br.tones.amigonpc.core;
+
+import com.hypixel.hytale.server.core.util.BsonUtil;
+import org.bson.BsonDocument;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Layout original: 1 arquivo por player em {@code dir}.
+ *
+ * - UUID.json (padrão, v4) ou UUID.bson (binário compacto, ver ProfileBinary)
+ * - Leitura tenta o formato configurado e depois o outro (migração automática:
+ *   o próximo save grava no formato configurado e apaga o arquivo antigo)
+ */
+public final class FileProfileStorage implements ProfileStorage {
+
+    private final Path dir;
+    private final boolean binary;
+
+    public FileProfileStorage(Path dir, boolean binary) {
+        this.dir = dir;
+        this.binary = binary;
+    }
+
+    public Path jsonFileFor(UUID ownerId) {
+        return dir.resolve(ownerId.toString() + ".json");
+    }
+
+    public Path binaryFileFor(UUID ownerId) {
+        return dir.resolve(ownerId.toString() + ".bson");
+    }
+
+    @Override
+    public BsonDocument read(UUID ownerId) throws IOException {
+        Path json = jsonFileFor(ownerId);
+        Path bin = binaryFileFor(ownerId);
+        BsonDocument doc = binary ? readBinary(bin) : readJson(json);
+        if (doc == null) doc = binary ? readJson(json) : readBinary(bin);
+        return doc;
+    }
+
+    @Override
+    public void write(UUID ownerId, BsonDocument doc) throws IOException {
+        Files.createDirectories(dir);
+        if (binary) {
+            ProfileBinary.write(binaryFileFor(ownerId), doc);
+            Files.deleteIfExists(jsonFileFor(ownerId));
+        } else {
+            BsonUtil.writeDocument(jsonFileFor(ownerId), doc, true).join();
+            Files.deleteIfExists(binaryFileFor(ownerId));
+        }
+    }
+
+    /** Apaga os arquivos do player (usado após migrar o perfil para outro storage). */
+    public void delete(UUID ownerId) throws IOException {
+        Files.deleteIfExists(jsonFileFor(ownerId));
+        Files.deleteIfExists(binaryFileFor(ownerId));
+    }
+
+    /** null só se o arquivo não existe; arquivo presente e ilegível = IOException. */
+    private static BsonDocument readJson(Path file) throws IOException {
+        if (!Files.exists(file)) return null;
+        BsonDocument doc;
+        try {
+            doc = BsonUtil.readDocumentNow(file);
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("perfil ilegível: " + file, t);
+        }
+        if (doc == null) throw new IOException("perfil ilegível: " + file);
+        return doc;
+    }
+
+    private static BsonDocument readBinary(Path file) throws IOException {
+        if (!Files.exists(file)) return null;
+        BsonDocument doc = ProfileBinary.read(file);
+        if (doc == null) throw new IOException("perfil binário inválido: " + file);
+        return doc;
+    }
+}
@@ -65,18 +65,30 @@ public final class HytaleBridge {
     public static boolean worldExecute(Object world, Runnable task) {
         if (world == null || task == null) return false;
 
-        // 1) world.execute(Runnable)
+        // 0) World é um Executor na maioria das builds: chamada direta (sem reflexão)
+        if (world instanceof java.util.concurrent.Executor ex) {
+            try {
+                ex.execute(task);
+                return true;
+            } catch (Throwable ignored) {}
+        }
+
+        // 1) world.execute(Runnable) — handle resolvido 1x por classe
         try {
-            Method m = world.getClass().getMethod("execute", Runnable.class);
-            m.invoke(world, task);
-            return true;
+            java.lang.invoke.MethodHandle h = ReflectionCache.method(world.getClass(), "execute", Runnable.class);
+            if (h != null) {
+                ReflectionCache.invoke1(h, world, task);
+                return true;
+            }
         } catch (Throwable ignored) {}
 
         // 2) world.run(Runnable) (fallback)
         try {
-            Method m = world.getClass().getMethod("run", Runnable.class);
-            m.invoke(world, task);
-            return true;
+            java.lang.invoke.MethodHandle h = ReflectionCache.method(world.getClass(), "run", Runnable.class);
+            if (h != null) {
+                ReflectionCache.invoke1(h, world, task);
+                return true;
+            }
         } catch (Throwable ignored) {}
 
         setError("Não achei método world.execute/run compatível nesta build.");
@@ -0,0 +1,68 @@
+package br.tones.amigonpc.core;
+
+/**
+ * Texto do HUD acima do Amigo ("Lv N [====--------] into/need") com detecção de mudança.
+ *
+ * - As 13 barras possíveis (0..12 segmentos) são pré-montadas; o texto é escrito num StringBuilder
+ *   reaproveitado e comparado com o último texto gravado antes de virar String
+ * - render(...) devolve null quando o texto visível não mudou (o manager não toca no Nameplate)
+ * - Entidade nova (Ref diferente, ex.: respawn) sempre regrava
+ *
+ * 1 instância por NpcRecord; usada só na thread do mundo do NPC (sem lock).
+ */
+final class NameplateRenderer {
+
+    static final int SEGMENTS = 12;
+
+    private static final String[] BARS = new String[SEGMENTS + 1];
+
+    static {
+        for (int filled = 0; filled <= SEGMENTS; filled++) {
+            StringBuilder sb = new StringBuilder(SEGMENTS + 2);
+            sb.append('[');
+            for (int i = 0; i < SEGMENTS; i++) sb.append(i < filled ? '=' : '-');
+            sb.append(']');
+            BARS[filled] = sb.toString();
+        }
+    }
+
+    private final StringBuilder buf = new StringBuilder(48);
+
+    /** Último texto gravado no Nameplate (null = nunca gravou / invalidado). */
+    private String lastText;
+    /** Entidade em que lastText foi gravado (comparação por identidade). */
+    private Object lastRef;
+    private long lastWriteMillis;
+
+    /**
+     * Monta o texto do HUD.
+     * @return texto novo a gravar, ou null se igual ao que já está na entidade
+     */
+    String render(Object npcRef, int level, long into, long need) {
+        long n = Math.max(1L, need);
+        double p = Math.max(0.0, Math.min(1.0, (double) into / (double) n));
+        int filled = (int) Math.round(p * SEGMENTS);
+        if (filled < 0) filled = 0;
+        if (filled > SEGMENTS) filled = SEGMENTS;
+
+        StringBuilder sb = buf;
+        sb.setLength(0);
+        sb.append("Lv ").append(level).append(' ').append(BARS[filled]).append(' ')
+                .append(into).append('/').append(n);
+
+        String last = lastText;
+        if (last != null && npcRef == lastRef && last.contentEquals(sb)) return null;
+        return sb.toString();
+    }
+
+    /** Chamar depois de gravar o texto devolvido por render(...). */
+    void markWritten(Object npcRef, String text, long now) {
+        lastText = text;
+        lastRef = npcRef;
+        lastWriteMillis = now;
+    }
+
+    long lastWriteMillis() {
+        return lastWriteMillis;
+    }
+}
@@ -0,0 +1,95 @@
+package br.tones.amigonpc.core;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Formato binário compacto do perfil: BSON cru (sem JSON), com um cabeçalho pequeno.
+ *
+ * Layout (little-endian):
+ * - 4 bytes: magic "ANPB"
+ * - 1 byte : versão do container (CONTAINER_VERSION)
+ * - resto  : documento BSON (o mesmo documento do .json v4, só que binário)
+ *
+ * Gravação atômica: escreve em .tmp, force no .tmp e só então move por cima do arquivo final
+ * (sem o force, uma queda de energia pode manter o rename e perder os dados: perfil vazio/truncado).
+ */
+public final class ProfileBinary {
+
+    private static final int MAGIC = 0x42504E41; // "ANPB" lido em little-endian
+    private static final byte CONTAINER_VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+
+    private static final BsonDocumentCodec CODEC = new BsonDocumentCodec();
+
+    private ProfileBinary() {}
+
+    public static byte[] encode(BsonDocument doc) {
+        BasicOutputBuffer out = new BasicOutputBuffer();
+        out.writeInt32(MAGIC);
+        out.write(CONTAINER_VERSION);
+        try (BsonBinaryWriter w = new BsonBinaryWriter(out)) {
+            CODEC.encode(w, doc, EncoderContext.builder().build());
+        }
+        return out.toByteArray();
+    }
+
+    /** @return documento ou null se o conteúdo não for um perfil binário válido */
+    public static BsonDocument decode(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_SIZE + 5) return null;
+
+        ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.getInt() != MAGIC) return null;
+        byte version = buf.get();
+        if (version < 1 || version > CONTAINER_VERSION) return null;
+
+        try (BsonBinaryReader r = new BsonBinaryReader(buf.slice().order(ByteOrder.LITTLE_ENDIAN))) {
+            return CODEC.decode(r, DecoderContext.builder().build());
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    public static BsonDocument read(Path file) throws IOException {
+        return decode(Files.readAllBytes(file));
+    }
+
+    public static void write(Path file, BsonDocument doc) throws IOException {
+        byte[] bytes = encode(doc);
+        Path tmp = file.resolveSibling(file.getFileName().toString() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(true);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException atomicNotSupported) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory(file.getParent());
+    }
+
+    /** fsync da pasta (torna o rename durável). Best-effort: nem todo SO deixa abrir diretório (ex.: Windows). */
+    private static void forceDirectory(Path dir) {
+        if (dir == null) return;
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (Throwable ignored) {}
+    }
+}
@@ -0,0 +1,200 @@
+package br.tones.amigonpc.core;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Índice mapeado em memória com os campos "quentes" do perfil (largura fixa, 1 slot por player).
+ *
+ * Serve o spawn/login sem ler nem interpretar o documento do player: o documento completo
+ * só é carregado quando alguém precisa dele (mochila, aparência, arma fora do padrão).
+ *
+ * Layout (big-endian):
+ * - cabeçalho (16 bytes): magic "ANPI", versão, slots usados, reservado
+ * - slot (48 bytes): uuid msb, uuid lsb, totalXp, baseHp, baseDef (long), swordLevel (int), flags (int)
+ *
+ * - Atualizado pelo AmigoPersistence com os mesmos valores gravados no documento; o slot é invalidado
+ *   antes da gravação e só volta a valer depois que um flush do armazenamento a cobre (nunca à frente do disco)
+ * - Slot sem FLAG_PRESENT = inválido (atualização interrompida): quem lê cai para o documento
+ * - É só um cache: apagar o arquivo não perde nada (é repopulado conforme os perfis são lidos/gravados)
+ */
+public final class ProfileHotIndex {
+
+    public static final int FLAG_PRESENT = 1;
+    public static final int FLAG_DEFENDER = 1 << 1;
+    public static final int FLAG_AUTOLOOT = 1 << 2;
+    /** Documento tem aparência salva (modelId/escala): precisa do documento. */
+    public static final int FLAG_HAS_MODEL = 1 << 3;
+    /** Arma equipada diferente da arma padrão do nível: precisa do documento. */
+    public static final int FLAG_CUSTOM_WEAPON = 1 << 4;
+    /** Nenhuma arma equipada salva. */
+    public static final int FLAG_NO_WEAPON = 1 << 5;
+
+    private static final int MAGIC = 0x414E5049; // "ANPI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 48;
+    private static final int INITIAL_SLOTS = 1024;
+
+    private static final int OFF_MSB = 0;
+    private static final int OFF_LSB = 8;
+    private static final int OFF_TOTAL_XP = 16;
+    private static final int OFF_BASE_HP = 24;
+    private static final int OFF_BASE_DEF = 32;
+    private static final int OFF_SWORD_LEVEL = 40;
+    private static final int OFF_FLAGS = 44;
+
+    /** Campos quentes de um player (cópia do slot). */
+    public static final class Entry {
+        public final long totalXp;
+        public final long baseHp;
+        public final long baseDef;
+        public final int swordLevel;
+        public final int flags;
+
+        public Entry(long totalXp, long baseHp, long baseDef, int swordLevel, int flags) {
+            this.totalXp = totalXp;
+            this.baseHp = baseHp;
+            this.baseDef = baseDef;
+            this.swordLevel = swordLevel;
+            this.flags = flags | FLAG_PRESENT;
+        }
+
+        public boolean has(int flag) {
+            return (flags & flag) != 0;
+        }
+    }
+
+    private final Path file;
+    private final Map<UUID, Integer> slots = new HashMap<>();
+
+    private boolean opened;
+    private boolean broken;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int capacity;
+    private int used;
+
+    public ProfileHotIndex(Path file) {
+        this.file = file;
+    }
+
+    /** @return campos do player ou null (sem slot / slot inválido / índice indisponível) */
+    public synchronized Entry get(UUID ownerId) {
+        if (ownerId == null || !open()) return null;
+        Integer slot = slots.get(ownerId);
+        if (slot == null) return null;
+
+        int base = HEADER_SIZE + slot * SLOT_SIZE;
+        int flags = map.getInt(base + OFF_FLAGS);
+        if ((flags & FLAG_PRESENT) == 0) return null;
+
+        return new Entry(
+                map.getLong(base + OFF_TOTAL_XP),
+                map.getLong(base + OFF_BASE_HP),
+                map.getLong(base + OFF_BASE_DEF),
+                map.getInt(base + OFF_SWORD_LEVEL),
+                flags);
+    }
+
+    public synchronized void put(UUID ownerId, Entry e) {
+        if (ownerId == null || e == null || !open()) return;
+        try {
+            Integer slot = slots.get(ownerId);
+            if (slot == null) {
+                if (used == capacity) grow();
+                slot = used++;
+                slots.put(ownerId, slot);
+                map.putInt(8, used);
+            }
+
+            int base = HEADER_SIZE + slot * SLOT_SIZE;
+            // Invalida primeiro e marca como presente por último (atualização interrompida = slot inválido)
+            map.putInt(base + OFF_FLAGS, 0);
+            map.putLong(base + OFF_MSB, ownerId.getMostSignificantBits());
+            map.putLong(base + OFF_LSB, ownerId.getLeastSignificantBits());
+            map.putLong(base + OFF_TOTAL_XP, e.totalXp);
+            map.putLong(base + OFF_BASE_HP, e.baseHp);
+            map.putLong(base + OFF_BASE_DEF, e.baseDef);
+            map.putInt(base + OFF_SWORD_LEVEL, e.swordLevel);
+            map.putInt(base + OFF_FLAGS, e.flags);
+        } catch (Throwable t) {
+            broken = true;
+        }
+    }
+
+    /** Marca o slot do player como inválido (quem lê cai para o documento até o próximo put). */
+    public synchronized void invalidate(UUID ownerId) {
+        if (ownerId == null || !open()) return;
+        Integer slot = slots.get(ownerId);
+        if (slot == null) return;
+        try {
+            map.putInt(HEADER_SIZE + slot * SLOT_SIZE + OFF_FLAGS, 0);
+        } catch (Throwable t) {
+            broken = true;
+        }
+    }
+
+    /** Pede ao SO para gravar as páginas alteradas (desligamento). */
+    public synchronized void force() {
+        if (map == null) return;
+        try { map.force(); } catch (Throwable ignored) {}
+    }
+
+    // =========================================================
+    // Abertura / crescimento
+    // =========================================================
+
+    private boolean open() {
+        if (opened) return !broken;
+        opened = true;
+        try {
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            long size = channel.size();
+            boolean valid = size >= HEADER_SIZE;
+            if (valid) {
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                valid = map.getInt(0) == MAGIC && map.getInt(4) == VERSION;
+            }
+
+            if (!valid) {
+                // Arquivo novo ou de outra versão: recomeça (é só cache)
+                capacity = INITIAL_SLOTS;
+                channel.truncate(0);
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+                map.putInt(0, MAGIC);
+                map.putInt(4, VERSION);
+                map.putInt(8, 0);
+                used = 0;
+                return true;
+            }
+
+            capacity = (int) ((size - HEADER_SIZE) / SLOT_SIZE);
+            used = Math.max(0, Math.min(capacity, map.getInt(8)));
+            for (int i = 0; i < used; i++) {
+                int base = HEADER_SIZE + i * SLOT_SIZE;
+                UUID id = new UUID(map.getLong(base + OFF_MSB), map.getLong(base + OFF_LSB));
+                slots.put(id, i);
+            }
+            return true;
+        } catch (Throwable t) {
+            broken = true;
+            return false;
+        }
+    }
+
+    private void grow() throws IOException {
+        capacity = Math.max(INITIAL_SLOTS, capacity * 2);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+    }
+}
@@ -0,0 +1,41 @@
+package br.tones.amigonpc.core;
+
+import org.bson.BsonDocument;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Onde os perfis dos players ficam gravados.
+ *
+ * - FileProfileStorage: 1 arquivo por player (layout original, .json ou .bson)
+ * - SegmentLogProfileStorage: log append-only em poucos arquivos de segmento
+ *
+ * Escolhido por -Damigonpc.profileStorage=files|log (ver AmigoPersistence).
+ * write() é chamado só pela thread de IO do AmigoPersistence; read() pode vir de qualquer thread.
+ */
+public interface ProfileStorage {
+
+    /**
+     * @return documento do player ou null se ele não existir
+     * @throws IOException se o perfil existe mas não pôde ser lido/decodificado
+     *         (quem chama NÃO pode tratar como perfil novo: gravaria um documento vazio por cima)
+     */
+    BsonDocument read(UUID ownerId) throws IOException;
+
+    void write(UUID ownerId, BsonDocument doc) throws IOException;
+
+    /** Garante que o que foi escrito está no disco (desligamento). */
+    default void flush() throws IOException {}
+
+    /**
+     * Manutenção pesada (ex.: compactação do log). Rodada pelo AmigoPersistence como tarefa própria
+     * na thread de IO, fora do write(); não deve segurar o lock de read() durante a parte cara.
+     */
+    default void maintain() throws IOException {}
+
+    /** Problema encontrado no armazenamento (ex.: dano recuperado na abertura); null = nenhum. */
+    default String getLastError() {
+        return null;
+    }
+}
@@ -0,0 +1,193 @@
+package br.tones.amigonpc.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache de MethodHandles resolvidos 1x por (classe, nome, assinatura).
+ *
+ * Motivo: getMethod/getMethods a cada chamada custa caro e roda no tick (várias vezes por NPC).
+ * Aqui a busca por reflexão acontece só na 1a vez; depois é um lookup em mapa + invokeExact.
+ *
+ * - Handles já adaptados para o tipo genérico (Object, Object...)Object
+ *   (métodos void retornam null; primitivos são (des)encaixotados).
+ * - Ausência também é cacheada (não repete a busca para métodos que não existem na build).
+ */
+public final class ReflectionCache {
+
+    private ReflectionCache() {}
+
+    /** Sobrecarga candidata (para resolução por aridade/compatibilidade dos argumentos). */
+    public static final class Candidate {
+        public final MethodHandle handle;
+        public final Class<?>[] params;
+
+        Candidate(MethodHandle handle, Class<?>[] params) {
+            this.handle = handle;
+            this.params = params;
+        }
+
+        /** true se o argumento (ou o tipo declarado) cabe no parâmetro {@code i}. */
+        public boolean accepts(int i, Object arg, Class<?> declaredType) {
+            Class<?> p = params[i];
+            return arg == null
+                    || p.isInstance(arg)
+                    || (declaredType != null && p.isAssignableFrom(declaredType));
+        }
+    }
+
+    private static final Object MISSING = new Object();
+    private static final Candidate[] NO_CANDIDATES = new Candidate[0];
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    /** Por classe: assinatura -> MethodHandle (ou MISSING). */
+    private static final ClassValue<Map<Sig, Object>> EXACT = new ClassValue<>() {
+        @Override
+        protected Map<Sig, Object> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /** Por classe: (nome, aridade) -> Candidate[]. */
+    private static final ClassValue<Map<Sig, Candidate[]>> BY_ARITY = new ClassValue<>() {
+        @Override
+        protected Map<Sig, Candidate[]> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /** Chave de assinatura (até 2 parâmetros explícitos; aridade livre para busca por nome). */
+    private static final class Sig {
+        final String name;
+        final int arity;
+        final Class<?> p0;
+        final Class<?> p1;
+
+        Sig(String name, int arity, Class<?> p0, Class<?> p1) {
+            this.name = name;
+            this.arity = arity;
+            this.p0 = p0;
+            this.p1 = p1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Sig s)) return false;
+            return arity == s.arity && p0 == s.p0 && p1 == s.p1 && name.equals(s.name);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = name.hashCode() * 31 + arity;
+            if (p0 != null) h = h * 31 + p0.hashCode();
+            if (p1 != null) h = h * 31 + p1.hashCode();
+            return h;
+        }
+    }
+
+    // =========================================================
+    // Resolução
+    // =========================================================
+
+    /** owner.name() — null se não existir. */
+    public static MethodHandle method(Class<?> owner, String name) {
+        return exact(owner, new Sig(name, 0, null, null));
+    }
+
+    /** owner.name(p0) — null se não existir. */
+    public static MethodHandle method(Class<?> owner, String name, Class<?> p0) {
+        return exact(owner, new Sig(name, 1, p0, null));
+    }
+
+    /** owner.name(p0, p1) — null se não existir. */
+    public static MethodHandle method(Class<?> owner, String name, Class<?> p0, Class<?> p1) {
+        return exact(owner, new Sig(name, 2, p0, p1));
+    }
+
+    /**
+     * Todas as sobrecargas públicas de {@code name} com {@code arity} parâmetros,
+     * na ordem de getMethods(). Nunca retorna null.
+     */
+    public static Candidate[] candidates(Class<?> owner, String name, int arity) {
+        if (owner == null || name == null) return NO_CANDIDATES;
+        Map<Sig, Candidate[]> map = BY_ARITY.get(owner);
+        Sig key = new Sig(name, arity, null, null);
+        Candidate[] found = map.get(key);
+        if (found != null) return found;
+
+        ArrayList<Candidate> list = new ArrayList<>();
+        try {
+            for (Method m : owner.getMethods()) {
+                if (!m.getName().equals(name)) continue;
+                if (m.getParameterCount() != arity) continue;
+                MethodHandle h = adapt(m);
+                if (h != null) list.add(new Candidate(h, m.getParameterTypes()));
+            }
+        } catch (Throwable ignored) {}
+
+        found = list.isEmpty() ? NO_CANDIDATES : list.toArray(new Candidate[0]);
+        Candidate[] prev = map.putIfAbsent(key, found);
+        return prev != null ? prev : found;
+    }
+
+    private static MethodHandle exact(Class<?> owner, Sig sig) {
+        if (owner == null || sig.name == null) return null;
+        Map<Sig, Object> map = EXACT.get(owner);
+        Object v = map.get(sig);
+        if (v == null) {
+            MethodHandle h = null;
+            try {
+                Method m = switch (sig.arity) {
+                    case 0 -> owner.getMethod(sig.name);
+                    case 1 -> owner.getMethod(sig.name, sig.p0);
+                    default -> owner.getMethod(sig.name, sig.p0, sig.p1);
+                };
+                h = adapt(m);
+            } catch (Throwable ignored) {}
+            v = (h != null) ? h : MISSING;
+            Object prev = map.putIfAbsent(sig, v);
+            if (prev != null) v = prev;
+        }
+        return (v == MISSING) ? null : (MethodHandle) v;
+    }
+
+    private static MethodHandle adapt(Method m) {
+        try {
+            if (java.lang.reflect.Modifier.isStatic(m.getModifiers())) return null;
+            MethodHandle h;
+            try {
+                h = LOOKUP.unreflect(m);
+            } catch (IllegalAccessException notPublicClass) {
+                // Método público declarado em classe não-pública (best-effort)
+                m.setAccessible(true);
+                h = MethodHandles.lookup().unreflect(m);
+            }
+            return h.asType(MethodType.genericMethodType(m.getParameterCount() + 1));
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    // =========================================================
+    // Invocação (tipos genéricos, sem varargs no caminho quente)
+    // =========================================================
+
+    public static Object invoke0(MethodHandle h, Object target) throws Throwable {
+        return (Object) h.invokeExact(target);
+    }
+
+    public static Object invoke1(MethodHandle h, Object target, Object a) throws Throwable {
+        return (Object) h.invokeExact(target, a);
+    }
+
+    public static Object invoke2(MethodHandle h, Object target, Object a, Object b) throws Throwable {
+        return (Object) h.invokeExact(target, a, b);
+    }
+}
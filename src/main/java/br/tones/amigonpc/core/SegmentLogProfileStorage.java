@@ -0,0 +1,502 @@
+package br.tones.amigonpc.core;
+
+import org.bson.BsonDocument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Perfis em log append-only: poucos arquivos de segmento em vez de 1 arquivo por player.
+ *
+ * Registro (big-endian):
+ * - 4 bytes : magic "ANPL"
+ * - 4 bytes : tamanho do payload
+ * - 16 bytes: UUID do player
+ * - N bytes : payload (ProfileBinary.encode do documento)
+ * - 4 bytes : CRC32 de UUID + payload
+ *
+ * - Índice em memória UUID -> (segmento, offset, tamanho), montado na abertura lendo os segmentos em ordem
+ *   (o último registro de cada UUID vence)
+ * - Recuperação: registro incompleto/corrompido no fim do último segmento (queda no meio da escrita) é truncado;
+ *   registro inválido em outro ponto é pulado (procura o próximo registro válido) e reportado em getLastError()
+ * - Segmento novo a cada ~SEGMENT_MAX_BYTES; compactação (maintain(), tarefa própria na thread de IO) quando
+ *   o lixo passa da metade do total: copia só os registros vivos para segmentos novos, sem segurar o lock
+ *   (read/write seguem normalmente), e só então troca o índice e apaga os antigos
+ * - Perfis que ainda estão no layout antigo (FileProfileStorage) são lidos de lá e migram no próximo save
+ *
+ * Tudo sincronizado na instância (escrita vem só da thread de IO; leitura no login),
+ * exceto a cópia da compactação, que só lê segmentos que não recebem mais escrita.
+ */
+public final class SegmentLogProfileStorage implements ProfileStorage {
+
+    private static final int RECORD_MAGIC = 0x414E504C; // "ANPL"
+    private static final int HEADER_SIZE = 4 + 4 + 16;
+    private static final int TRAILER_SIZE = 4;
+    private static final int MAX_PAYLOAD = 16 * 1024 * 1024;
+
+    private static final long SEGMENT_MAX_BYTES = 8L * 1024 * 1024;
+    private static final long COMPACT_MIN_BYTES = 16L * 1024 * 1024;
+
+    // fsync agrupado: no máximo 1 force por intervalo (queda perde no máximo isso; o resto é recuperado)
+    private static final long FORCE_INTERVAL_MS = 1000L;
+
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    /** Segmento da compactação ainda sendo escrito (ignorado e apagado na abertura). */
+    private static final String COPY_SUFFIX = ".tmp";
+
+    /** Posição do último registro de um player. */
+    private static final class Location {
+        final int segment;
+        final long offset;
+        final int payloadLength;
+
+        Location(int segment, long offset, int payloadLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.payloadLength = payloadLength;
+        }
+
+        long recordSize() {
+            return HEADER_SIZE + (long) payloadLength + TRAILER_SIZE;
+        }
+    }
+
+    private final Path dir;
+    private final FileProfileStorage legacy;
+
+    private final Map<UUID, Location> index = new HashMap<>();
+    private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+    private final Set<UUID> legacyPending = new HashSet<>();
+
+    private boolean opened;
+    private int activeId;
+    private FileChannel active;
+    private long activeSize;
+    private long totalBytes;
+    private long liveBytes;
+    private boolean unforced;
+    private long lastForceMillis;
+    /** Compactação em andamento (a cópia roda fora do lock). */
+    private boolean compacting;
+    /** 1o dano encontrado na abertura (null = log íntegro). */
+    private volatile String recoveryError;
+
+    public SegmentLogProfileStorage(Path dir, FileProfileStorage legacy) {
+        this.dir = dir;
+        this.legacy = legacy;
+    }
+
+    // =========================================================
+    // ProfileStorage
+    // =========================================================
+
+    @Override
+    public synchronized BsonDocument read(UUID ownerId) throws IOException {
+        if (ownerId == null) return null;
+        open();
+        Location loc = index.get(ownerId);
+        if (loc != null) {
+            // Está no log: registro ruim é erro (cair no layout antigo devolveria um perfil velho)
+            BsonDocument doc = readRecord(ownerId, loc);
+            if (doc == null) throw new IOException("registro corrompido no log para " + ownerId);
+            return doc;
+        }
+
+        if (legacy == null) return null;
+        BsonDocument doc = legacy.read(ownerId);
+        if (doc != null) legacyPending.add(ownerId);
+        return doc;
+    }
+
+    @Override
+    public synchronized void write(UUID ownerId, BsonDocument doc) throws IOException {
+        if (ownerId == null || doc == null) return;
+        open();
+
+        byte[] payload = ProfileBinary.encode(doc);
+        // A recuperação não aceita registro maior que isso: gravar um tornaria o resto do segmento ilegível
+        if (payload.length > MAX_PAYLOAD) {
+            throw new IOException("perfil grande demais para o log (" + payload.length + " bytes): " + ownerId);
+        }
+        ByteBuffer rec = encodeRecord(ownerId, payload);
+        int size = rec.remaining();
+
+        if (activeSize > 0 && activeSize + size > SEGMENT_MAX_BYTES) roll();
+
+        long offset = activeSize;
+        while (rec.hasRemaining()) {
+            active.write(rec, offset + (size - rec.remaining()));
+        }
+        activeSize += size;
+        totalBytes += size;
+        unforced = true;
+
+        Location prev = index.put(ownerId, new Location(activeId, offset, payload.length));
+        if (prev != null) liveBytes -= prev.recordSize();
+        liveBytes += size;
+
+        long now = System.currentTimeMillis();
+        // Perfil veio do layout antigo: o registro precisa estar no disco antes de apagar o arquivo solto
+        // (queda entre o append e o force perderia as duas cópias)
+        boolean fromLegacy = legacy != null && legacyPending.contains(ownerId);
+        if (fromLegacy || now - lastForceMillis >= FORCE_INTERVAL_MS) force(now);
+
+        if (fromLegacy) {
+            legacyPending.remove(ownerId);
+            try { legacy.delete(ownerId); } catch (Throwable ignored) {}
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (!opened) return;
+        force(System.currentTimeMillis());
+    }
+
+    @Override
+    public String getLastError() {
+        return recoveryError;
+    }
+
+    // =========================================================
+    // Abertura / recuperação
+    // =========================================================
+
+    private void open() throws IOException {
+        if (opened) return;
+        Files.createDirectories(dir);
+
+        // Cópia de compactação interrompida: os segmentos originais continuam lá
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX + COPY_SUFFIX)) {
+            for (Path p : ds) {
+                try { Files.deleteIfExists(p); } catch (Throwable ignored) {}
+            }
+        }
+
+        TreeMap<Integer, Path> found = new TreeMap<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path p : ds) {
+                int id = segmentId(p);
+                if (id > 0) found.put(id, p);
+            }
+        }
+
+        for (Map.Entry<Integer, Path> e : found.entrySet()) {
+            boolean last = e.getKey().equals(found.lastKey());
+            long valid = scanSegment(e.getKey(), e.getValue(), last);
+            FileChannel ch = FileChannel.open(e.getValue(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (last && ch.size() > valid) {
+                // Cauda incompleta (queda durante append): descarta
+                ch.truncate(valid);
+                ch.force(true);
+            }
+            segments.put(e.getKey(), ch);
+            totalBytes += Math.min(valid, ch.size());
+        }
+
+        if (segments.isEmpty()) {
+            newSegment(1);
+        } else {
+            activeId = segments.lastKey();
+            active = segments.get(activeId);
+            activeSize = active.size();
+        }
+
+        opened = true;
+    }
+
+    /**
+     * Lê os registros válidos do segmento e atualiza o índice.
+     * Registro inválido no meio: pula até o próximo registro válido (só o danificado se perde) e reporta.
+     * Lixo no fim só é normal no último segmento (queda durante append).
+     * @return fim do último registro válido
+     */
+    private long scanSegment(int id, Path file, boolean last) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        CRC32 crc = new CRC32();
+
+        long pos = 0;
+        long validEnd = 0;
+        while (bytes.length - pos >= HEADER_SIZE + TRAILER_SIZE) {
+            int len = recordLengthAt(bytes, buf, crc, (int) pos);
+            if (len < 0) {
+                long next = pos + 1;
+                while (next <= bytes.length - (HEADER_SIZE + TRAILER_SIZE)
+                        && recordLengthAt(bytes, buf, crc, (int) next) < 0) {
+                    next++;
+                }
+                if (next > bytes.length - (HEADER_SIZE + TRAILER_SIZE)) break;
+                reportDamage(file, pos, next - pos);
+                pos = next;
+                continue;
+            }
+
+            UUID owner = new UUID(buf.getLong((int) pos + 8), buf.getLong((int) pos + 16));
+            Location loc = new Location(id, pos, len);
+            Location prev = index.put(owner, loc);
+            if (prev != null) liveBytes -= prev.recordSize();
+            liveBytes += loc.recordSize();
+
+            pos += loc.recordSize();
+            validEnd = pos;
+        }
+
+        if (!last && validEnd < bytes.length) reportDamage(file, validEnd, bytes.length - validEnd);
+        return validEnd;
+    }
+
+    /** @return tamanho do payload se há um registro íntegro em {@code p}, senão -1 */
+    private static int recordLengthAt(byte[] bytes, ByteBuffer buf, CRC32 crc, int p) {
+        if (buf.getInt(p) != RECORD_MAGIC) return -1;
+        int len = buf.getInt(p + 4);
+        if (len <= 0 || len > MAX_PAYLOAD) return -1;
+        if (bytes.length - (long) p < HEADER_SIZE + (long) len + TRAILER_SIZE) return -1;
+
+        crc.reset();
+        crc.update(bytes, p + 8, 16 + len);
+        if ((int) crc.getValue() != buf.getInt(p + HEADER_SIZE + len)) return -1;
+        return len;
+    }
+
+    private void reportDamage(Path file, long offset, long length) {
+        if (recoveryError != null) return;
+        recoveryError = file.getFileName() + ": " + length + " bytes inválidos no offset " + offset
+                + " (registros afetados voltam à versão anterior)";
+    }
+
+    private static int segmentId(Path p) {
+        String name = p.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) return -1;
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Path segmentPath(int id) {
+        return dir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    // =========================================================
+    // Segmentos
+    // =========================================================
+
+    private void newSegment(int id) throws IOException {
+        FileChannel ch = FileChannel.open(segmentPath(id),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(id, ch);
+        activeId = id;
+        active = ch;
+        activeSize = ch.size();
+    }
+
+    private void roll() throws IOException {
+        force(System.currentTimeMillis());
+        newSegment(activeId + 1);
+    }
+
+    private void force(long now) throws IOException {
+        lastForceMillis = now;
+        if (!unforced || active == null) return;
+        active.force(false);
+        unforced = false;
+    }
+
+    /**
+     * Compacta se o lixo passou da metade: reescreve só os registros vivos em segmentos novos e apaga os antigos.
+     *
+     * 1. Com lock: fecha os segmentos atuais para escrita e reserva ids para a cópia; as escritas novas vão
+     *    para um segmento depois dos reservados (na recuperação, o registro mais novo continua vencendo)
+     * 2. Sem lock: copia os registros vivos para arquivos .tmp, force e renomeia para .log
+     * 3. Com lock: aponta para a cópia só quem não foi regravado no meio tempo e apaga os segmentos antigos
+     *
+     * Queda no meio é segura: .tmp é descartado na abertura; cópia já renomeada é igual ao original.
+     */
+    @Override
+    public void maintain() throws IOException {
+        ArrayList<Map.Entry<UUID, Location>> live;
+        Map<Integer, FileChannel> oldSegments;
+        int firstCopyId;
+        int lastCopyId;
+
+        synchronized (this) {
+            if (!opened || compacting) return;
+            if (totalBytes <= COMPACT_MIN_BYTES || totalBytes <= liveBytes * 2) return;
+
+            force(System.currentTimeMillis());
+            oldSegments = new HashMap<>(segments);
+            firstCopyId = activeId + 1;
+            lastCopyId = firstCopyId + (int) (liveBytes / SEGMENT_MAX_BYTES) + 1;
+            newSegment(lastCopyId + 1);
+
+            live = new ArrayList<>(index.size());
+            for (Map.Entry<UUID, Location> e : index.entrySet()) {
+                live.add(Map.entry(e.getKey(), e.getValue()));
+            }
+            compacting = true;
+        }
+
+        TreeMap<Integer, FileChannel> copies = new TreeMap<>();
+        Map<UUID, Location> moved = new HashMap<>(live.size() * 2);
+        try {
+            copyLive(live, oldSegments, firstCopyId, lastCopyId, copies, moved);
+        } catch (Throwable t) {
+            for (Map.Entry<Integer, FileChannel> c : copies.entrySet()) {
+                try { c.getValue().close(); } catch (Throwable ignored) {}
+                try { Files.deleteIfExists(copyPath(c.getKey())); } catch (Throwable ignored) {}
+                try { Files.deleteIfExists(segmentPath(c.getKey())); } catch (Throwable ignored) {}
+            }
+            synchronized (this) {
+                compacting = false;
+            }
+            throw (t instanceof IOException io) ? io : new IOException(t);
+        }
+
+        synchronized (this) {
+            segments.putAll(copies);
+            for (Map.Entry<UUID, Location> e : live) {
+                // Regravado durante a cópia: a versão nova (em segmento mais novo) fica
+                if (index.get(e.getKey()) == e.getValue()) index.put(e.getKey(), moved.get(e.getKey()));
+            }
+            for (Integer id : oldSegments.keySet()) {
+                FileChannel ch = segments.remove(id);
+                try { if (ch != null) ch.close(); } catch (Throwable ignored) {}
+                try { Files.deleteIfExists(segmentPath(id)); } catch (Throwable ignored) {}
+            }
+
+            long total = 0;
+            for (FileChannel ch : segments.values()) {
+                try { total += ch.size(); } catch (Throwable ignored) {}
+            }
+            long liveSum = 0;
+            for (Location loc : index.values()) liveSum += loc.recordSize();
+            totalBytes = total;
+            liveBytes = liveSum;
+            compacting = false;
+        }
+    }
+
+    /** Fase 2 da compactação (sem lock): só lê segmentos antigos e escreve em arquivos próprios. */
+    private void copyLive(ArrayList<Map.Entry<UUID, Location>> live, Map<Integer, FileChannel> oldSegments,
+                          int firstCopyId, int lastCopyId,
+                          TreeMap<Integer, FileChannel> copies, Map<UUID, Location> moved) throws IOException {
+        // Cópia em ordem de disco (leitura sequencial dos antigos)
+        live.sort((a, b) -> {
+            int c = Integer.compare(a.getValue().segment, b.getValue().segment);
+            return c != 0 ? c : Long.compare(a.getValue().offset, b.getValue().offset);
+        });
+
+        int copyId = firstCopyId;
+        FileChannel out = openCopy(copyId, copies);
+        long outSize = 0;
+        for (Map.Entry<UUID, Location> e : live) {
+            Location loc = e.getValue();
+            FileChannel src = oldSegments.get(loc.segment);
+            if (src == null) throw new IOException("segmento " + loc.segment + " sumiu durante a compactação");
+
+            int size = (int) loc.recordSize();
+            ByteBuffer rec = ByteBuffer.allocate(size);
+            readFully(src, rec, loc.offset);
+            rec.flip();
+
+            // Último id reservado recebe o resto (passa do tamanho alvo em vez de invadir o id das escritas novas)
+            if (outSize > 0 && outSize + size > SEGMENT_MAX_BYTES && copyId < lastCopyId) {
+                out.force(false);
+                out = openCopy(++copyId, copies);
+                outSize = 0;
+            }
+            long offset = outSize;
+            while (rec.hasRemaining()) {
+                out.write(rec, offset + (size - rec.remaining()));
+            }
+            outSize += size;
+            moved.put(e.getKey(), new Location(copyId, offset, loc.payloadLength));
+        }
+        out.force(false);
+
+        // Prontos: .tmp -> .log (reabre pelo nome definitivo)
+        for (Map.Entry<Integer, FileChannel> c : copies.entrySet()) {
+            c.getValue().close();
+            Files.move(copyPath(c.getKey()), segmentPath(c.getKey()), StandardCopyOption.ATOMIC_MOVE);
+            c.setValue(FileChannel.open(segmentPath(c.getKey()), StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+    }
+
+    private FileChannel openCopy(int id, TreeMap<Integer, FileChannel> copies) throws IOException {
+        FileChannel ch = FileChannel.open(copyPath(id), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        copies.put(id, ch);
+        return ch;
+    }
+
+    private Path copyPath(int id) {
+        return segmentPath(id).resolveSibling(segmentPath(id).getFileName() + COPY_SUFFIX);
+    }
+
+    // =========================================================
+    // Registros
+    // =========================================================
+
+    private static ByteBuffer encodeRecord(UUID ownerId, byte[] payload) {
+        ByteBuffer rec = ByteBuffer.allocate(HEADER_SIZE + payload.length + TRAILER_SIZE);
+        rec.putInt(RECORD_MAGIC);
+        rec.putInt(payload.length);
+        rec.putLong(ownerId.getMostSignificantBits());
+        rec.putLong(ownerId.getLeastSignificantBits());
+        rec.put(payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(rec.array(), 8, 16 + payload.length);
+        rec.putInt((int) crc.getValue());
+        rec.flip();
+        return rec;
+    }
+
+    private BsonDocument readRecord(UUID ownerId, Location loc) throws IOException {
+        FileChannel ch = segments.get(loc.segment);
+        if (ch == null) return null;
+
+        ByteBuffer rec = ByteBuffer.allocate((int) loc.recordSize());
+        readFully(ch, rec, loc.offset);
+        rec.flip();
+
+        if (rec.getInt(0) != RECORD_MAGIC || rec.getInt(4) != loc.payloadLength) return null;
+        if (rec.getLong(8) != ownerId.getMostSignificantBits()
+                || rec.getLong(16) != ownerId.getLeastSignificantBits()) return null;
+
+        CRC32 crc = new CRC32();
+        crc.update(rec.array(), 8, 16 + loc.payloadLength);
+        if ((int) crc.getValue() != rec.getInt(HEADER_SIZE + loc.payloadLength)) return null;
+
+        byte[] payload = new byte[loc.payloadLength];
+        System.arraycopy(rec.array(), HEADER_SIZE, payload, 0, loc.payloadLength);
+        return ProfileBinary.decode(payload);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer dst, long position) throws IOException {
+        long pos = position;
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, pos);
+            if (n < 0) throw new IOException("EOF no segmento");
+            pos += n;
+        }
+    }
+}
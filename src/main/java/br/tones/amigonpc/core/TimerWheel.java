@@ -0,0 +1,133 @@
+package br.tones.amigonpc.core;
+
+import java.util.ArrayList;
+
+/**
+ * Roda de temporizadores (hashed timer wheel) para prazos em millis.
+ *
+ * - schedule/cancel em O(1) (lista duplamente encadeada por balde)
+ * - advance(now) dispara tudo que venceu até {@code now}, na thread de quem chamou
+ * - Nunca dispara antes do prazo (arredonda para o próximo passo da roda); atraso máximo = 1 passo
+ * - Prazos além de 1 volta usam contador de voltas (rounds)
+ *
+ * As tarefas rodam fora do lock; exceções são engolidas (uma tarefa não derruba as outras).
+ */
+public final class TimerWheel {
+
+    /** Temporizador agendado. cancel() é idempotente. */
+    public static final class Timeout {
+        private final TimerWheel wheel;
+        private final long deadlineMillis;
+        private final Runnable task;
+
+        private long rounds;
+        private int bucket = -1;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, long deadlineMillis, Runnable task) {
+            this.wheel = wheel;
+            this.deadlineMillis = deadlineMillis;
+            this.task = task;
+        }
+
+        public long deadlineMillis() {
+            return deadlineMillis;
+        }
+
+        /** @return true se ainda estava agendado (não disparou nem foi cancelado antes) */
+        public boolean cancel() {
+            synchronized (wheel) {
+                if (bucket < 0) return false;
+                wheel.unlink(this);
+                return true;
+            }
+        }
+    }
+
+    private final long tickMillis;
+    private final int mask;
+    private final Timeout[] heads;
+
+    /** Próximo passo da roda a processar. */
+    private long currentTick;
+    private int pending;
+
+    /**
+     * @param tickMillis resolução (ex.: 50 ms)
+     * @param wheelSize  baldes por volta (arredondado para potência de 2)
+     */
+    public TimerWheel(long tickMillis, int wheelSize) {
+        this.tickMillis = Math.max(1L, tickMillis);
+        int size = Integer.highestOneBit(Math.max(16, wheelSize) - 1) << 1;
+        this.mask = size - 1;
+        this.heads = new Timeout[size];
+        this.currentTick = System.currentTimeMillis() / this.tickMillis;
+    }
+
+    public synchronized int size() {
+        return pending;
+    }
+
+    public synchronized Timeout schedule(long deadlineMillis, Runnable task) {
+        Timeout t = new Timeout(this, deadlineMillis, task);
+
+        // Arredonda para cima: o passo só é processado quando now >= passo * tickMillis >= prazo
+        long deadlineTick = Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis);
+        if (deadlineTick < currentTick) deadlineTick = currentTick;
+
+        t.rounds = (deadlineTick - currentTick) / heads.length;
+        t.bucket = (int) (deadlineTick & mask);
+        t.next = heads[t.bucket];
+        if (t.next != null) t.next.prev = t;
+        heads[t.bucket] = t;
+        pending++;
+        return t;
+    }
+
+    /** Dispara (na thread atual) tudo que venceu até {@code nowMillis}. */
+    public void advance(long nowMillis) {
+        ArrayList<Timeout> due = null;
+
+        synchronized (this) {
+            long nowTick = nowMillis / tickMillis;
+            while (currentTick <= nowTick) {
+                if (pending == 0) {
+                    currentTick = nowTick + 1;
+                    break;
+                }
+                int b = (int) (currentTick & mask);
+                Timeout t = heads[b];
+                while (t != null) {
+                    Timeout nx = t.next;
+                    if (t.rounds <= 0) {
+                        unlink(t);
+                        if (due == null) due = new ArrayList<>();
+                        due.add(t);
+                    } else {
+                        t.rounds--;
+                    }
+                    t = nx;
+                }
+                currentTick++;
+            }
+        }
+
+        if (due == null) return;
+        for (Timeout t : due) {
+            try {
+                t.task.run();
+            } catch (Throwable ignored) {}
+        }
+    }
+
+    private void unlink(Timeout t) {
+        if (t.prev != null) t.prev.next = t.next;
+        else heads[t.bucket] = t.next;
+        if (t.next != null) t.next.prev = t.prev;
+        t.prev = null;
+        t.next = null;
+        t.bucket = -1;
+        pending--;
+    }
+}
@@ -0,0 +1,61 @@
+package br.tones.amigonpc.core.components;
+
+import java.util.UUID;
+
+import com.hypixel.hytale.component.Component;
+import com.hypixel.hytale.component.ComponentType;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+import javax.annotation.Nullable;
+
+/**
+ * Marcador ECS do AmigoNPC: fica na entidade do companheiro e carrega o dono e o nível.
+ *
+ * - Identidade por componente: sistemas filtram pelo arquétipo (query) e checagens viram leitura de componente
+ * - Não é persistido (o Amigo é re-spawnado a partir do perfil; ver AmigoPersistence)
+ * - O tipo é registrado pelo plugin no setup; enquanto for null o manager usa o mapa de Refs antigo
+ */
+public final class AmigoCompanionComponent implements Component<EntityStore> {
+
+    private static volatile ComponentType<EntityStore, AmigoCompanionComponent> componentType;
+
+    private final UUID ownerId;
+    private volatile int level;
+
+    /** Exigido pelo registro do componente. */
+    public AmigoCompanionComponent() {
+        this(null, 1);
+    }
+
+    public AmigoCompanionComponent(UUID ownerId, int level) {
+        this.ownerId = ownerId;
+        this.level = Math.max(1, level);
+    }
+
+    /** null se o registro falhou (build sem suporte) ou ainda não aconteceu. */
+    @Nullable
+    public static ComponentType<EntityStore, AmigoCompanionComponent> getComponentType() {
+        return componentType;
+    }
+
+    public static void setComponentType(ComponentType<EntityStore, AmigoCompanionComponent> type) {
+        componentType = type;
+    }
+
+    public UUID getOwnerId() {
+        return ownerId;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = Math.max(1, level);
+    }
+
+    @Override
+    public Component<EntityStore> clone() {
+        return new AmigoCompanionComponent(ownerId, level);
+    }
+}
@@ -0,0 +1,51 @@
+package br.tones.amigonpc.core.components;
+
+import java.util.UUID;
+
+import com.hypixel.hytale.component.Component;
+import com.hypixel.hytale.component.ComponentType;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+import javax.annotation.Nullable;
+
+/**
+ * Marcador ECS do dono: fica na entidade do player que já spawnou um Amigo.
+ *
+ * - Os sistemas de dano do dono usam o tipo na query (ou leem o componente da fonte do dano)
+ *   em vez de Player + UUIDComponent em todo evento
+ * - Não é removido no despawn: o manager confirma se ainda existe Amigo (hasNpc)
+ * - Não é persistido; o tipo é registrado pelo plugin no setup (null = sem suporte)
+ */
+public final class AmigoOwnerComponent implements Component<EntityStore> {
+
+    private static volatile ComponentType<EntityStore, AmigoOwnerComponent> componentType;
+
+    private final UUID ownerId;
+
+    /** Exigido pelo registro do componente. */
+    public AmigoOwnerComponent() {
+        this(null);
+    }
+
+    public AmigoOwnerComponent(UUID ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    @Nullable
+    public static ComponentType<EntityStore, AmigoOwnerComponent> getComponentType() {
+        return componentType;
+    }
+
+    public static void setComponentType(ComponentType<EntityStore, AmigoOwnerComponent> type) {
+        componentType = type;
+    }
+
+    public UUID getOwnerId() {
+        return ownerId;
+    }
+
+    @Override
+    public Component<EntityStore> clone() {
+        return new AmigoOwnerComponent(ownerId);
+    }
+}
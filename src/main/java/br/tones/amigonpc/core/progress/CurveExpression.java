@@ -0,0 +1,186 @@
+package br.tones.amigonpc.core.progress;
+
+/**
+ * Expressão numérica simples das curvas (curves.json), ex.: "80 + 14*x + 1.2*x^2".
+ *
+ * - Variáveis: L (level) e x (= L - 1)
+ * - Operadores: + - * / ^ (potência, associativa à direita) e parênteses
+ * - Funções: min(a,b), max(a,b), floor, ceil, round, sqrt, abs, log, exp
+ *
+ * Só é avaliada na compilação da curva (tabelas); o caminho quente nunca chega aqui.
+ * Erros de sintaxe viram IllegalArgumentException com a posição.
+ */
+public final class CurveExpression {
+
+    private interface Node {
+        double eval(double level);
+    }
+
+    private final String source;
+    private final Node root;
+
+    private CurveExpression(String source, Node root) {
+        this.source = source;
+        this.root = root;
+    }
+
+    public static CurveExpression compile(String source) {
+        if (source == null || source.isBlank()) throw new IllegalArgumentException("expressão vazia");
+        Parser p = new Parser(source);
+        Node n = p.parseSum();
+        p.skipSpaces();
+        if (p.pos < source.length()) throw p.error("símbolo inesperado");
+        return new CurveExpression(source, n);
+    }
+
+    public double eval(int level) {
+        return root.eval(level);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    // =========================================================
+    // Parser (descida recursiva)
+    // =========================================================
+
+    private static final class Parser {
+        final String s;
+        int pos;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        IllegalArgumentException error(String msg) {
+            return new IllegalArgumentException(msg + " em " + pos + ": " + s);
+        }
+
+        void skipSpaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        boolean eat(char c) {
+            skipSpaces();
+            if (pos < s.length() && s.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        // soma := produto (('+'|'-') produto)*
+        Node parseSum() {
+            Node left = parseProduct();
+            while (true) {
+                if (eat('+')) {
+                    Node a = left, b = parseProduct();
+                    left = l -> a.eval(l) + b.eval(l);
+                } else if (eat('-')) {
+                    Node a = left, b = parseProduct();
+                    left = l -> a.eval(l) - b.eval(l);
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        // produto := unario (('*'|'/') unario)*
+        Node parseProduct() {
+            Node left = parseUnary();
+            while (true) {
+                if (eat('*')) {
+                    Node a = left, b = parseUnary();
+                    left = l -> a.eval(l) * b.eval(l);
+                } else if (eat('/')) {
+                    Node a = left, b = parseUnary();
+                    left = l -> a.eval(l) / b.eval(l);
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        // unario := '-' unario | potencia
+        Node parseUnary() {
+            if (eat('-')) {
+                Node a = parseUnary();
+                return l -> -a.eval(l);
+            }
+            if (eat('+')) return parseUnary();
+            return parsePower();
+        }
+
+        // potencia := atomo ('^' unario)?
+        Node parsePower() {
+            Node base = parseAtom();
+            if (eat('^')) {
+                Node exp = parseUnary();
+                return l -> Math.pow(base.eval(l), exp.eval(l));
+            }
+            return base;
+        }
+
+        Node parseAtom() {
+            skipSpaces();
+            if (pos >= s.length()) throw error("fim inesperado");
+            char c = s.charAt(pos);
+
+            if (c == '(') {
+                pos++;
+                Node n = parseSum();
+                if (!eat(')')) throw error("falta ')'");
+                return n;
+            }
+
+            if (Character.isDigit(c) || c == '.') {
+                int start = pos;
+                while (pos < s.length() && (Character.isDigit(s.charAt(pos)) || s.charAt(pos) == '.')) pos++;
+                double v;
+                try {
+                    v = Double.parseDouble(s.substring(start, pos));
+                } catch (NumberFormatException e) {
+                    throw error("número inválido");
+                }
+                return l -> v;
+            }
+
+            if (Character.isLetter(c)) {
+                int start = pos;
+                while (pos < s.length() && Character.isLetterOrDigit(s.charAt(pos))) pos++;
+                String name = s.substring(start, pos);
+                if (name.equals("L")) return l -> l;
+                if (name.equals("x")) return l -> l - 1.0;
+                return parseCall(name);
+            }
+
+            throw error("símbolo inesperado");
+        }
+
+        Node parseCall(String name) {
+            if (!eat('(')) throw error("variável desconhecida '" + name + "'");
+            Node a = parseSum();
+            if (name.equals("min") || name.equals("max")) {
+                if (!eat(',')) throw error("falta ',' em " + name);
+                Node b = parseSum();
+                if (!eat(')')) throw error("falta ')'");
+                return name.equals("min")
+                        ? l -> Math.min(a.eval(l), b.eval(l))
+                        : l -> Math.max(a.eval(l), b.eval(l));
+            }
+            if (!eat(')')) throw error("falta ')'");
+            return switch (name) {
+                case "floor" -> l -> Math.floor(a.eval(l));
+                case "ceil" -> l -> Math.ceil(a.eval(l));
+                case "round" -> l -> (double) Math.round(a.eval(l));
+                case "sqrt" -> l -> Math.sqrt(a.eval(l));
+                case "abs" -> l -> Math.abs(a.eval(l));
+                case "log" -> l -> Math.log(a.eval(l));
+                case "exp" -> l -> Math.exp(a.eval(l));
+                default -> throw error("função desconhecida '" + name + "'");
+            };
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package br.tones.amigonpc.core.progress;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+/**
+ * Curva de progressão compilada: XP por level, perda por morte e multiplicador de HP/DEF.
+ *
+ * - Definida em curves.json (ver ProgressionCurves) por expressões (CurveExpression), em trechos
+ * - Compilada 1x em tabelas primitivas; consultas são índice/busca binária (sem alocação)
+ * - Imutável: trocar a curva = trocar a referência (hot-swap seguro entre threads)
+ * - NORMAL delega o XP para XpProgression (forma fechada, sem teto de level)
+ *
+ * Formato de uma curva (tudo opcional; o que faltar vem do preset NORMAL):
+ * <pre>
+ * "rapida": {
+ *   "maxLevel": 1000,
+ *   "xp": [ { "from": 1, "expr": "40 + 7*x + 0.6*x^2" }, { "from": 200, "expr": "25000 + 90*x" } ],
+ *   "deathRates": [ { "upTo": 10, "rate": 0.0 }, { "upTo": 90, "rate": 0.003 }, { "rate": 0.006 } ],
+ *   "stats": { "capLevel": 100, "expr": "1 + 9*(L-1)/99" }
+ * }
+ * </pre>
+ */
+public final class ProgressionCurve {
+
+    public static final String NORMAL_ID = "normal";
+
+    /** Teto das tabelas de curvas customizadas (2 long[] por curva). */
+    private static final int MAX_TABLE_LEVEL = 100_000;
+
+    public static final ProgressionCurve NORMAL = normal();
+
+    private final String id;
+    /** true: XP pela forma fechada do XpProgression (preset NORMAL). */
+    private final boolean closedForm;
+    private final int maxLevel;
+    private final long[] xpToNext; // 1..maxLevel (null se closedForm)
+    private final long[] xpStart;  // 1..maxLevel+1 (null se closedForm)
+    private final double[] deathRate; // 1..deathRate.length-1; acima: último valor
+    private final double[] statMult;  // 1..statCap; acima: valor do cap
+    private final int statCap;
+
+    private ProgressionCurve(String id, boolean closedForm, int maxLevel, long[] xpToNext, long[] xpStart,
+                             double[] deathRate, double[] statMult) {
+        this.id = id;
+        this.closedForm = closedForm;
+        this.maxLevel = maxLevel;
+        this.xpToNext = xpToNext;
+        this.xpStart = xpStart;
+        this.deathRate = deathRate;
+        this.statMult = statMult;
+        this.statCap = statMult.length - 1;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    // =========================================================
+    // Compilação
+    // =========================================================
+
+    private static ProgressionCurve normal() {
+        // Faixas e scaling do preset vêm das próprias classes (fonte única)
+        double[] death = new double[502];
+        for (int L = 1; L < death.length; L++) death[L] = XpProgression.deathRateForLevel(L);
+        double[] stats = new double[101];
+        for (int L = 1; L < stats.length; L++) stats[L] = StatScaling.multiplier(L);
+        return new ProgressionCurve(NORMAL_ID, true, Integer.MAX_VALUE, null, null, death, stats);
+    }
+
+    /**
+     * Compila a definição de uma curva.
+     * @throws IllegalArgumentException se a definição for inválida (expressão, trechos, valores)
+     */
+    public static ProgressionCurve compile(String id, BsonDocument def) {
+        if (def == null) throw new IllegalArgumentException("curva '" + id + "' sem definição");
+
+        boolean closedForm = true;
+        int maxLevel = Integer.MAX_VALUE;
+        long[] toNext = null;
+        long[] start = null;
+
+        BsonValue xp = def.get("xp");
+        if (xp != null) {
+            closedForm = false;
+            maxLevel = clampInt(intOr(def, "maxLevel", XpProgression.MAX_LEVEL), 1, MAX_TABLE_LEVEL);
+            int[] from = segmentStarts(xp, id);
+            CurveExpression[] exprs = segmentExprs(xp, id);
+
+            toNext = new long[maxLevel + 2];
+            start = new long[maxLevel + 2];
+            int seg = 0;
+            for (int L = 1; L <= maxLevel; L++) {
+                while (seg + 1 < from.length && from[seg + 1] <= L) seg++;
+                double v = exprs[seg].eval(L);
+                if (!Double.isFinite(v)) {
+                    throw new IllegalArgumentException("curva '" + id + "': xp inválido no level " + L);
+                }
+                long need = Math.max(1L, Math.round(v));
+                toNext[L] = need;
+                start[L + 1] = saturatingAdd(start[L], need);
+            }
+        }
+
+        double[] death = def.containsKey("deathRates")
+                ? compileDeathRates(def.get("deathRates"), id)
+                : NORMAL.deathRate;
+
+        double[] stats = def.containsKey("stats")
+                ? compileStats(def.get("stats"), id)
+                : NORMAL.statMult;
+
+        return new ProgressionCurve(id, closedForm, maxLevel, toNext, start, death, stats);
+    }
+
+    private static int[] segmentStarts(BsonValue xp, String id) {
+        if (xp.isString()) return new int[] {1};
+        if (!xp.isArray() || xp.asArray().isEmpty()) {
+            throw new IllegalArgumentException("curva '" + id + "': xp deve ser expressão ou lista de trechos");
+        }
+        BsonArray arr = xp.asArray();
+        int[] from = new int[arr.size()];
+        for (int i = 0; i < arr.size(); i++) {
+            from[i] = i == 0 ? 1 : Math.max(1, intOr(arr.get(i).asDocument(), "from", 1));
+            if (i > 0 && from[i] <= from[i - 1]) {
+                throw new IllegalArgumentException("curva '" + id + "': trechos de xp fora de ordem");
+            }
+        }
+        return from;
+    }
+
+    private static CurveExpression[] segmentExprs(BsonValue xp, String id) {
+        if (xp.isString()) return new CurveExpression[] {CurveExpression.compile(xp.asString().getValue())};
+        BsonArray arr = xp.asArray();
+        CurveExpression[] out = new CurveExpression[arr.size()];
+        for (int i = 0; i < arr.size(); i++) {
+            BsonDocument seg = arr.get(i).asDocument();
+            if (!seg.isString("expr")) {
+                throw new IllegalArgumentException("curva '" + id + "': trecho " + i + " sem expr");
+            }
+            out[i] = CurveExpression.compile(seg.getString("expr").getValue());
+        }
+        return out;
+    }
+
+    /** Faixas { upTo, rate } em ordem; a última sem upTo (ou a última de todas) vale para o resto. */
+    private static double[] compileDeathRates(BsonValue v, String id) {
+        if (v == null || !v.isArray() || v.asArray().isEmpty()) {
+            throw new IllegalArgumentException("curva '" + id + "': deathRates deve ser lista de faixas");
+        }
+        BsonArray arr = v.asArray();
+        int lastBound = 1;
+        for (BsonValue b : arr) {
+            BsonDocument band = b.asDocument();
+            if (band.containsKey("upTo")) lastBound = Math.max(lastBound, intOr(band, "upTo", 1));
+        }
+        lastBound = Math.min(lastBound, MAX_TABLE_LEVEL);
+
+        double[] out = new double[lastBound + 2];
+        int L = 1;
+        double rate = 0.0;
+        for (BsonValue b : arr) {
+            BsonDocument band = b.asDocument();
+            rate = clampRate(doubleOr(band, "rate", 0.0));
+            int upTo = band.containsKey("upTo") ? Math.min(intOr(band, "upTo", 1), lastBound + 1) : lastBound + 1;
+            for (; L <= upTo && L < out.length; L++) out[L] = rate;
+        }
+        for (; L < out.length; L++) out[L] = rate;
+        return out;
+    }
+
+    private static double[] compileStats(BsonValue v, String id) {
+        if (v == null || !v.isDocument()) {
+            throw new IllegalArgumentException("curva '" + id + "': stats deve ser objeto");
+        }
+        BsonDocument doc = v.asDocument();
+        int cap = clampInt(intOr(doc, "capLevel", 100), 1, MAX_TABLE_LEVEL);
+        CurveExpression expr = doc.isString("expr")
+                ? CurveExpression.compile(doc.getString("expr").getValue())
+                : null;
+
+        double[] out = new double[cap + 1];
+        for (int L = 1; L <= cap; L++) {
+            double m = (expr != null) ? expr.eval(L) : StatScaling.multiplier(L);
+            if (!Double.isFinite(m) || m <= 0.0) {
+                throw new IllegalArgumentException("curva '" + id + "': multiplicador inválido no level " + L);
+            }
+            out[L] = m;
+        }
+        return out;
+    }
+
+    // =========================================================
+    // Consultas (caminho quente)
+    // =========================================================
+
+    /** Maior level tal que xpStartOfLevel(level) <= totalXp. */
+    public int levelFromTotalXp(long totalXp) {
+        if (closedForm) return XpProgression.levelFromTotalXp(totalXp);
+        long xp = Math.max(0L, totalXp);
+
+        // Busca binária em xpStart[1..maxLevel]
+        int lo = 1, hi = maxLevel;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (xpStart[mid] <= xp) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /** XP total mínima para estar no INÍCIO do level (levels acima do teto usam o teto). */
+    public long xpStartOfLevel(int level) {
+        if (closedForm) return XpProgression.xpStartOfLevel(level);
+        return xpStart[clampInt(level, 1, maxLevel)];
+    }
+
+    /** XP necessária para sair do level informado. */
+    public long xpToNext(int level) {
+        if (closedForm) return XpProgression.xpToNext(level);
+        return xpToNext[clampInt(level, 1, maxLevel)];
+    }
+
+    /** Level + progresso numa só inversão (ver XpProgression.levelInfo). */
+    public XpProgression.LevelInfo levelInfo(long totalXp) {
+        if (closedForm) return XpProgression.levelInfo(totalXp);
+        long xp = Math.max(0L, totalXp);
+        int level = levelFromTotalXp(xp);
+        long start = xpStart[level];
+        long need = Math.max(1L, xpToNext[level]);
+        long into = (start == Long.MAX_VALUE) ? 0L : Math.max(0L, xp - start);
+        if (into > need) into = need;
+        return new XpProgression.LevelInfo(level, start, into, need);
+    }
+
+    public double deathRateForLevel(int level) {
+        int L = Math.max(1, level);
+        return deathRate[Math.min(L, deathRate.length - 1)];
+    }
+
+    /** Mesma regra do XpProgression.applyDeathPenalty (sem deslevelar), com as faixas desta curva. */
+    public long applyDeathPenalty(long totalXp) {
+        long xp = Math.max(0L, totalXp);
+        int level = levelFromTotalXp(xp);
+        double rate = deathRateForLevel(level);
+
+        long rawLoss = (long) Math.floor(xp * rate);
+        if (rawLoss <= 0) return xp;
+
+        long start = xpStartOfLevel(level);
+        if (start == Long.MAX_VALUE) return xp;
+
+        long loss = Math.min(rawLoss, Math.max(0L, xp - start));
+        return Math.max(0L, xp - loss);
+    }
+
+    /** Multiplicador de HP/DEF (acima do capLevel fica no valor do cap). */
+    public double statMultiplier(int level) {
+        int L = Math.max(1, level);
+        return statMult[Math.min(L, statCap)];
+    }
+
+    public long scaledHp(long baseHp, int level) {
+        long base = Math.max(1L, baseHp);
+        return Math.max(1L, Math.round(base * statMultiplier(level)));
+    }
+
+    public long scaledDef(long baseDef, int level) {
+        long base = Math.max(0L, baseDef);
+        return Math.max(0L, Math.round(base * statMultiplier(level)));
+    }
+
+    // =========================================================
+    // Util
+    // =========================================================
+
+    private static int intOr(BsonDocument d, String key, int def) {
+        BsonValue v = d.get(key);
+        if (v == null || !v.isNumber()) return def;
+        return v.asNumber().intValue();
+    }
+
+    private static double doubleOr(BsonDocument d, String key, double def) {
+        BsonValue v = d.get(key);
+        if (v == null || !v.isNumber()) return def;
+        return v.asNumber().doubleValue();
+    }
+
+    private static int clampInt(int v, int min, int max) {
+        return v < min ? min : Math.min(v, max);
+    }
+
+    private static double clampRate(double r) {
+        if (!Double.isFinite(r) || r < 0.0) return 0.0;
+        return Math.min(r, 1.0);
+    }
+
+    private static long saturatingAdd(long a, long b) {
+        long r = a + b;
+        if (((a ^ r) & (b ^ r)) < 0) return Long.MAX_VALUE;
+        return r;
+    }
+}
@@ -0,0 +1,175 @@
+package br.tones.amigonpc.core.progress;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Registro das curvas de progressão (amigonpc/curves.json), com troca a quente.
+ *
+ * Arquivo:
+ * <pre>
+ * {
+ *   "default": "normal",
+ *   "worlds":  { "arena": "rapida" },
+ *   "players": { "uuid-do-player": "lenta" },
+ *   "curves":  { "rapida": { ... }, "lenta": { ... } }   // formato em ProgressionCurve
+ * }
+ * </pre>
+ *
+ * - Prioridade: player > mundo > default (a curva "normal" sempre existe)
+ * - reloadIfChanged() relê o arquivo quando o mtime muda; curvas são compiladas fora do caminho quente
+ *   e publicadas de uma vez (snapshot volátil). generation() muda a cada publicação.
+ * - Arquivo inválido: mantém o snapshot anterior e guarda o erro (getLastError)
+ */
+public final class ProgressionCurves {
+
+    private ProgressionCurves() {}
+
+    private static final class Snapshot {
+        final int generation;
+        final ProgressionCurve defaultCurve;
+        final Map<String, ProgressionCurve> byId;
+        final Map<String, ProgressionCurve> byWorld;
+        final Map<UUID, ProgressionCurve> byPlayer;
+
+        Snapshot(int generation, ProgressionCurve defaultCurve, Map<String, ProgressionCurve> byId,
+                 Map<String, ProgressionCurve> byWorld, Map<UUID, ProgressionCurve> byPlayer) {
+            this.generation = generation;
+            this.defaultCurve = defaultCurve;
+            this.byId = byId;
+            this.byWorld = byWorld;
+            this.byPlayer = byPlayer;
+        }
+    }
+
+    private static volatile Snapshot current = new Snapshot(0, ProgressionCurve.NORMAL,
+            Map.of(ProgressionCurve.NORMAL_ID, ProgressionCurve.NORMAL), Map.of(), Map.of());
+
+    private static volatile Path file;
+    private static long loadedMtime = Long.MIN_VALUE;
+    private static volatile String lastError;
+
+    /** Define o arquivo e carrega (se existir). Seguro chamar mais de uma vez. */
+    public static void init(Path curvesFile) {
+        file = curvesFile;
+        reloadIfChanged();
+    }
+
+    /** Relê o arquivo se o mtime mudou (chamado periodicamente pelo plugin). */
+    public static synchronized void reloadIfChanged() {
+        Path f = file;
+        if (f == null) return;
+
+        long mtime;
+        try {
+            mtime = Files.exists(f) ? Files.getLastModifiedTime(f).toMillis() : -1L;
+        } catch (Throwable t) {
+            return;
+        }
+        if (mtime == loadedMtime) return;
+        loadedMtime = mtime;
+
+        if (mtime < 0L) {
+            // Arquivo removido: volta ao preset
+            publish(null);
+            lastError = null;
+            return;
+        }
+
+        try {
+            publish(BsonDocument.parse(Files.readString(f, StandardCharsets.UTF_8)));
+            lastError = null;
+        } catch (Throwable t) {
+            lastError = f.getFileName() + ": " + t.getMessage();
+        }
+    }
+
+    /** Compila tudo e só então troca o snapshot (falha no meio não publica nada). */
+    private static void publish(BsonDocument root) {
+        Map<String, ProgressionCurve> byId = new HashMap<>();
+        byId.put(ProgressionCurve.NORMAL_ID, ProgressionCurve.NORMAL);
+        Map<String, ProgressionCurve> byWorld = new HashMap<>();
+        Map<UUID, ProgressionCurve> byPlayer = new HashMap<>();
+        ProgressionCurve def = ProgressionCurve.NORMAL;
+
+        if (root != null) {
+            BsonDocument curves = root.isDocument("curves") ? root.getDocument("curves") : new BsonDocument();
+            for (Map.Entry<String, BsonValue> e : curves.entrySet()) {
+                if (!e.getValue().isDocument()) {
+                    throw new IllegalArgumentException("curva '" + e.getKey() + "' deve ser objeto");
+                }
+                byId.put(e.getKey(), ProgressionCurve.compile(e.getKey(), e.getValue().asDocument()));
+            }
+
+            if (root.isString("default")) def = lookup(byId, root.getString("default").getValue());
+
+            if (root.isDocument("worlds")) {
+                for (Map.Entry<String, BsonValue> e : root.getDocument("worlds").entrySet()) {
+                    byWorld.put(e.getKey(), lookup(byId, stringOf(e.getValue())));
+                }
+            }
+            if (root.isDocument("players")) {
+                for (Map.Entry<String, BsonValue> e : root.getDocument("players").entrySet()) {
+                    UUID id;
+                    try {
+                        id = UUID.fromString(e.getKey());
+                    } catch (IllegalArgumentException bad) {
+                        throw new IllegalArgumentException("players: UUID inválido '" + e.getKey() + "'");
+                    }
+                    byPlayer.put(id, lookup(byId, stringOf(e.getValue())));
+                }
+            }
+        }
+
+        current = new Snapshot(current.generation + 1, def, byId, byWorld, byPlayer);
+    }
+
+    private static ProgressionCurve lookup(Map<String, ProgressionCurve> byId, String id) {
+        ProgressionCurve c = (id == null) ? null : byId.get(id);
+        if (c == null) throw new IllegalArgumentException("curva desconhecida '" + id + "'");
+        return c;
+    }
+
+    private static String stringOf(BsonValue v) {
+        return (v != null && v.isString()) ? v.asString().getValue() : null;
+    }
+
+    // =========================================================
+    // Consulta
+    // =========================================================
+
+    /** Curva do player (ou do mundo, ou a padrão). ownerId/worldName podem ser null. */
+    public static ProgressionCurve resolve(UUID ownerId, String worldName) {
+        Snapshot s = current;
+        if (ownerId != null) {
+            ProgressionCurve c = s.byPlayer.get(ownerId);
+            if (c != null) return c;
+        }
+        if (worldName != null) {
+            ProgressionCurve c = s.byWorld.get(worldName);
+            if (c != null) return c;
+        }
+        return s.defaultCurve;
+    }
+
+    /** null se não existir. */
+    public static ProgressionCurve get(String id) {
+        return id == null ? null : current.byId.get(id);
+    }
+
+    /** Muda a cada recarga publicada (quem guarda a curva resolvida compara para invalidar). */
+    public static int generation() {
+        return current.generation;
+    }
+
+    public static String getLastError() {
+        return lastError;
+    }
+}
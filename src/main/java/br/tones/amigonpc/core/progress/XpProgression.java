@@ -9,17 +9,50 @@ package br.tones.amigonpc.core.progress;
  * Tabelas pré-calculadas (init 1x):
  * - xpToNext[level] = XP necessária para ir do level ao próximo
  * - xpStart[level]  = XP total mínima para estar no início do level (piso)
+ *
+ * Forma fechada (qualquer level, O(1)), com n = L-1:
+ *   xpStart(L) = 80n + 7n(n-1) + (n(n-1)(2n-1) + C[n % 5]) / 5
+ * O arredondamento de 1.2x² é exato em quintos (x² mod 5 ∈ {0,1,4}) e a soma dos desvios
+ * fecha a cada 5 níveis; C corrige o ciclo parcial. A inversa (totalXp -> level) parte da raiz
+ * da cúbica 2n³ + 32n² + 366n = 5·xp e corrige no inteiro.
  */
 public final class XpProgression {
 
     public static final int MAX_LEVEL = 10_000;
 
+    /** Soma dos desvios de arredondamento dos primeiros (n % 5) níveis. */
+    private static final int[] ROUNDING_CYCLE = {0, 0, -1, 0, 1};
+
+    /** Maior n com xpStart(n+1) <= Long.MAX_VALUE; acima disso satura em Long.MAX_VALUE. */
+    private static final long MAX_EXACT_N = 2_846_267L;
+
+    /** Passos máximos da correção inteira (a estimativa em double erra menos de 1 nível). */
+    private static final int MAX_CORRECTION_STEPS = 4;
+
     private static volatile boolean INITED = false;
     private static long[] XP_TO_NEXT; // 1..MAX_LEVEL
     private static long[] XP_START;   // 1..MAX_LEVEL+1 (início do level)
 
     private XpProgression() {}
 
+    /** Level + progresso calculados juntos (1 inversão por chamada). */
+    public static final class LevelInfo {
+        public final int level;
+        /** XP total no início do level. */
+        public final long start;
+        /** XP dentro do level (0..need). */
+        public final long into;
+        /** XP para sair do level. */
+        public final long need;
+
+        LevelInfo(int level, long start, long into, long need) {
+            this.level = level;
+            this.start = start;
+            this.into = into;
+            this.need = need;
+        }
+    }
+
     /** Pré-calcula tabelas uma vez. Pode ser chamado no onEnable; é seguro chamar várias vezes. */
     public static void init() {
         if (INITED) return;
@@ -63,66 +96,68 @@ public final class XpProgression {
         int L = Math.max(1, level);
 
         if (L <= MAX_LEVEL + 1) return XP_START[L];
+        return closedFormStart(L - 1L);
+    }
 
-        // Fallback incremental acima do limite da tabela (best-effort)
-        long start = XP_START[MAX_LEVEL + 1];
-        for (int cur = MAX_LEVEL + 1; cur < L; cur++) {
-            start = safeAdd(start, xpNextLevel(cur));
-            if (start == Long.MAX_VALUE) return Long.MAX_VALUE;
+    /** xpStart do level n+1 (soma de xpNextLevel dos n primeiros níveis), sem tabela. */
+    private static long closedFormStart(long n) {
+        if (n <= 0L) return 0L;
+        if (n > MAX_EXACT_N) return Long.MAX_VALUE;
+        try {
+            // n(n-1)(2n-1) estoura bem antes do resultado: tira o 5 de n(n-1) antes de multiplicar.
+            // a = 5q + r  =>  (a*b + C)/5 = q*b + (r*b + C)/5  (a divisão continua exata)
+            long a = n * (n - 1L);
+            long b = 2L * n - 1L;
+            long quintos = Math.addExact(Math.multiplyExact(a / 5L, b),
+                    ((a % 5L) * b + ROUNDING_CYCLE[(int) (n % 5L)]) / 5L);
+            long linear = Math.addExact(80L * n, Math.multiplyExact(7L * n, n - 1L));
+            return Math.addExact(linear, quintos);
+        } catch (ArithmeticException overflow) {
+            return Long.MAX_VALUE;
         }
-        return start;
     }
 
     /**
-     * Calcula level a partir do totalXp usando busca binária na xpStart.
-     * Retorna o maior level tal que xpStart[level] <= totalXp.
+     * Maior level tal que xpStart(level) <= totalXp. O(1) em qualquer faixa (inversa da forma fechada).
      */
     public static int levelFromTotalXp(long totalXp) {
-        init();
         long xp = Math.max(0L, totalXp);
-
-        // Dentro da tabela (até o início do level MAX_LEVEL+1)
-        if (xp < XP_START[MAX_LEVEL + 1]) {
-            int lo = 1;
-            int hi = MAX_LEVEL;
-            while (lo < hi) {
-                int mid = (lo + hi + 1) >>> 1;
-                if (XP_START[mid] <= xp) {
-                    lo = mid;
-                } else {
-                    hi = mid - 1;
-                }
-            }
-            return lo;
+        if (xp == 0L) return 1;
+
+        // Estimativa: raiz real de 2n³ + 32n² + 366n - 5xp (Newton a partir da cbrt; a cúbica é monótona)
+        double target = 5.0 * (double) xp;
+        double n = Math.cbrt(target / 2.0);
+        for (int i = 0; i < 4; i++) {
+            double f = ((2.0 * n + 32.0) * n + 366.0) * n - target;
+            double df = (6.0 * n + 64.0) * n + 366.0;
+            n -= f / df;
         }
 
-        // Fallback acima do limite: caminha nível a nível a partir de MAX_LEVEL+1
-        int level = MAX_LEVEL + 1;
-        long start = XP_START[MAX_LEVEL + 1];
-        long remaining = xp - start;
-
-        int guard = 0;
-        while (guard++ < 200_000) {
-            long need = xpNextLevel(level);
-            if (remaining < need) return level;
-            remaining -= need;
-            level++;
-        }
-        return level; // safety
+        long k = Math.max(0L, Math.min(MAX_EXACT_N, (long) Math.floor(n)));
+        // Correção inteira (o arredondamento por nível desloca a raiz em menos de 1); limitada = O(1)
+        for (int i = 0; i < MAX_CORRECTION_STEPS && k > 0L && closedFormStart(k) > xp; i++) k--;
+        for (int i = 0; i < MAX_CORRECTION_STEPS && k < MAX_EXACT_N && closedFormStart(k + 1L) <= xp; i++) k++;
+
+        return (int) Math.min(Integer.MAX_VALUE, k + 1L);
     }
 
-    public static long xpIntoLevel(long totalXp) {
+    /** Level, início, progresso e XP do level atual de uma vez (ex.: HUD). */
+    public static LevelInfo levelInfo(long totalXp) {
         long xp = Math.max(0L, totalXp);
         int level = levelFromTotalXp(xp);
-        long minThisLevel = xpStartOfLevel(level);
-        if (minThisLevel == Long.MAX_VALUE) return 0L;
-        return Math.max(0L, xp - minThisLevel);
+        long start = xpStartOfLevel(level);
+        long need = Math.max(1L, xpToNext(level));
+        long into = (start == Long.MAX_VALUE) ? 0L : Math.max(0L, xp - start);
+        if (into > need) into = need;
+        return new LevelInfo(level, start, into, need);
+    }
+
+    public static long xpIntoLevel(long totalXp) {
+        return levelInfo(totalXp).into;
     }
 
     public static long xpNeededThisLevel(long totalXp) {
-        long xp = Math.max(0L, totalXp);
-        int level = levelFromTotalXp(xp);
-        return xpToNext(level);
+        return levelInfo(totalXp).need;
     }
 
     /** Faixas de perda por morte (sem overlap). */
@@ -141,16 +176,15 @@ public final class XpProgression {
      */
     public static long applyDeathPenalty(long totalXp) {
         long xp = Math.max(0L, totalXp);
-        int level = levelFromTotalXp(xp);
-        double rate = deathRateForLevel(level);
+        LevelInfo info = levelInfo(xp);
+        double rate = deathRateForLevel(info.level);
 
         long rawLoss = (long) Math.floor(xp * rate);
         if (rawLoss <= 0) return xp;
 
-        long minThisLevel = xpStartOfLevel(level);
-        if (minThisLevel == Long.MAX_VALUE) return xp;
+        if (info.start == Long.MAX_VALUE) return xp;
 
-        long xpIntoLevel = Math.max(0L, xp - minThisLevel);
+        long xpIntoLevel = Math.max(0L, xp - info.start);
         long loss = Math.min(rawLoss, xpIntoLevel);
 
         long out = xp - loss;
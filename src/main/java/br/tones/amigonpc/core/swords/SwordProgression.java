@@ -34,25 +34,53 @@ public final class SwordProgression {
     public static final int M55 = 55;
     public static final int M75 = 75;
 
+    /** Armas da progressão em ordem de tier (índice = tier, 0 = Crude). Fonte única da escada de armas. */
+    private static final String[] WEAPONS_BY_TIER = {
+            CRUDE_SWORD, ONYXIUM_SWORD, RUSTY_STEEL_SWORD, THORIUM_SWORD, IRON_LONGSWORD,
+            MITHRIL_SWORD, THORIUM_LONGSWORD, KATANA, FLAME_LONGSWORD, ONYXIUM_LONGSWORD
+    };
+
+    /** Nível em que cada tier começa (mesmo índice de WEAPONS_BY_TIER; do tier 1 em diante são os marcos). */
+    private static final int[] TIER_START_LEVEL = { 1, M10, M15, M20, M25, M30, M35, M40, M55, M75 };
+
+    static {
+        if (TIER_START_LEVEL.length != WEAPONS_BY_TIER.length) {
+            throw new IllegalStateException("SwordProgression: marcos e armas fora de sincronia");
+        }
+    }
+
+    public static int tierCount() {
+        return WEAPONS_BY_TIER.length;
+    }
+
+    public static String weaponIdForTier(int tier) {
+        return WEAPONS_BY_TIER[tier];
+    }
+
+    /** Tier da arma na progressão, ou -1 se o itemId não fizer parte dela. */
+    public static int tierOf(String weaponId) {
+        if (weaponId == null) return -1;
+        for (int i = 0; i < WEAPONS_BY_TIER.length; i++) {
+            if (WEAPONS_BY_TIER[i].equals(weaponId)) return i;
+        }
+        return -1;
+    }
+
     public static int clampLevel(int lvl) {
         return Math.max(1, lvl);
     }
 
     /** Retorna o itemId da arma que deve estar equipada no nível informado. */
     public static String weaponIdForLevel(int level) {
-        int lvl = clampLevel(level);
+        return WEAPONS_BY_TIER[tierForLevel(level)];
+    }
 
-        if (lvl >= M75) return ONYXIUM_LONGSWORD;
-        if (lvl >= M55) return FLAME_LONGSWORD;
-        if (lvl >= M40) return KATANA;
-        if (lvl >= M35) return THORIUM_LONGSWORD;
-        if (lvl >= M30) return MITHRIL_SWORD;
-        if (lvl >= M25) return IRON_LONGSWORD;
-        if (lvl >= M20) return THORIUM_SWORD;
-        if (lvl >= M15) return RUSTY_STEEL_SWORD;
-        if (lvl >= M10) return ONYXIUM_SWORD;
-
-        return CRUDE_SWORD;
+    /** Tier da arma do nível informado (último marco atingido). */
+    public static int tierForLevel(int level) {
+        int lvl = clampLevel(level);
+        int tier = TIER_START_LEVEL.length - 1;
+        while (tier > 0 && lvl < TIER_START_LEVEL[tier]) tier--;
+        return tier;
     }
 
     /** true se mudar de arma ao passar de oldLevel para newLevel. */
@@ -63,8 +91,10 @@ public final class SwordProgression {
     /** true se o nível for um marco de troca (usado para mensagem épica). */
     public static boolean isMilestoneLevel(int level) {
         int lvl = clampLevel(level);
-        return lvl == M10 || lvl == M15 || lvl == M20 || lvl == M25 || lvl == M30 ||
-               lvl == M35 || lvl == M40 || lvl == M55 || lvl == M75;
+        for (int tier = 1; tier < TIER_START_LEVEL.length; tier++) {
+            if (lvl == TIER_START_LEVEL[tier]) return true;
+        }
+        return false;
     }
 
     /**
@@ -76,10 +106,6 @@ public final class SwordProgression {
         int b = clampLevel(newLevel);
         if (b <= a) return false;
 
-        int[] ms = { M10, M15, M20, M25, M30, M35, M40, M55, M75 };
-        for (int m : ms) {
-            if (a < m && b >= m) return true;
-        }
-        return false;
+        return tierForLevel(b) > tierForLevel(a);
     }
 }
@@ -0,0 +1,176 @@
+package br.tones.amigonpc.core.swords;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.hypixel.hytale.protocol.ItemAnimation;
+import com.hypixel.hytale.server.core.asset.type.item.config.Item;
+import com.hypixel.hytale.server.core.asset.type.itemanimation.config.ItemPlayerAnimations;
+
+/**
+ * Dados de asset das armas da progressão, resolvidos 1x (warm-up no start do plugin).
+ *
+ * - Tabela imutável indexada pelo tier do SwordProgression: dano base e animação de ataque
+ *   (ItemPlayerAnimations + chave) viram leitura de array no ataque
+ * - Arma fora da progressão (itemId customizado): resolvida no 1o uso e guardada em mapa
+ * - Sem arma: ItemPlayerAnimations padrão (entrada própria)
+ * - Item inexistente também fica em cache (fallback de dano/animação): get nunca repete a busca;
+ *   só um novo warmUp() (ex.: assets recarregados) refaz as entradas
+ */
+public final class SwordWeaponTable {
+
+    private SwordWeaponTable() {}
+
+    /** Fallback de dano quando o Item não existe (mesmo valor de antes). */
+    private static final double DEFAULT_BASE_DAMAGE = 4.0;
+    /** Chave comum de ataque quando o ItemPlayerAnimations não ajuda. */
+    public static final String FALLBACK_ATTACK_KEY = "attack";
+
+    public static final class Entry {
+        public final String weaponId;
+        public final double baseDamage;
+        /** Id do ItemPlayerAnimations (null se nenhum, nem o padrão, existir). */
+        public final String animationsId;
+        /** Chave de ataque dentro do ItemPlayerAnimations (nunca null). */
+        public final String attackKey;
+
+        Entry(String weaponId, double baseDamage, String animationsId, String attackKey) {
+            this.weaponId = weaponId;
+            this.baseDamage = baseDamage;
+            this.animationsId = animationsId;
+            this.attackKey = attackKey;
+        }
+    }
+
+    private static volatile Entry[] byTier = new Entry[SwordProgression.tierCount()];
+    private static final Map<String, Entry> OTHERS = new ConcurrentHashMap<>();
+    private static volatile Entry unarmed;
+
+    /** Resolve todas as armas da progressão (chamar com os assets carregados; de novo se eles mudarem). */
+    public static void warmUp() {
+        Entry[] table = new Entry[SwordProgression.tierCount()];
+        for (int tier = 0; tier < table.length; tier++) {
+            table[tier] = build(SwordProgression.weaponIdForTier(tier));
+        }
+        byTier = table;
+        unarmed = build(null);
+        OTHERS.clear();
+    }
+
+    /** Entrada da arma (itemId vazio = sem arma). Nunca null. */
+    public static Entry get(String weaponId) {
+        if (weaponId == null || weaponId.isBlank()) {
+            Entry e = unarmed;
+            if (e == null) {
+                e = build(null);
+                unarmed = e;
+            }
+            return e;
+        }
+
+        int tier = SwordProgression.tierOf(weaponId);
+        if (tier >= 0) {
+            Entry[] table = byTier;
+            Entry e = table[tier];
+            if (e != null) return e;
+            // Só antes do warm-up
+            e = build(weaponId);
+            // Troca só esta posição (cópia: a tabela publicada continua imutável)
+            Entry[] next = table.clone();
+            next[tier] = e;
+            byTier = next;
+            return e;
+        }
+
+        return OTHERS.computeIfAbsent(weaponId, SwordWeaponTable::build);
+    }
+
+    public static double baseDamage(String weaponId) {
+        return get(weaponId).baseDamage;
+    }
+
+    // =========================================================
+    // Resolução (fora do caminho quente)
+    // =========================================================
+
+    private static Entry build(String weaponId) {
+        Item it = null;
+        try {
+            if (weaponId != null) it = Item.getAssetMap().getAsset(weaponId);
+        } catch (Throwable ignored) {}
+
+        // Best-effort: usa Item.itemLevel como base de dano (o dano real do jogo vem das Interactions)
+        double baseDamage = DEFAULT_BASE_DAMAGE;
+        String animsId = null;
+        if (it != null) {
+            try {
+                // escala simples e estável: itemLevel 0..?? -> dano 4..~15
+                baseDamage = DEFAULT_BASE_DAMAGE + Math.max(0, it.getItemLevel()) * 0.9;
+            } catch (Throwable ignored) {}
+
+            boolean usePlayerAnims = false;
+            try { usePlayerAnims = it.getUsePlayerAnimations(); } catch (Throwable ignored) {}
+            try { animsId = it.getPlayerAnimationsId(); } catch (Throwable ignored) {}
+            if ((animsId == null || animsId.isBlank()) && usePlayerAnims) {
+                try { animsId = ItemPlayerAnimations.DEFAULT_ID; } catch (Throwable ignored) {}
+            }
+        }
+        if (animsId == null || animsId.isBlank()) {
+            try { animsId = ItemPlayerAnimations.DEFAULT_ID; } catch (Throwable ignored) { animsId = null; }
+        }
+
+        String key = null;
+        try {
+            if (animsId != null && !animsId.isBlank()) {
+                ItemPlayerAnimations ipa = ItemPlayerAnimations.getAssetMap().getAsset(animsId);
+                if (ipa != null) key = pickAttackKey(ipa.getAnimations());
+            }
+        } catch (Throwable ignored) {}
+        if (key == null || key.isBlank()) key = FALLBACK_ATTACK_KEY;
+
+        if (animsId != null && animsId.isBlank()) animsId = null;
+        return new Entry(weaponId, baseDamage, animsId, key);
+    }
+
+    /**
+     * Heurística para achar a CHAVE de ataque dentro do mapa de ItemPlayerAnimations.
+     * Preferimos keys com 'attack'/'melee'/'swing' etc.
+     */
+    private static String pickAttackKey(Map<String, ItemAnimation> map) {
+        try {
+            if (map == null || map.isEmpty()) return null;
+
+            String[] prefer = {
+                    "attack", "primary", "primary_attack", "melee", "melee_attack", "swing", "hit", "strike", "slash", "stab", "chop"
+            };
+
+            // 1) match exato (ignore-case)
+            for (String p : prefer) {
+                for (String k : map.keySet()) {
+                    if (k != null && k.equalsIgnoreCase(p)) {
+                        return k;
+                    }
+                }
+            }
+
+            // 2) match parcial (contains)
+            for (String k : map.keySet()) {
+                if (k == null) continue;
+                String lk = k.toLowerCase(Locale.ROOT);
+                if (lk.contains("attack") || lk.contains("melee") || lk.contains("swing") || lk.contains("hit") || lk.contains("strike")) {
+                    return k;
+                }
+            }
+
+            // 3) fallback: primeira key
+            for (String k : map.keySet()) {
+                if (k != null && !k.isBlank()) return k;
+            }
+
+            return null;
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package br.tones.amigonpc.core.systems;
 
 import br.tones.amigonpc.core.AmigoNpcManager;
+import br.tones.amigonpc.core.components.AmigoCompanionComponent;
 
 import com.hypixel.hytale.component.ArchetypeChunk;
 import com.hypixel.hytale.component.CommandBuffer;
+import com.hypixel.hytale.component.ComponentType;
 import com.hypixel.hytale.component.Ref;
 import com.hypixel.hytale.component.Store;
 import com.hypixel.hytale.component.SystemGroup;
@@ -11,8 +13,6 @@ import com.hypixel.hytale.component.query.Query;
 import com.hypixel.hytale.protocol.AnimationSlot;
 import com.hypixel.hytale.protocol.MovementStates;
 import com.hypixel.hytale.server.core.entity.Entity;
-import com.hypixel.hytale.server.core.entity.UUIDComponent;
-import com.hypixel.hytale.server.core.entity.entities.Player;
 import com.hypixel.hytale.server.core.entity.movement.MovementStatesComponent;
 import com.hypixel.hytale.server.core.modules.entity.component.ActiveAnimationComponent;
 import com.hypixel.hytale.server.core.modules.entity.damage.Damage;
@@ -25,12 +25,19 @@ import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 /**
  * Vida real / DOWNED para o AmigoNPC, implementado na API correta (Damage = EcsEvent).
  *
+ * Só para vítimas Amigo: a query é o AmigoCompanionComponent, então dano entre outras entidades
+ * não chega aqui. Dono atacado / dono atacando ficam em AmigoOwnerDamageSystem / AmigoOwnerAttackSystem.
+ *
  * Observação: este sistema roda no filterDamageGroup e cancela o evento depois de processar,
  * evitando que o pipeline padrão tente aplicar regras adicionais que podem exigir componentes
  * que nosso NPC ainda não tem.
  */
 public final class AmigoDamageAndDownedSystem extends DamageEventSystem {
 
+    /** Fixado na criação (o plugin registra o componente antes dos sistemas). */
+    private final ComponentType<EntityStore, AmigoCompanionComponent> companionType =
+            AmigoCompanionComponent.getComponentType();
+
     @Override
     public SystemGroup<EntityStore> getGroup() {
         return DamageModule.get().getFilterDamageGroup();
@@ -38,7 +45,8 @@ public final class AmigoDamageAndDownedSystem extends DamageEventSystem {
 
     @Override
     public Query<EntityStore> getQuery() {
-        // Simples e compatível: o evento de dano já traz o alvo, não precisamos filtrar por componentes aqui.
+        if (companionType != null) return companionType;
+        // Sem o marcador registrado: observa tudo e filtra pelo mapa de Refs do manager.
         return Query.any();
     }
 
@@ -56,53 +64,28 @@ public final class AmigoDamageAndDownedSystem extends DamageEventSystem {
 
         AmigoNpcManager manager = AmigoNpcManager.getShared();
 
-        // ===== Assistencia (player deu dano) =====
-        try {
-            Damage.Source src = damage.getSource();
-            if (src instanceof Damage.EntitySource es && es.getRef() != null) {
-                Ref<EntityStore> srcRef = es.getRef();
-                Player srcPlayer = store.getComponent(srcRef, Player.getComponentType());
-                if (srcPlayer != null) {
-                    UUIDComponent uuidComp = store.getComponent(srcRef, UUIDComponent.getComponentType());
-                    java.util.UUID ownerId = uuidComp == null ? null : uuidComp.getUuid();
-                    if (ownerId != null && manager.hasNpc(ownerId)) {
-                        manager.startAssist(ownerId, targetRef);
-                    manager.recordCombatTag(ownerId, targetRef, store);
-                    }
-                }
-            }
-        } catch (Throwable ignored) {}
-
-        // ===== Combate (etapa inicial) =====
-        // Se o dano atingiu um Player que tem AmigoNPC e a fonte é uma entidade,
-        // pedimos para o NPC priorizar o agressor por alguns segundos.
-        try {
-            Player maybePlayer = store.getComponent(targetRef, Player.getComponentType());
-            if (maybePlayer != null) {
-                UUIDComponent uuidComp = store.getComponent(targetRef, UUIDComponent.getComponentType());
-                java.util.UUID ownerId = uuidComp == null ? null : uuidComp.getUuid();
-
-                if (ownerId != null && manager.hasNpc(ownerId)) {
-                    Damage.Source src = damage.getSource();
-                    if (src instanceof Damage.EntitySource es && es.getRef() != null) {
-                        manager.startCombat(ownerId, es.getRef());
-                    }
-                }
-
-                // Não interferimos no dano do player.
-                return;
-            }
-        } catch (Throwable ignored) {}
+        java.util.UUID owner;
+        if (companionType != null) {
+            AmigoCompanionComponent comp = chunk.getComponent(entityIndex, companionType);
+            if (comp == null) return;
+            owner = comp.getOwnerId();
+        } else {
+            owner = manager.getOwnerFromRef(targetRef);
+            if (owner == null) return;
+        }
 
-        if (!manager.isAmigoRef(targetRef)) return;
+        // Player com Amigo acertou este Amigo: assistência/combat tag antes de cancelarmos o evento
+        AmigoOwnerAttackSystem.handleOwnerAttack(store, targetRef, damage, manager);
 
         // Se já está DOWNED: ignora danos adicionais
-        java.util.UUID owner = manager.getOwnerFromRef(targetRef);
-        if (owner != null && manager.isDowned(owner)) {
+        if (manager.isDowned(owner)) {
             damage.setCancelled(true);
             return;
         }
 
+        // NPC dormente (dono AFK) levou dano: volta ao tick completo
+        manager.wakeCompanion(owner);
+
         // === HP (EntityStatMap / Health) ===
         EntityStatMap stats = buffer.ensureAndGetComponent(targetRef, EntityStatMap.getComponentType());
         int healthIdx = DefaultEntityStatTypes.getHealth();
@@ -116,11 +99,8 @@ public final class AmigoDamageAndDownedSystem extends DamageEventSystem {
             currentHp = stats.get(healthIdx).get();
         }
 
-        float incoming = damage.getAmount();
-        if (owner != null) {
-            // Aplica DEF scaling (cap lvl 100): mais level => menos dano recebido
-            incoming = manager.mitigateIncomingDamage(owner, incoming);
-        }
+        // Aplica DEF scaling (cap lvl 100): mais level => menos dano recebido
+        float incoming = manager.mitigateIncomingDamage(owner, damage.getAmount());
 
         float newHp = currentHp - incoming;
 
@@ -154,7 +134,7 @@ public final class AmigoDamageAndDownedSystem extends DamageEventSystem {
                 }
             } catch (Throwable ignored) {}
 
-            if (owner != null) manager.markDowned(owner);
+            manager.markDowned(owner);
 
             // Cancelamos para impedir que o pipeline padrão finalize o kill/corpse
             damage.setCancelled(true);
@@ -0,0 +1,55 @@
+package br.tones.amigonpc.core.systems;
+
+import br.tones.amigonpc.core.AmigoNpcManager;
+import br.tones.amigonpc.core.components.AmigoCompanionComponent;
+
+import com.hypixel.hytale.component.ArchetypeChunk;
+import com.hypixel.hytale.component.CommandBuffer;
+import com.hypixel.hytale.component.ComponentType;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.component.query.Query;
+import com.hypixel.hytale.component.system.tick.EntityTickingSystem;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+import com.hypixel.hytale.server.npc.entities.NPCEntity;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Relógio do follow/combate/loot do AmigoNPC dentro do tick do mundo (sem thread própria).
+ *
+ * - Query: arquétipos com AmigoCompanionComponent (só os companheiros); sem o componente registrado,
+ *   cai para os arquétipos de NPC e filtra pelos Refs registrados como Amigo
+ * - Cada companheiro tem o próprio intervalo (200 ms); o trabalho em si roda logo depois,
+ *   na mesma thread do mundo (o Store não aceita mudanças estruturais durante o tick dos sistemas)
+ * - Enquanto este sistema estiver tickando um NPC, o ticker antigo (executor) ignora esse NPC
+ */
+public final class AmigoFollowTickSystem extends EntityTickingSystem<EntityStore> {
+
+    /** Fixado na criação (o plugin registra o componente antes dos sistemas). */
+    private final ComponentType<EntityStore, AmigoCompanionComponent> companionType =
+            AmigoCompanionComponent.getComponentType();
+
+    @Nonnull
+    @Override
+    public Query<EntityStore> getQuery() {
+        if (companionType != null) return companionType;
+        return NPCEntity.getComponentType();
+    }
+
+    @Override
+    public void tick(float dt,
+                     int index,
+                     @Nonnull ArchetypeChunk<EntityStore> chunk,
+                     @Nonnull Store<EntityStore> store,
+                     @Nonnull CommandBuffer<EntityStore> buffer) {
+        try {
+            if (companionType != null) {
+                AmigoCompanionComponent comp = chunk.getComponent(index, companionType);
+                if (comp == null) return;
+                AmigoNpcManager.getShared().onCompanionSystemTick(store, chunk.getReferenceTo(index), comp.getOwnerId());
+            } else {
+                AmigoNpcManager.getShared().onCompanionSystemTick(store, chunk.getReferenceTo(index));
+            }
+        } catch (Throwable ignored) {}
+    }
+}
@@ -0,0 +1,103 @@
+package br.tones.amigonpc.core.systems;
+
+import br.tones.amigonpc.core.AmigoNpcManager;
+import br.tones.amigonpc.core.components.AmigoCompanionComponent;
+import br.tones.amigonpc.core.components.AmigoOwnerComponent;
+
+import com.hypixel.hytale.component.ArchetypeChunk;
+import com.hypixel.hytale.component.CommandBuffer;
+import com.hypixel.hytale.component.ComponentType;
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.component.SystemGroup;
+import com.hypixel.hytale.component.query.Query;
+import com.hypixel.hytale.server.core.entity.UUIDComponent;
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.modules.entity.damage.Damage;
+import com.hypixel.hytale.server.core.modules.entity.damage.DamageEventSystem;
+import com.hypixel.hytale.server.core.modules.entity.damage.DamageModule;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+/**
+ * Assistência: o dono (player com Amigo) deu dano em algo -> o NPC ajuda e registra a combat tag.
+ *
+ * O evento de dano é despachado no arquétipo do ALVO, então a query não consegue filtrar pela fonte.
+ * O caminho rápido é: fonte não é entidade -> sai; fonte sem AmigoOwnerComponent -> sai
+ * (1 leitura de componente, sem Player/UUIDComponent). Alvos Amigo ficam com o AmigoDamageAndDownedSystem,
+ * que chama handleOwnerAttack antes de cancelar o evento.
+ */
+public final class AmigoOwnerAttackSystem extends DamageEventSystem {
+
+    private final ComponentType<EntityStore, AmigoCompanionComponent> companionType =
+            AmigoCompanionComponent.getComponentType();
+
+    @Override
+    public SystemGroup<EntityStore> getGroup() {
+        return DamageModule.get().getFilterDamageGroup();
+    }
+
+    @Override
+    public Query<EntityStore> getQuery() {
+        return Query.any();
+    }
+
+    @Override
+    public void handle(int entityIndex,
+                       ArchetypeChunk<EntityStore> chunk,
+                       Store<EntityStore> store,
+                       CommandBuffer<EntityStore> buffer,
+                       Damage damage) {
+
+        if (damage == null || damage.isCancelled()) return;
+        if (!(damage.getSource() instanceof Damage.EntitySource)) return;
+
+        Ref<EntityStore> targetRef = chunk.getReferenceTo(entityIndex);
+        if (targetRef == null) return;
+
+        AmigoNpcManager manager = AmigoNpcManager.getShared();
+
+        // Alvo Amigo: tratado no sistema de DOWNED (mesmo evento, antes do cancelamento)
+        try {
+            if (companionType != null) {
+                if (chunk.getComponent(entityIndex, companionType) != null) return;
+            } else if (manager.isAmigoRef(targetRef)) {
+                return;
+            }
+        } catch (Throwable ignored) {}
+
+        handleOwnerAttack(store, targetRef, damage, manager);
+    }
+
+    /** Fonte do dano é um dono com Amigo ativo: assistência + combat tag. */
+    static void handleOwnerAttack(Store<EntityStore> store,
+                                  Ref<EntityStore> targetRef,
+                                  Damage damage,
+                                  AmigoNpcManager manager) {
+        try {
+            Damage.Source src = damage.getSource();
+            if (!(src instanceof Damage.EntitySource es) || es.getRef() == null) return;
+
+            java.util.UUID ownerId = ownerIdOf(store, es.getRef());
+            if (ownerId == null || !manager.hasNpc(ownerId)) return;
+
+            manager.startAssist(ownerId, targetRef);
+            manager.recordCombatTag(ownerId, targetRef, store);
+        } catch (Throwable ignored) {}
+    }
+
+    /**
+     * Dono pelo marcador (1 leitura). Sem o tipo registrado: Player + UUIDComponent, como antes.
+     */
+    static java.util.UUID ownerIdOf(Store<EntityStore> store, Ref<EntityStore> ref) {
+        ComponentType<EntityStore, AmigoOwnerComponent> ownerType = AmigoOwnerComponent.getComponentType();
+        if (ownerType != null) {
+            AmigoOwnerComponent oc = store.getComponent(ref, ownerType);
+            return oc == null ? null : oc.getOwnerId();
+        }
+
+        Player player = store.getComponent(ref, Player.getComponentType());
+        if (player == null) return null;
+        UUIDComponent uuidComp = store.getComponent(ref, UUIDComponent.getComponentType());
+        return uuidComp == null ? null : uuidComp.getUuid();
+    }
+}
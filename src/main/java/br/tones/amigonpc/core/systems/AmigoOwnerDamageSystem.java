@@ -0,0 +1,69 @@
+package br.tones.amigonpc.core.systems;
+
+import br.tones.amigonpc.core.AmigoNpcManager;
+import br.tones.amigonpc.core.components.AmigoOwnerComponent;
+
+import com.hypixel.hytale.component.ArchetypeChunk;
+import com.hypixel.hytale.component.CommandBuffer;
+import com.hypixel.hytale.component.ComponentType;
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.component.SystemGroup;
+import com.hypixel.hytale.component.query.Query;
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.modules.entity.damage.Damage;
+import com.hypixel.hytale.server.core.modules.entity.damage.DamageEventSystem;
+import com.hypixel.hytale.server.core.modules.entity.damage.DamageModule;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+/**
+ * Combate: o dono foi atingido por uma entidade -> o NPC prioriza o agressor por alguns segundos.
+ *
+ * Query: AmigoOwnerComponent (só players que já spawnaram um Amigo); sem o marcador registrado, Player.
+ * Não interfere no dano do player.
+ */
+public final class AmigoOwnerDamageSystem extends DamageEventSystem {
+
+    private final ComponentType<EntityStore, AmigoOwnerComponent> ownerType =
+            AmigoOwnerComponent.getComponentType();
+
+    @Override
+    public SystemGroup<EntityStore> getGroup() {
+        return DamageModule.get().getFilterDamageGroup();
+    }
+
+    @Override
+    public Query<EntityStore> getQuery() {
+        if (ownerType != null) return ownerType;
+        return Player.getComponentType();
+    }
+
+    @Override
+    public void handle(int entityIndex,
+                       ArchetypeChunk<EntityStore> chunk,
+                       Store<EntityStore> store,
+                       CommandBuffer<EntityStore> buffer,
+                       Damage damage) {
+
+        if (damage == null || damage.isCancelled()) return;
+
+        Damage.Source src = damage.getSource();
+        if (!(src instanceof Damage.EntitySource es) || es.getRef() == null) return;
+
+        try {
+            java.util.UUID ownerId;
+            if (ownerType != null) {
+                AmigoOwnerComponent oc = chunk.getComponent(entityIndex, ownerType);
+                ownerId = oc == null ? null : oc.getOwnerId();
+            } else {
+                Ref<EntityStore> targetRef = chunk.getReferenceTo(entityIndex);
+                ownerId = targetRef == null ? null : AmigoOwnerAttackSystem.ownerIdOf(store, targetRef);
+            }
+
+            AmigoNpcManager manager = AmigoNpcManager.getShared();
+            if (ownerId != null && manager.hasNpc(ownerId)) {
+                manager.startCombat(ownerId, es.getRef());
+            }
+        } catch (Throwable ignored) {}
+    }
+}
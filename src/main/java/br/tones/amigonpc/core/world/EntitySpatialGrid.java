@@ -0,0 +1,158 @@
+package br.tones.amigonpc.core.world;
+
+/**
+ * Grade espacial (hash de células no plano XZ) para consultas por raio.
+ *
+ * Uso:
+ * - clear() no início do tick
+ * - add(...) para cada entidade candidata (uma passada no Store)
+ * - build() uma vez
+ * - forEachInRadius(...) quantas vezes quiser (1 por NPC)
+ *
+ * Tudo em arrays primitivos (sem objeto por entidade) para o rebuild por tick ser barato.
+ * Não é thread-safe: cada World usa a sua grade na thread do próprio World.
+ */
+public final class EntitySpatialGrid {
+
+    /** Visitante de consulta. Retorne false para interromper a busca. */
+    public interface Visitor {
+        boolean accept(int index, double horizontalDist2);
+    }
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final double cellSize;
+    private final double invCellSize;
+
+    // Entradas (índice 0..count-1)
+    private int count;
+    private Object[] refs = new Object[INITIAL_CAPACITY];
+    private double[] xs = new double[INITIAL_CAPACITY];
+    private double[] ys = new double[INITIAL_CAPACITY];
+    private double[] zs = new double[INITIAL_CAPACITY];
+    private int[] flags = new int[INITIAL_CAPACITY];
+    private int[] next = new int[INITIAL_CAPACITY];
+
+    // Hash aberto: chave da célula -> primeira entrada da lista encadeada (next[])
+    private long[] cellKeys = new long[INITIAL_CAPACITY * 2];
+    private int[] cellHeads = new int[INITIAL_CAPACITY * 2];
+    private boolean[] cellUsed = new boolean[INITIAL_CAPACITY * 2];
+
+    public EntitySpatialGrid(double cellSize) {
+        this.cellSize = Math.max(1.0, cellSize);
+        this.invCellSize = 1.0 / this.cellSize;
+    }
+
+    public int size() { return count; }
+
+    public Object refAt(int index) { return refs[index]; }
+    public double xAt(int index) { return xs[index]; }
+    public double yAt(int index) { return ys[index]; }
+    public double zAt(int index) { return zs[index]; }
+    public int flagsAt(int index) { return flags[index]; }
+
+    /** Limpa as entradas (mantém os arrays alocados para o próximo tick). */
+    public void clear() {
+        // solta as refs para não segurar entidades removidas entre ticks
+        java.util.Arrays.fill(refs, 0, count, null);
+        count = 0;
+    }
+
+    public void add(Object ref, double x, double y, double z, int entryFlags) {
+        if (ref == null) return;
+        if (count == refs.length) grow();
+        refs[count] = ref;
+        xs[count] = x;
+        ys[count] = y;
+        zs[count] = z;
+        flags[count] = entryFlags;
+        count++;
+    }
+
+    /** Distribui as entradas nas células. Chamar 1x após os add(...). */
+    public void build() {
+        int needed = Integer.highestOneBit(Math.max(16, count * 2) - 1) << 1;
+        if (cellKeys.length < needed) {
+            cellKeys = new long[needed];
+            cellHeads = new int[needed];
+            cellUsed = new boolean[needed];
+        } else {
+            java.util.Arrays.fill(cellUsed, false);
+        }
+
+        int mask = cellKeys.length - 1;
+        for (int i = 0; i < count; i++) {
+            long key = cellKey(cell(xs[i]), cell(zs[i]));
+            int slot = mix(key) & mask;
+            while (cellUsed[slot] && cellKeys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (!cellUsed[slot]) {
+                cellUsed[slot] = true;
+                cellKeys[slot] = key;
+                cellHeads[slot] = -1;
+            }
+            next[i] = cellHeads[slot];
+            cellHeads[slot] = i;
+        }
+    }
+
+    /**
+     * Visita as entradas dentro do raio horizontal (XZ) e da tolerância vertical.
+     * @return false se o visitante interrompeu a busca
+     */
+    public boolean forEachInRadius(double x, double y, double z, double radius, double maxDy, Visitor visitor) {
+        if (visitor == null || count == 0) return true;
+
+        final double r2 = radius * radius;
+        final int minCx = cell(x - radius);
+        final int maxCx = cell(x + radius);
+        final int minCz = cell(z - radius);
+        final int maxCz = cell(z + radius);
+        final int mask = cellKeys.length - 1;
+
+        for (int cx = minCx; cx <= maxCx; cx++) {
+            for (int cz = minCz; cz <= maxCz; cz++) {
+                long key = cellKey(cx, cz);
+                int slot = mix(key) & mask;
+                while (cellUsed[slot] && cellKeys[slot] != key) {
+                    slot = (slot + 1) & mask;
+                }
+                if (!cellUsed[slot]) continue;
+
+                for (int i = cellHeads[slot]; i >= 0; i = next[i]) {
+                    if (Math.abs(ys[i] - y) > maxDy) continue;
+                    double dx = xs[i] - x;
+                    double dz = zs[i] - z;
+                    double d2 = dx * dx + dz * dz;
+                    if (d2 > r2) continue;
+                    if (!visitor.accept(i, d2)) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private int cell(double v) {
+        return (int) Math.floor(v * invCellSize);
+    }
+
+    private static long cellKey(int cx, int cz) {
+        return ((long) cx << 32) ^ (cz & 0xffffffffL);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void grow() {
+        int cap = refs.length << 1;
+        refs = java.util.Arrays.copyOf(refs, cap);
+        xs = java.util.Arrays.copyOf(xs, cap);
+        ys = java.util.Arrays.copyOf(ys, cap);
+        zs = java.util.Arrays.copyOf(zs, cap);
+        flags = java.util.Arrays.copyOf(flags, cap);
+        next = java.util.Arrays.copyOf(next, cap);
+    }
+}
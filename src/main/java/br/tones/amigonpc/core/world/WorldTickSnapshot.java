@@ -0,0 +1,176 @@
+package br.tones.amigonpc.core.world;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.modules.entity.component.TransformComponent;
+import com.hypixel.hytale.server.core.modules.entity.damage.DeathComponent;
+import com.hypixel.hytale.server.core.modules.entity.item.ItemComponent;
+import com.hypixel.hytale.server.core.modules.entitystats.EntityStatMap;
+import com.hypixel.hytale.server.core.modules.entitystats.asset.DefaultEntityStatTypes;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+/**
+ * Foto do mundo por tick: UMA passada no Store enumera
+ * - entidades vivas (Transform + EntityStatMap, sem DeathComponent, vida > 0)
+ * - itens no chão (Transform + ItemComponent)
+ * e todos os NPCs daquele mundo consultam as grades por raio.
+ *
+ * As posições são as do momento do rebuild. Quem for agir sobre uma entrada
+ * (atacar / coletar) deve confirmar o estado atual no Store.
+ *
+ * Deve ser usada na thread do mundo (mesmo contrato do forEachChunk).
+ */
+public final class WorldTickSnapshot {
+
+    public static final int FLAG_PLAYER = 1;
+
+    private static final double CELL_SIZE = 8.0;
+
+    /** Fora da passada do tick (ex.: retarget vindo do sistema de dano) aceita uma foto com até este tempo. */
+    private static final long MAX_AGE_NANOS = 250_000_000L;
+
+    /** Chave = Store do mundo (fraca: mundo descarregado libera a foto). */
+    private static final Map<Object, WorldTickSnapshot> BY_STORE =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final EntitySpatialGrid living = new EntitySpatialGrid(CELL_SIZE);
+    private final EntitySpatialGrid items = new EntitySpatialGrid(CELL_SIZE);
+    /** Passada atual do tick neste Store (só a thread do mundo mexe). */
+    private long passSeq = 0L;
+    private long builtSeq = -1L;
+    private long builtAtNanos = 0L;
+
+    private WorldTickSnapshot() {}
+
+    public EntitySpatialGrid living() { return living; }
+    public EntitySpatialGrid items() { return items; }
+
+    /**
+     * Início de uma passada do tick neste Store: a próxima consulta reconstrói a foto.
+     * Contador por Store: a passada de um mundo não invalida a foto dos outros.
+     */
+    public static void beginPass(Store<EntityStore> store) {
+        BY_STORE.computeIfAbsent(store, k -> new WorldTickSnapshot()).passSeq++;
+    }
+
+    /**
+     * Foto do Store para a passada atual; reconstrói no 1o uso de cada passada.
+     */
+    public static WorldTickSnapshot of(Store<EntityStore> store) {
+        WorldTickSnapshot snap = BY_STORE.computeIfAbsent(store, k -> new WorldTickSnapshot());
+
+        long nowNanos = System.nanoTime();
+        if (snap.builtSeq != snap.passSeq || nowNanos - snap.builtAtNanos > MAX_AGE_NANOS) {
+            snap.rebuildNow(store, nowNanos);
+        }
+        return snap;
+    }
+
+    /**
+     * Foto com até {@code maxAgeNanos}, de qualquer passada (sonda dos NPCs dormentes).
+     * Mundo só com dormentes: 1 varredura a cada maxAge em vez de 1 por passada.
+     */
+    public static WorldTickSnapshot recent(Store<EntityStore> store, long maxAgeNanos) {
+        WorldTickSnapshot snap = BY_STORE.computeIfAbsent(store, k -> new WorldTickSnapshot());
+
+        long nowNanos = System.nanoTime();
+        if (snap.builtSeq < 0L || nowNanos - snap.builtAtNanos > maxAgeNanos) {
+            snap.rebuildNow(store, nowNanos);
+        }
+        return snap;
+    }
+
+    private void rebuildNow(Store<EntityStore> store, long nowNanos) {
+        rebuild(store);
+        // Vale também para a passada atual (quem acordar nela não varre de novo)
+        builtSeq = passSeq;
+        builtAtNanos = nowNanos;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void rebuild(Store<EntityStore> store) {
+        living.clear();
+        items.clear();
+
+        try {
+            store.forEachChunk((chunk, cb) -> {
+                int sz;
+                try { sz = chunk.size(); } catch (Throwable t) { return; }
+                if (sz <= 0) return;
+
+                // Componentes são do arquétipo: basta sondar a 1a entidade do chunk.
+                try {
+                    if (chunk.getComponent(0, TransformComponent.getComponentType()) == null) return;
+                } catch (Throwable t) {
+                    return;
+                }
+
+                boolean isItem = false;
+                try {
+                    isItem = chunk.getComponent(0, ItemComponent.getComponentType()) != null;
+                } catch (Throwable ignored) {}
+
+                if (isItem) {
+                    for (int i = 0; i < sz; i++) {
+                        Ref<EntityStore> ref;
+                        try { ref = (Ref<EntityStore>) chunk.getReferenceTo(i); } catch (Throwable t) { continue; }
+                        if (ref == null) continue;
+
+                        TransformComponent tc;
+                        try { tc = (TransformComponent) chunk.getComponent(i, TransformComponent.getComponentType()); } catch (Throwable t) { continue; }
+                        if (tc == null || tc.getPosition() == null) continue;
+
+                        var p = tc.getPosition();
+                        items.add(ref, p.getX(), p.getY(), p.getZ(), 0);
+                    }
+                    return;
+                }
+
+                try {
+                    if (chunk.getComponent(0, EntityStatMap.getComponentType()) == null) return;
+                } catch (Throwable t) {
+                    return;
+                }
+                try {
+                    if (chunk.getComponent(0, DeathComponent.getComponentType()) != null) return;
+                } catch (Throwable ignored) {}
+
+                int chunkFlags = 0;
+                try {
+                    if (chunk.getComponent(0, Player.getComponentType()) != null) chunkFlags |= FLAG_PLAYER;
+                } catch (Throwable ignored) {}
+
+                for (int i = 0; i < sz; i++) {
+                    Ref<EntityStore> ref;
+                    try { ref = (Ref<EntityStore>) chunk.getReferenceTo(i); } catch (Throwable t) { continue; }
+                    if (ref == null) continue;
+
+                    TransformComponent tc;
+                    try { tc = (TransformComponent) chunk.getComponent(i, TransformComponent.getComponentType()); } catch (Throwable t) { continue; }
+                    if (tc == null || tc.getPosition() == null) continue;
+
+                    // So entidades "vivas" (tem stats + vida > 0). Ajuda a nao mirar em projeteis/itens.
+                    try {
+                        EntityStatMap stats = (EntityStatMap) chunk.getComponent(i, EntityStatMap.getComponentType());
+                        if (stats == null) continue;
+                        var hp = stats.get(DefaultEntityStatTypes.getHealth());
+                        if (hp != null && hp.get() <= 0.0f) continue;
+                    } catch (Throwable ignored) {
+                        continue;
+                    }
+
+                    var p = tc.getPosition();
+                    living.add(ref, p.getX(), p.getY(), p.getZ(), chunkFlags);
+                }
+            });
+        } catch (Throwable ignored) {}
+
+        living.build();
+        items.build();
+    }
+}